@@ -0,0 +1,98 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * GazetteerBenchmark.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.novetta.clavin.ClavinException;
+import com.novetta.clavin.gazetteer.query.FuzzyMode;
+import com.novetta.clavin.gazetteer.query.GazetteerQuery;
+import com.novetta.clavin.gazetteer.query.QueryBuilder;
+import com.novetta.clavin.resolver.ResolvedLocation;
+
+/**
+ * Benchmarks exact and fuzzy {@link com.novetta.clavin.gazetteer.query.Gazetteer#getClosestLocations}
+ * queries against the sample gazetteer index.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GazetteerBenchmark {
+    /**
+     * Location names known to the sample gazetteer.
+     */
+    @Param({ "Reston", "Boston", "Fairfax County", "United States" })
+    public String name;
+
+    private GazetteerQuery exactQuery;
+    private GazetteerQuery fuzzyQuery;
+
+    /**
+     * Builds the exact query for the name and a fuzzy query for a
+     * misspelling of it.
+     */
+    @Setup
+    public void buildQueries() {
+        exactQuery = new QueryBuilder()
+                .location(name)
+                .fuzzyMode(FuzzyMode.OFF)
+                .build();
+        // drop the second character so the fuzzy query has to expand terms
+        fuzzyQuery = new QueryBuilder()
+                .location(name.charAt(0) + name.substring(2))
+                .fuzzyMode(FuzzyMode.NO_EXACT)
+                .build();
+    }
+
+    @Benchmark
+    public List<ResolvedLocation> exactQuery(final GazetteerIndex index) throws ClavinException {
+        return index.getGazetteer().getClosestLocations(exactQuery);
+    }
+
+    @Benchmark
+    public List<ResolvedLocation> fuzzyQuery(final GazetteerIndex index) throws ClavinException {
+        return index.getGazetteer().getClosestLocations(fuzzyQuery);
+    }
+}
@@ -0,0 +1,102 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * GazetteerIndex.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.novetta.clavin.ClavinException;
+import com.novetta.clavin.gazetteer.query.Gazetteer;
+import com.novetta.clavin.gazetteer.query.LuceneGazetteer;
+import com.novetta.clavin.index.IndexDirectoryBuilder;
+
+/**
+ * Benchmark state holding a gazetteer index built from the sample
+ * GeoNames test set and the supplementary gazetteer.
+ *
+ * The index is built once per trial in a temporary directory, so
+ * benchmarks do not depend on a full GeoNames index being available.
+ * Paths are relative to the project root.
+ */
+@State(Scope.Benchmark)
+public class GazetteerIndex {
+    /**
+     * The gazetteer files the benchmark index is built from.
+     */
+    private static final String GAZETTEER_FILES =
+            "src/test/resources/gazetteers/GeoNamesSampleSet.txt:src/main/resources/SupplementaryGazetteer.txt";
+
+    private File indexDir;
+    private Gazetteer gazetteer;
+
+    /**
+     * Builds the benchmark index and opens a gazetteer on it.
+     * @throws IOException      if the index cannot be built
+     * @throws ClavinException  if the index cannot be opened
+     */
+    @Setup(Level.Trial)
+    public void buildIndex() throws IOException, ClavinException {
+        indexDir = Files.createTempDirectory("clavin-benchmark").toFile();
+        IndexDirectoryBuilder.main(new String[] { "-i", GAZETTEER_FILES, "-o", indexDir.getPath(), "-r" });
+        gazetteer = new LuceneGazetteer(indexDir);
+    }
+
+    /**
+     * Deletes the benchmark index.
+     * @throws IOException if the index cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void deleteIndex() throws IOException {
+        FileUtils.deleteDirectory(indexDir);
+    }
+
+    /**
+     * Get the directory holding the benchmark index.
+     * @return the index directory
+     */
+    public File getIndexDir() {
+        return indexDir;
+    }
+
+    /**
+     * Get the gazetteer opened on the benchmark index.
+     * @return the gazetteer
+     */
+    public Gazetteer getGazetteer() {
+        return gazetteer;
+    }
+}
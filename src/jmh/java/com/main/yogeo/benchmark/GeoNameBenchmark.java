@@ -0,0 +1,74 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * GeoNameBenchmark.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.novetta.clavin.ClavinException;
+import com.novetta.clavin.gazetteer.GeoName;
+import com.novetta.clavin.gazetteer.query.AncestryMode;
+
+/**
+ * Benchmarks {@link com.novetta.clavin.gazetteer.query.Gazetteer#getGeoName}
+ * under each {@link AncestryMode}.
+ *
+ * LAZY and MANUAL defer ancestry loading, so their scores only cover
+ * the lookup of the GeoName itself.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeoNameBenchmark {
+    /**
+     * GeoName ID of Reston, VA, whose ancestry runs through county, state and country.
+     */
+    private static final int RESTON = 4781530;
+
+    @Param({ "ON_CREATE", "LAZY", "MANUAL" })
+    public AncestryMode ancestryMode;
+
+    @Benchmark
+    public GeoName getGeoName(final GazetteerIndex index) throws ClavinException {
+        return index.getGazetteer().getGeoName(RESTON, ancestryMode);
+    }
+}
@@ -0,0 +1,90 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * GeoParserBenchmark.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.novetta.clavin.ClavinException;
+import com.novetta.clavin.GeoParser;
+import com.novetta.clavin.GeoParserFactory;
+import com.novetta.clavin.resolver.ResolvedLocation;
+import com.novetta.clavin.util.TextUtils;
+
+/**
+ * Benchmarks end-to-end {@link GeoParser#parse} of the Somalia sample
+ * document, with and without context-based heuristics.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeoParserBenchmark {
+    /**
+     * Used as both maxHitDepth and maxContextWindow; 1 disables the heuristics.
+     */
+    @Param({ "1", "5" })
+    public int depth;
+
+    private GeoParser parser;
+    private String document;
+
+    /**
+     * Creates the parser on the benchmark index and loads the sample document.
+     * @param index             the benchmark index
+     * @throws IOException      if the sample document cannot be read
+     * @throws ClavinException  if the parser cannot be created
+     */
+    @Setup
+    public void createParser(final GazetteerIndex index) throws IOException, ClavinException {
+        parser = GeoParserFactory.getDefault(index.getIndexDir().getPath(), depth, depth);
+        document = TextUtils.fileToString(new File("src/test/resources/sample-docs/Somalia-doc.txt"));
+    }
+
+    @Benchmark
+    public List<ResolvedLocation> parse() throws Exception {
+        return parser.parse(document);
+    }
+}
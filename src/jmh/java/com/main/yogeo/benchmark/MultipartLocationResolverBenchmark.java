@@ -0,0 +1,87 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * MultipartLocationResolverBenchmark.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.novetta.clavin.ClavinException;
+import com.novetta.clavin.resolver.ResolvedLocation;
+import com.novetta.clavin.resolver.multipart.MultipartLocationResolver;
+
+/**
+ * Benchmarks {@link MultipartLocationResolver#resolveLocation} against
+ * the sample gazetteer index.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MultipartLocationResolverBenchmark {
+    /**
+     * Location names ordered from most to least specific, separated by '|'
+     * because JMH parameter values may not contain commas.
+     */
+    @Param({ "Reston|Virginia|United States", "Reston|Fairfax County|Virginia|United States" })
+    public String location;
+
+    @Param({ "false", "true" })
+    public boolean fuzzy;
+
+    private MultipartLocationResolver resolver;
+    private String[] locationParts;
+
+    /**
+     * Creates the resolver on the benchmark index.
+     * @param index the benchmark index
+     */
+    @Setup
+    public void createResolver(final GazetteerIndex index) {
+        resolver = new MultipartLocationResolver(index.getGazetteer());
+        locationParts = location.split("\\|");
+    }
+
+    @Benchmark
+    public ResolvedLocation resolveLocation() throws ClavinException {
+        return resolver.resolveLocation(fuzzy, locationParts);
+    }
+}
@@ -4,10 +4,25 @@ import com.novetta.clavin.extractor.LocationExtractor;
 import com.novetta.clavin.extractor.LocationOccurrence;
 import com.novetta.clavin.gazetteer.query.AncestryMode;
 import com.novetta.clavin.gazetteer.query.Gazetteer;
+import com.novetta.clavin.metrics.ClavinMetrics;
 import com.novetta.clavin.resolver.ClavinLocationResolver;
 import com.novetta.clavin.resolver.ResolvedLocation;
+import com.novetta.clavin.resolver.StreamingLocationResolver;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,11 +62,25 @@ import org.slf4j.LoggerFactory;
  * Main API entry point for CLAVIN; simply instantiate this class and
  * call the {@link GeoParser#parse} method on your text string.
  *
+ * Batches of documents can be geoparsed concurrently with
+ * {@link GeoParser#parseAll}; every document in the batch shares this
+ * parser's extractor and gazetteer, so the configured
+ * {@link LocationExtractor} must be safe for concurrent use. The same
+ * holds for single documents geoparsed asynchronously with
+ * {@link GeoParser#parseAsync}.
+ *
+ * Documents too large to hold in memory can be streamed from a
+ * {@link Reader}; resolved locations are then pushed to a consumer
+ * sentence window by sentence window.
+ *
  */
 public class GeoParser {
 
     private static final Logger logger = LoggerFactory.getLogger(GeoParser.class);
 
+    // number of characters read into each window when streaming a document
+    private static final int STREAMING_WINDOW_SIZE = 16 * 1024;
+
     // entity extractor to find location names in text
     private LocationExtractor extractor;
 
@@ -67,8 +96,12 @@ public class GeoParser {
     // switch controlling use of fuzzy matching
     private final boolean fuzzy;
 
+    // executor used to geoparse batches of documents
+    private final Executor executor;
+
     /**
-     * Default constructor.
+     * Default constructor. Batches of documents and asynchronous
+     * requests are geoparsed on the common {@link ForkJoinPool}.
      *
      * @param extractor           extracts location names from text
      * @param gazetteer           resolves location names to gazetteer
@@ -77,11 +110,46 @@ public class GeoParser {
      * @param fuzzy               switch to turn on/off fuzzy matching
      */
     public GeoParser(LocationExtractor extractor, Gazetteer gazetteer, int maxHitDepth, int maxContextWindow, boolean fuzzy) {
+        this(extractor, gazetteer, maxHitDepth, maxContextWindow, fuzzy, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a GeoParser that geoparses batches of documents and
+     * asynchronous requests on the provided executor.
+     *
+     * @param extractor           extracts location names from text
+     * @param gazetteer           resolves location names to gazetteer
+     * @param maxHitDepth         the maximum hit depth
+     * @param maxContextWindow    the maximum context window
+     * @param fuzzy               switch to turn on/off fuzzy matching
+     * @param executor            the executor used by {@link GeoParser#parseAll} and {@link GeoParser#parseAsync}
+     */
+    public GeoParser(LocationExtractor extractor, Gazetteer gazetteer, int maxHitDepth, int maxContextWindow, boolean fuzzy,
+            Executor executor) {
+        this(extractor, new ClavinLocationResolver(gazetteer), maxHitDepth, maxContextWindow, fuzzy, executor);
+    }
+
+    /**
+     * Creates a GeoParser around a configured resolver, geoparsing
+     * batches of documents and asynchronous requests on the provided
+     * executor. Extraction times are reported to the resolver's
+     * {@link ClavinMetrics}.
+     *
+     * @param extractor           extracts location names from text
+     * @param resolver            resolves location names against a gazetteer
+     * @param maxHitDepth         the maximum hit depth
+     * @param maxContextWindow    the maximum context window
+     * @param fuzzy               switch to turn on/off fuzzy matching
+     * @param executor            the executor used by {@link GeoParser#parseAll} and {@link GeoParser#parseAsync}
+     */
+    public GeoParser(LocationExtractor extractor, ClavinLocationResolver resolver, int maxHitDepth, int maxContextWindow,
+            boolean fuzzy, Executor executor) {
         this.extractor = extractor;
-        this.resolver = new ClavinLocationResolver(gazetteer);
+        this.resolver = resolver;
         this.maxHitDepth = maxHitDepth;
         this.maxContextWindow = maxContextWindow;
         this.fuzzy = fuzzy;
+        this.executor = executor;
     }
 
     /**
@@ -113,24 +181,248 @@ public class GeoParser {
 
         logger.trace("input: {}", inputText);
 
-        long extractStart = System.currentTimeMillis();
         // first, extract location names from the text
-        List<LocationOccurrence> locationNames = extractor.extractLocationNames(inputText);
-        long extractEnd = System.currentTimeMillis();
+        List<LocationOccurrence> locationNames = extract(inputText);
 
         logger.trace("extracted: {}", locationNames);
 
-        long resolveStart = System.currentTimeMillis();
         // then, resolve the extracted location names against a
         // gazetteer to produce geographic entities representing the
         // locations mentioned in the original text
         List<ResolvedLocation> resolvedLocations = resolver.resolveLocations(locationNames, maxHitDepth, maxContextWindow, fuzzy, ancestryMode);
-        long resolveEnd = System.currentTimeMillis();
 
         logger.trace("resolved: {}", resolvedLocations);
-        logger.debug("Extractor Time: {} ms, Resolver Time: {} ms", extractEnd - extractStart, resolveEnd - resolveStart);
 
         return resolvedLocations;
     }
 
+    /**
+     * Streams an unstructured text document from a {@link Reader},
+     * pushing resolved locations to the consumer as soon as each window
+     * of the document has been decided.
+     *
+     * @param reader            source of the unstructured text to be processed
+     * @param consumer          receives geo entities resolved from text, in document order
+     * @throws IOException      if the document cannot be read
+     * @throws ClavinException  if an error occurs resolving the extracted location names
+     */
+    public void parse(Reader reader, Consumer<ResolvedLocation> consumer) throws IOException, ClavinException {
+        parse(reader, ClavinLocationResolver.DEFAULT_ANCESTRY_MODE, consumer);
+    }
+
+    /**
+     * Streams an unstructured text document from a {@link Reader},
+     * pushing resolved locations to the consumer as soon as each window
+     * of the document has been decided.
+     *
+     * The document is read in windows of whole sentences, so only the
+     * current window and the candidates of undecided context windows are
+     * held in memory. Occurrence positions are offsets into the whole
+     * document, and the resolved locations are the same as those
+     * returned by {@link #parse(String, AncestryMode)} given the same
+     * extracted location names.
+     *
+     * @param reader            source of the unstructured text to be processed
+     * @param ancestryMode      the ancestry load mode
+     * @param consumer          receives geo entities resolved from text, in document order
+     * @throws IOException      if the document cannot be read
+     * @throws ClavinException  if an error occurs resolving the extracted location names
+     */
+    public void parse(Reader reader, AncestryMode ancestryMode, Consumer<ResolvedLocation> consumer)
+            throws IOException, ClavinException {
+        StreamingLocationResolver streamingResolver =
+                resolver.streamingResolver(maxHitDepth, maxContextWindow, fuzzy, ancestryMode, consumer);
+
+        StringBuilder window = new StringBuilder(2 * STREAMING_WINDOW_SIZE);
+        char[] buffer = new char[STREAMING_WINDOW_SIZE];
+        // offset of the first character of the window in the whole document
+        int windowOffset = 0;
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            window.append(buffer, 0, read);
+            if (window.length() >= STREAMING_WINDOW_SIZE) {
+                // hold back the last, possibly incomplete, sentence for the next window
+                int end = lastSentenceBoundary(window);
+                if (end > 0) {
+                    parseWindow(window.substring(0, end), windowOffset, streamingResolver);
+                    window.delete(0, end);
+                    windowOffset += end;
+                }
+            }
+        }
+        if (window.length() > 0) {
+            parseWindow(window.toString(), windowOffset, streamingResolver);
+        }
+        streamingResolver.flush();
+    }
+
+    /**
+     * Extracts the location names from a window of a streamed document
+     * and passes them, positioned relative to the whole document, to
+     * the streaming resolver.
+     *
+     * @param text                  text of the window
+     * @param windowOffset          offset of the window in the whole document
+     * @param streamingResolver     resolver for the document being streamed
+     * @throws ClavinException      if an error occurs resolving the extracted location names
+     */
+    private void parseWindow(String text, int windowOffset, StreamingLocationResolver streamingResolver)
+            throws ClavinException {
+        List<LocationOccurrence> locationNames = new ArrayList<>();
+        for (LocationOccurrence occurrence : extract(text)) {
+            locationNames.add(new LocationOccurrence(occurrence.getText(), occurrence.getPosition() + windowOffset));
+        }
+        logger.trace("extracted: {}", locationNames);
+        streamingResolver.resolve(locationNames);
+    }
+
+    /**
+     * Extracts the location names from text, reporting the extraction
+     * time to the resolver's metrics.
+     *
+     * @param text  unstructured text to be processed
+     * @return      the extracted location names
+     */
+    private List<LocationOccurrence> extract(String text) {
+        long start = System.nanoTime();
+        List<LocationOccurrence> locationNames = extractor.extractLocationNames(text);
+        resolver.getMetrics().recordTime(ClavinMetrics.Timer.EXTRACTION, System.nanoTime() - start);
+        return locationNames;
+    }
+
+    /**
+     * Finds the start of the last sentence in a window. Should the window
+     * hold a single sentence that has grown past four windows, it is cut
+     * at its last whitespace instead so memory stays bounded.
+     *
+     * @param window    the text read so far
+     * @return          the offset at which to cut the window, or 0 to keep reading
+     */
+    private static int lastSentenceBoundary(CharSequence window) {
+        String text = window.toString();
+        BreakIterator sentences = BreakIterator.getSentenceInstance(Locale.ROOT);
+        sentences.setText(text);
+        int boundary = sentences.preceding(text.length());
+        if (boundary > 0 && boundary != BreakIterator.DONE) {
+            return boundary;
+        }
+        if (text.length() >= 4 * STREAMING_WINDOW_SIZE) {
+            for (int i = text.length() - 1; i > 0; i--) {
+                if (Character.isWhitespace(text.charAt(i))) {
+                    return i + 1;
+                }
+            }
+            return text.length();
+        }
+        return 0;
+    }
+
+    /**
+     * Geoparses an unstructured text document asynchronously on this
+     * parser's executor.
+     *
+     * @param inputText     unstructured text to be processed
+     * @return              future completed with the geo entities resolved from text
+     */
+    public CompletableFuture<List<ResolvedLocation>> parseAsync(String inputText) {
+        return parseAsync(inputText, ClavinLocationResolver.DEFAULT_ANCESTRY_MODE, executor);
+    }
+
+    /**
+     * Geoparses an unstructured text document asynchronously on this
+     * parser's executor.
+     *
+     * @param inputText     unstructured text to be processed
+     * @param ancestryMode  the ancestry load mode
+     * @return              future completed with the geo entities resolved from text
+     */
+    public CompletableFuture<List<ResolvedLocation>> parseAsync(String inputText, AncestryMode ancestryMode) {
+        return parseAsync(inputText, ancestryMode, executor);
+    }
+
+    /**
+     * Geoparses an unstructured text document asynchronously on the
+     * provided executor, e.g. a bounded platform thread pool or a
+     * virtual-thread-per-task executor.
+     *
+     * Extraction and resolution run as separate stages, so the location
+     * names of one document can be extracted while another document's
+     * names are being resolved against the gazetteer. If resolution
+     * fails, the future completes exceptionally with a
+     * {@link java.util.concurrent.CompletionException} wrapping the
+     * {@link ClavinException}.
+     *
+     * @param inputText     unstructured text to be processed
+     * @param ancestryMode  the ancestry load mode
+     * @param executor      the executor running both stages
+     * @return              future completed with the geo entities resolved from text
+     */
+    public CompletableFuture<List<ResolvedLocation>> parseAsync(String inputText, AncestryMode ancestryMode,
+            Executor executor) {
+        return CompletableFuture
+                .supplyAsync(() -> extract(inputText), executor)
+                .thenApplyAsync(locationNames -> {
+                    logger.trace("extracted: {}", locationNames);
+                    try {
+                        return resolver.resolveLocations(locationNames, maxHitDepth, maxContextWindow, fuzzy, ancestryMode);
+                    } catch (ClavinException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor);
+    }
+
+    /**
+     * Geoparses a batch of unstructured text documents concurrently on
+     * this parser's executor.
+     *
+     * @param inputTexts        unstructured text documents to be processed
+     * @return                  lists of geo entities resolved from each document, in input order
+     * @throws ClavinException  if any document cannot be geoparsed
+     */
+    public List<List<ResolvedLocation>> parseAll(Collection<String> inputTexts) throws ClavinException {
+        return parseAll(inputTexts, ClavinLocationResolver.DEFAULT_ANCESTRY_MODE);
+    }
+
+    /**
+     * Geoparses a stream of unstructured text documents concurrently on
+     * this parser's executor. The stream is fully consumed before
+     * results are returned.
+     *
+     * @param inputTexts        unstructured text documents to be processed
+     * @return                  lists of geo entities resolved from each document, in encounter order
+     * @throws ClavinException  if any document cannot be geoparsed
+     */
+    public List<List<ResolvedLocation>> parseAll(Stream<String> inputTexts) throws ClavinException {
+        return parseAll(inputTexts.collect(Collectors.toList()), ClavinLocationResolver.DEFAULT_ANCESTRY_MODE);
+    }
+
+    /**
+     * Geoparses a batch of unstructured text documents concurrently on
+     * this parser's executor. Each document is extracted and resolved
+     * as a single task; all tasks share this parser's extractor and
+     * gazetteer.
+     *
+     * @param inputTexts        unstructured text documents to be processed
+     * @param ancestryMode      the ancestry load mode
+     * @return                  lists of geo entities resolved from each document, in input order
+     * @throws ClavinException  if any document cannot be geoparsed
+     */
+    public List<List<ResolvedLocation>> parseAll(Collection<String> inputTexts, AncestryMode ancestryMode) throws ClavinException {
+        List<CompletableFuture<List<ResolvedLocation>>> futures = new ArrayList<>(inputTexts.size());
+        for (String inputText : inputTexts) {
+            futures.add(parseAsync(inputText, ancestryMode));
+        }
+
+        // join in submission order so results line up with the input
+        List<List<ResolvedLocation>> results = new ArrayList<>(futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).join());
+            } catch (CompletionException ce) {
+                throw new ClavinException(String.format("Error geoparsing document %d of %d", i, futures.size()), ce.getCause());
+            }
+        }
+        return results;
+    }
+
 }
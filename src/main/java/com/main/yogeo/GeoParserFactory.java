@@ -4,9 +4,13 @@ import com.novetta.clavin.extractor.ApacheExtractor;
 import com.novetta.clavin.extractor.LocationExtractor;
 import com.novetta.clavin.gazetteer.query.Gazetteer;
 import com.novetta.clavin.gazetteer.query.LuceneGazetteer;
+import com.novetta.clavin.gazetteer.query.LuceneGazetteerConfig;
+import com.novetta.clavin.metrics.ClavinMetrics;
+import com.novetta.clavin.resolver.ClavinLocationResolver;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 /*#####################################################################
  *
@@ -122,4 +126,78 @@ public class GeoParserFactory {
         Gazetteer gazetteer = new LuceneGazetteer(new File(pathToLuceneIndex));
         return new GeoParser(extractor, gazetteer, maxHitDepth, maxContentWindow, fuzzy);
     }
+
+    /**
+     * Get a GeoParser with defined values for maxHitDepth and
+     * maxContentWindow, fuzzy matching explicitly turned on or off,
+     * a specific LocationExtractor to use, and the executor used to
+     * geoparse batches of documents and asynchronous requests.
+     *
+     * @param pathToLuceneIndex     Path to the local Lucene index.
+     * @param extractor             A specific implementation of LocationExtractor to be used
+     * @param maxHitDepth           Number of candidate matches to consider
+     * @param maxContentWindow      How much context to consider when resolving
+     * @param fuzzy                 Should fuzzy matching be used?
+     * @param executor              Executor used by {@link GeoParser#parseAll} and {@link GeoParser#parseAsync}
+     * @return                      GeoParser
+     * @throws ClavinException      If the index cannot be created.
+     */
+    public static GeoParser getDefault(String pathToLuceneIndex, LocationExtractor extractor, int maxHitDepth,
+            int maxContentWindow, boolean fuzzy, Executor executor) throws ClavinException {
+        // instantiate new LuceneGazetteer
+        Gazetteer gazetteer = new LuceneGazetteer(new File(pathToLuceneIndex));
+        return new GeoParser(extractor, gazetteer, maxHitDepth, maxContentWindow, fuzzy, executor);
+    }
+
+    /**
+     * Get a GeoParser with defined values for maxHitDepth and
+     * maxContentWindow, fuzzy matching explicitly turned on or off,
+     * a specific LocationExtractor to use, the executor used to
+     * geoparse batches of documents and asynchronous requests, and the
+     * metrics receiving per-stage measurements from the parser, resolver
+     * and gazetteer.
+     *
+     * @param pathToLuceneIndex     Path to the local Lucene index.
+     * @param extractor             A specific implementation of LocationExtractor to be used
+     * @param maxHitDepth           Number of candidate matches to consider
+     * @param maxContentWindow      How much context to consider when resolving
+     * @param fuzzy                 Should fuzzy matching be used?
+     * @param executor              Executor used by {@link GeoParser#parseAll} and {@link GeoParser#parseAsync}
+     * @param metrics               Receives per-stage measurements
+     * @return                      GeoParser
+     * @throws ClavinException      If the index cannot be created.
+     */
+    public static GeoParser getDefault(String pathToLuceneIndex, LocationExtractor extractor, int maxHitDepth,
+            int maxContentWindow, boolean fuzzy, Executor executor, ClavinMetrics metrics) throws ClavinException {
+        // instantiate new LuceneGazetteer
+        Gazetteer gazetteer = new LuceneGazetteer(new File(pathToLuceneIndex), metrics);
+        ClavinLocationResolver resolver = new ClavinLocationResolver(gazetteer, metrics);
+        return new GeoParser(extractor, resolver, maxHitDepth, maxContentWindow, fuzzy, executor);
+    }
+
+    /**
+     * Get a GeoParser with defined values for maxHitDepth and
+     * maxContentWindow, fuzzy matching explicitly turned on or off,
+     * a specific LocationExtractor to use, the executor used to
+     * geoparse batches of documents and asynchronous requests, and the
+     * configuration of the Lucene gazetteer, such as how its index is
+     * kept resident. The resolver reports to the gazetteer's metrics.
+     *
+     * @param pathToLuceneIndex     Path to the local Lucene index.
+     * @param extractor             A specific implementation of LocationExtractor to be used
+     * @param maxHitDepth           Number of candidate matches to consider
+     * @param maxContentWindow      How much context to consider when resolving
+     * @param fuzzy                 Should fuzzy matching be used?
+     * @param executor              Executor used by {@link GeoParser#parseAll} and {@link GeoParser#parseAsync}
+     * @param gazetteerConfig       Configuration of the Lucene gazetteer
+     * @return                      GeoParser
+     * @throws ClavinException      If the index cannot be created.
+     */
+    public static GeoParser getDefault(String pathToLuceneIndex, LocationExtractor extractor, int maxHitDepth,
+            int maxContentWindow, boolean fuzzy, Executor executor, LuceneGazetteerConfig gazetteerConfig) throws ClavinException {
+        // instantiate new LuceneGazetteer
+        Gazetteer gazetteer = new LuceneGazetteer(new File(pathToLuceneIndex), gazetteerConfig);
+        ClavinLocationResolver resolver = new ClavinLocationResolver(gazetteer, gazetteerConfig.metrics());
+        return new GeoParser(extractor, resolver, maxHitDepth, maxContentWindow, fuzzy, executor);
+    }
 }
@@ -44,17 +44,27 @@ import opennlp.tools.util.Span;
  * Extracts location names from unstructured text documents using a
  * named entity recognizer (Apache OpenNLP Name Finder).
  *
+ * The OpenNLP models are loaded once and shared; each thread that
+ * calls {@link #extractLocationNames} gets its own Name Finder,
+ * Tokenizer and Sentence Detector built from those models, so a
+ * single extractor may serve an entire thread pool.
+ *
  */
 public class ApacheExtractor implements LocationExtractor {
     
-    // the actual named entity recognizer (NER) object
-    private NameFinderME nameFinder;
+    // the models are immutable and may be shared by any number of threads
+    private final TokenNameFinderModel nameFinderModel;
+    private final TokenizerModel tokenizerModel;
+    private final SentenceModel sentenceModel;
+
+    // the actual named entity recognizer (NER) object, one per thread
+    private final ThreadLocal<NameFinderME> nameFinder;
     
-    // used to tokenize plain text into the OpenNLP format
-    private TokenizerME tokenizer;
+    // used to tokenize plain text into the OpenNLP format, one per thread
+    private final ThreadLocal<TokenizerME> tokenizer;
 
-    // used to split the input into sentences before finding names
-    private SentenceDetectorME sentenceDetector;
+    // used to split the input into sentences before finding names, one per thread
+    private final ThreadLocal<SentenceDetectorME> sentenceDetector;
     
     // resource files used by Apache OpenNLP Name Finder
     private static final String PATH_TO_NER_MODEL = "/en-ner-location.bin";
@@ -63,15 +73,34 @@ public class ApacheExtractor implements LocationExtractor {
 
     
     /**
-     * Builds an {@link ApacheExtractor} by instantiating the OpenNLP
-     * Name Finder and Tokenizer.
+     * Builds an {@link ApacheExtractor} by loading the OpenNLP Name
+     * Finder, Tokenizer and Sentence Detector models from the classpath.
      * 
      * @throws IOException		throws exception when instantiating OpenNLP extractor
      */
     public ApacheExtractor() throws IOException {
-        nameFinder = new NameFinderME(new TokenNameFinderModel(ApacheExtractor.class.getResourceAsStream(PATH_TO_NER_MODEL)));
-        tokenizer = new TokenizerME(new TokenizerModel(ApacheExtractor.class.getResourceAsStream(PATH_TO_TOKENIZER_MODEL)));
-        sentenceDetector = new SentenceDetectorME(new SentenceModel(ApacheExtractor.class.getResourceAsStream(PATH_TO_SENTENCE_DETECTOR_MODEL)));
+        this(new TokenNameFinderModel(ApacheExtractor.class.getResourceAsStream(PATH_TO_NER_MODEL)),
+                new TokenizerModel(ApacheExtractor.class.getResourceAsStream(PATH_TO_TOKENIZER_MODEL)),
+                new SentenceModel(ApacheExtractor.class.getResourceAsStream(PATH_TO_SENTENCE_DETECTOR_MODEL)));
+    }
+
+    /**
+     * Builds an {@link ApacheExtractor} from already loaded OpenNLP
+     * models, allowing several extractors to share one copy of each
+     * model.
+     * 
+     * @param nameFinderModel       the location Name Finder model
+     * @param tokenizerModel        the Tokenizer model
+     * @param sentenceModel         the Sentence Detector model
+     */
+    public ApacheExtractor(final TokenNameFinderModel nameFinderModel, final TokenizerModel tokenizerModel,
+            final SentenceModel sentenceModel) {
+        this.nameFinderModel = nameFinderModel;
+        this.tokenizerModel = tokenizerModel;
+        this.sentenceModel = sentenceModel;
+        nameFinder = ThreadLocal.withInitial(() -> new NameFinderME(this.nameFinderModel));
+        tokenizer = ThreadLocal.withInitial(() -> new TokenizerME(this.tokenizerModel));
+        sentenceDetector = ThreadLocal.withInitial(() -> new SentenceDetectorME(this.sentenceModel));
     }
     
     /**
@@ -79,6 +108,8 @@ public class ApacheExtractor implements LocationExtractor {
      * entity recognizer (NER) feature provided by the Apache OpenNLP
      * Name Finder.
      * 
+     * This method is thread-safe.
+     * 
      * @param plainText     Contents of text document
      * @return List of location names and positions
      */
@@ -89,6 +120,11 @@ public class ApacheExtractor implements LocationExtractor {
 
         List<LocationOccurrence> nerResults = new ArrayList<>();
 
+        // this thread's OpenNLP instances
+        NameFinderME nameFinder = this.nameFinder.get();
+        TokenizerME tokenizer = this.tokenizer.get();
+        SentenceDetectorME sentenceDetector = this.sentenceDetector.get();
+
         // The values used in these Spans are string character offsets
         Span[] sentenceSpans = sentenceDetector.sentPosDetect(plainText);
 
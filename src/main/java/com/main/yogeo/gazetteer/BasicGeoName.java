@@ -742,12 +742,58 @@ public class BasicGeoName implements GeoName {
 
     @Override
     public String getGazetteerRecord() {
+        if (gazetteerRecord == null) {
+            gazetteerRecord = buildGazetteerRecord();
+        }
         return gazetteerRecord;
     }
 
     @Override
     public String getGazetteerRecordWithAncestry() {
-        return parent != null ? String.format("%s\n%s", gazetteerRecord, parent.getGazetteerRecordWithAncestry()) : gazetteerRecord;
+        return parent != null ? String.format("%s\n%s", getGazetteerRecord(), parent.getGazetteerRecordWithAncestry()) : getGazetteerRecord();
+    }
+
+    /**
+     * Rebuilds the GeoNames gazetteer record of a GeoName that was not
+     * parsed from one, such as one decoded from a binary index record.
+     * Parsing the result yields a GeoName with the same values, though
+     * the text may differ from the original record.
+     * @return the tab-delimited gazetteer record
+     */
+    private String buildGazetteerRecord() {
+        List<String> altCodes = new ArrayList<String>(alternateCountryCodes.size());
+        for (CountryCode code : alternateCountryCodes) {
+            altCodes.add(code.name());
+        }
+        // TERRI is derived from TERR when the GeoName is created
+        FeatureCode recordCode = featureCode == FeatureCode.TERRI ? FeatureCode.TERR : featureCode;
+        List<String> fields = Arrays.asList(
+                String.valueOf(geonameID),
+                nullToEmpty(name),
+                nullToEmpty(asciiName),
+                String.join(",", alternateNames),
+                String.valueOf(latitude),
+                String.valueOf(longitude),
+                featureClass != null && featureClass != FeatureClass.NULL ? featureClass.name() : "",
+                recordCode != null && recordCode != FeatureCode.NULL ? recordCode.name() : "",
+                primaryCountryCode != null && primaryCountryCode != CountryCode.NULL ? primaryCountryCode.name() : "",
+                String.join(",", altCodes),
+                nullToEmpty(admin1Code),
+                nullToEmpty(admin2Code),
+                nullToEmpty(admin3Code),
+                nullToEmpty(admin4Code),
+                String.valueOf(population),
+                String.valueOf(elevation),
+                String.valueOf(digitalElevationModel),
+                timezone != null ? timezone.getID() : "",
+                modificationDate != null ? new SimpleDateFormat("yyyy-MM-dd").format(modificationDate) : "");
+        // only GeoNames parsed from truncated records have no time zone; drop the modification
+        // date so the rebuilt record is truncated too
+        return String.join("\t", timezone != null ? fields : fields.subList(0, fields.size() - 1));
+    }
+
+    private static String nullToEmpty(final String value) {
+        return value != null ? value : "";
     }
 
     @Override
@@ -0,0 +1,259 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * CachingGazetteer.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.gazetteer.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.novetta.clavin.ClavinException;
+import com.novetta.clavin.extractor.LocationOccurrence;
+import com.novetta.clavin.gazetteer.GeoName;
+import com.novetta.clavin.resolver.ResolvedLocation;
+import com.novetta.clavin.util.LruCache;
+
+/**
+ * A Gazetteer decorator that caches the results of
+ * {@link #getClosestLocations} in a concurrent, bounded LRU cache.
+ *
+ * Queries are cached on a canonical form: the location text is trimmed
+ * and lower-cased, as {@link LuceneGazetteer} does before searching,
+ * and its position is ignored. All other query parameters are part of
+ * the key. Cached matches are re-bound to the caller's
+ * {@link LocationOccurrence}, so positions and fuzzy confidence scores
+ * are always those of the current query. Queries that found no matches
+ * are cached as well.
+ *
+ * The cache is bounded by weight rather than entry count; each entry
+ * weighs one plus the number of matches it holds. Matched GeoName
+ * instances are shared by every caller that hits the same entry. The
+ * cache is invalidated whenever the decorated gazetteer reports that its
+ * index was replaced, e.g. by a {@link ReloadableGazetteer} anywhere
+ * below this decorator; matches of queries still in progress against
+ * the replaced index are not cached.
+ */
+public class CachingGazetteer implements Gazetteer {
+    /**
+     * The default maximum cache weight, roughly the number of cached matches.
+     */
+    public static final long DEFAULT_MAX_WEIGHT = 100000;
+
+    /**
+     * The decorated gazetteer.
+     */
+    private final Gazetteer delegate;
+
+    /**
+     * Matches keyed on canonical queries.
+     */
+    private final LruCache<GazetteerQuery, List<ResolvedLocation>> cache;
+
+    /**
+     * Incremented on every invalidation; matches are only cached if no
+     * invalidation happened while they were being looked up.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Create a new CachingGazetteer with the default maximum weight.
+     * @param delegate the gazetteer to cache
+     */
+    public CachingGazetteer(final Gazetteer delegate) {
+        this(delegate, DEFAULT_MAX_WEIGHT);
+    }
+
+    /**
+     * Create a new CachingGazetteer.
+     * @param delegate  the gazetteer to cache
+     * @param maxWeight the maximum total weight of the cached queries
+     */
+    public CachingGazetteer(final Gazetteer delegate, final long maxWeight) {
+        this.delegate = delegate;
+        this.cache = new LruCache<>(maxWeight, LruCache.DEFAULT_SEGMENTS, (query, matches) -> 1 + matches.size());
+        // matches from a replaced index must not outlive it
+        delegate.addReloadListener(this::invalidateAll);
+    }
+
+    @Override
+    public List<ResolvedLocation> getClosestLocations(final GazetteerQuery query) throws ClavinException {
+        GazetteerQuery key = canonicalQuery(query);
+        if (key == null) {
+            return delegate.getClosestLocations(query);
+        }
+
+        List<ResolvedLocation> cached = cache.get(key);
+        if (cached != null) {
+            return rebind(cached, query.getOccurrence());
+        }
+
+        long startGeneration = generation.get();
+        List<ResolvedLocation> matches = delegate.getClosestLocations(query);
+        cache(key, matches, startGeneration);
+        return matches;
+    }
+
+    /**
+     * Answers the cached queries of a batch from the cache and passes the
+     * remaining queries to the decorated gazetteer as a single batch.
+     *
+     * @param queries            the configuration parameters for each query
+     * @return                   the list of potential matches for each query
+     * @throws ClavinException   if an error occurs
+     */
+    @Override
+    public List<List<ResolvedLocation>> getClosestLocations(final List<GazetteerQuery> queries) throws ClavinException {
+        List<List<ResolvedLocation>> results = new ArrayList<>(queries.size());
+        List<GazetteerQuery> misses = new ArrayList<>();
+        List<Integer> missPositions = new ArrayList<>();
+        for (GazetteerQuery query : queries) {
+            GazetteerQuery key = canonicalQuery(query);
+            List<ResolvedLocation> cached = key != null ? cache.get(key) : null;
+            if (cached != null) {
+                results.add(rebind(cached, query.getOccurrence()));
+            } else {
+                results.add(null);
+                misses.add(query);
+                missPositions.add(results.size() - 1);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            long startGeneration = generation.get();
+            List<List<ResolvedLocation>> found = delegate.getClosestLocations(misses);
+            for (int i = 0; i < misses.size(); i++) {
+                List<ResolvedLocation> matches = found.get(i);
+                GazetteerQuery key = canonicalQuery(misses.get(i));
+                if (key != null) {
+                    cache(key, matches, startGeneration);
+                }
+                results.set(missPositions.get(i), matches);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public GeoName getGeoName(final int geonameId) throws ClavinException {
+        return delegate.getGeoName(geonameId);
+    }
+
+    @Override
+    public GeoName getGeoName(final int geonameId, final AncestryMode ancestryMode) throws ClavinException {
+        return delegate.getGeoName(geonameId, ancestryMode);
+    }
+
+    @Override
+    public void loadAncestry(final GeoName... geoNames) throws ClavinException {
+        delegate.loadAncestry(geoNames);
+    }
+
+    @Override
+    public void loadAncestry(final Collection<GeoName> geoNames) throws ClavinException {
+        delegate.loadAncestry(geoNames);
+    }
+
+    @Override
+    public void addReloadListener(final Runnable listener) {
+        delegate.addReloadListener(listener);
+    }
+
+    /**
+     * Get the decorated gazetteer.
+     * @return the decorated gazetteer
+     */
+    public Gazetteer getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Get a snapshot of the cache hit, miss and eviction counts.
+     * @return the cache statistics
+     */
+    public LruCache.Stats getStats() {
+        return cache.getStats();
+    }
+
+    /**
+     * Discards all cached queries, e.g. after the underlying index changed.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * Caches the matches of a query unless the cache was invalidated since
+     * they were looked up, as they may come from a replaced index.
+     * @param key               the canonical query
+     * @param matches           the matches
+     * @param startGeneration   the generation read before the matches were looked up
+     */
+    private void cache(final GazetteerQuery key, final List<ResolvedLocation> matches, final long startGeneration) {
+        if (generation.get() != startGeneration) {
+            return;
+        }
+        cache.put(key, Collections.unmodifiableList(new ArrayList<>(matches)));
+        // an invalidation between the check and the put must not be lost
+        if (generation.get() != startGeneration) {
+            cache.invalidate(key);
+        }
+    }
+
+    /**
+     * Re-binds matches found for one occurrence of a name to another
+     * occurrence of the same name.
+     * @param matches    the matches
+     * @param occurrence the occurrence the copies are bound to
+     * @return copies of the matches bound to the occurrence
+     */
+    static List<ResolvedLocation> rebind(final List<ResolvedLocation> matches, final LocationOccurrence occurrence) {
+        List<ResolvedLocation> rebound = new ArrayList<>(matches.size());
+        for (ResolvedLocation match : matches) {
+            rebound.add(new ResolvedLocation(occurrence, match.getGeoname(), match.getMatchedName(), match.isFuzzy()));
+        }
+        return rebound;
+    }
+
+    /**
+     * Builds the canonical form of a query used as its cache key.
+     * @param query the query
+     * @return the canonical query, or <code>null</code> if the query has no location text
+     */
+    static GazetteerQuery canonicalQuery(final GazetteerQuery query) {
+        if (query == null || query.getOccurrence() == null || query.getOccurrence().getText() == null) {
+            return null;
+        }
+        LocationOccurrence canonical = new LocationOccurrence(query.getOccurrence().getText().trim().toLowerCase(), 0);
+        return new GazetteerQuery(canonical, query.getMaxResults(), query.getFuzzyMode(), query.getFuzzyBackend(),
+                query.getAncestryMode(), query.isIncludeHistorical(), query.isFilterDupes(), query.getParentIds(),
+                query.getFeatureCodes());
+    }
+}
@@ -0,0 +1,48 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * FuzzyBackend.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.gazetteer.query;
+
+/**
+ * This enum is used to indicate how fuzzy matching finds the index terms
+ * close to a misspelled name, when the {@link FuzzyMode} calls for it.
+ */
+public enum FuzzyBackend {
+    /**
+     * Intersect the term dictionary with Levenshtein automata.
+     */
+    AUTOMATON,
+    /**
+     * Look up candidate terms in the symmetric delete index built with
+     * the symspell-edits option of
+     * {@link com.novetta.clavin.index.IndexDirectoryBuilder}, verifying
+     * them by their Damerau-Levenshtein distance. Gazetteers whose index
+     * has no symmetric delete index use {@link #AUTOMATON}.
+     */
+    SYMSPELL
+}
@@ -0,0 +1,302 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * FuzzyExpander.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.gazetteer.query;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntConsumer;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.DisjunctionMaxQuery;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.apache.lucene.util.automaton.LevenshteinAutomata;
+
+import com.novetta.clavin.index.SymSpellIndex;
+import com.novetta.clavin.util.LruCache;
+
+/**
+ * Expands the fuzzy terms of a query into a bounded set of index terms.
+ *
+ * Index terms are enumerated by intersecting each segment's terms with
+ * Levenshtein automata, closest edit distance first, until the maximum
+ * number of expansions is reached. The compiled automata for each term
+ * and edit distance are cached, so repeated fuzzy queries for a name
+ * only pay for the intersection. The maximum edit distance may adapt to
+ * the length of the term, as short terms are within two edits of far
+ * too many unrelated names.
+ *
+ * Alternatively, candidate terms are looked up in a {@link SymSpellIndex}
+ * and verified by their Damerau-Levenshtein distance.
+ *
+ * A fuzzy query on its own is expanded into a disjunction scoring each
+ * document by its single best matching term, so names matching several
+ * expansions are not ranked above closer matches; a fuzzy clause of
+ * a multi-word query is expanded into terms boosted by their similarity,
+ * as Lucene's own fuzzy rewrite does.
+ */
+final class FuzzyExpander {
+    /**
+     * Terms shorter than this are not expanded when edits are adaptive.
+     */
+    private static final int MIN_LENGTH_ONE_EDIT = 3;
+
+    /**
+     * Terms shorter than this are expanded by at most one edit when edits are adaptive.
+     */
+    private static final int MIN_LENGTH_TWO_EDITS = 6;
+
+    private final String field;
+    private final int maxEdits;
+    private final int prefixLength;
+    private final int maxExpansions;
+    private final boolean adaptiveEdits;
+
+    // automata for edit distances 0 to maxEdits by term and maxEdits; null if disabled
+    private final LruCache<AutomataKey, CompiledAutomaton[]> automata;
+
+    /**
+     * Create a fuzzy expander.
+     * @param field         the field whose terms are expanded
+     * @param maxEdits      the maximum edit distance, at most {@link LevenshteinAutomata#MAXIMUM_SUPPORTED_DISTANCE}
+     * @param prefixLength  the number of leading characters that must match exactly
+     * @param maxExpansions the maximum number of index terms a fuzzy term expands to
+     * @param adaptiveEdits reduce the edit distance for short terms
+     * @param cacheSize     the maximum number of terms whose automata are cached; 0 disables the cache
+     */
+    FuzzyExpander(final String field, final int maxEdits, final int prefixLength, final int maxExpansions,
+            final boolean adaptiveEdits, final int cacheSize) {
+        if (maxEdits < 0 || maxEdits > LevenshteinAutomata.MAXIMUM_SUPPORTED_DISTANCE) {
+            throw new IllegalArgumentException("maxEdits must be between 0 and " + LevenshteinAutomata.MAXIMUM_SUPPORTED_DISTANCE);
+        }
+        if (maxExpansions < 1) {
+            throw new IllegalArgumentException("maxExpansions must be greater than zero");
+        }
+        this.field = field;
+        this.maxEdits = maxEdits;
+        this.prefixLength = Math.max(0, prefixLength);
+        this.maxExpansions = maxExpansions;
+        this.adaptiveEdits = adaptiveEdits;
+        this.automata = cacheSize > 0 ? new LruCache<>(cacheSize) : null;
+    }
+
+    /**
+     * Replaces the fuzzy terms of a query compiled by {@link QueryCompiler}
+     * with their expansions in the index.
+     * @param reader     the index reader
+     * @param query      the fuzzy query
+     * @param symSpell   the symmetric delete index to look up candidate terms in;
+     *                   <code>null</code> to intersect the term dictionary with automata
+     * @param expansions receives the number of index terms each fuzzy term expanded to
+     * @return the expanded query
+     * @throws IOException if an error occurs reading the index terms
+     */
+    Query expand(final IndexReader reader, final Query query, final SymSpellIndex symSpell,
+            final IntConsumer expansions) throws IOException {
+        if (query instanceof FuzzyQuery) {
+            Map<BytesRef, Integer> terms = expandTerm(reader, ((FuzzyQuery) query).getTerm(), symSpell);
+            expansions.accept(terms.size());
+            if (terms.isEmpty()) {
+                return new MatchNoDocsQuery();
+            }
+            List<Query> disjuncts = new ArrayList<>(terms.size());
+            for (BytesRef term : terms.keySet()) {
+                disjuncts.add(new TermQuery(new Term(field, term)));
+            }
+            return new DisjunctionMaxQuery(disjuncts, 0);
+        } else if (query instanceof BooleanQuery) {
+            BooleanQuery.Builder builder = new BooleanQuery.Builder();
+            builder.setMinimumNumberShouldMatch(((BooleanQuery) query).getMinimumNumberShouldMatch());
+            for (BooleanClause clause : (BooleanQuery) query) {
+                Query clauseQuery = clause.getQuery();
+                if (clauseQuery instanceof FuzzyQuery) {
+                    Term fuzzyTerm = ((FuzzyQuery) clauseQuery).getTerm();
+                    Map<BytesRef, Integer> terms = expandTerm(reader, fuzzyTerm, symSpell);
+                    expansions.accept(terms.size());
+                    clauseQuery = boostedDisjunction(fuzzyTerm, terms);
+                }
+                builder.add(clauseQuery, clause.getOccur());
+            }
+            return builder.build();
+        }
+        return query;
+    }
+
+    /**
+     * Get the maximum edit distance for a term.
+     * @param length the length of the term in code points
+     * @return the maximum edit distance
+     */
+    int maxEdits(final int length) {
+        if (!adaptiveEdits) {
+            return maxEdits;
+        }
+        int edits = length < MIN_LENGTH_ONE_EDIT ? 0 : length < MIN_LENGTH_TWO_EDITS ? 1 : 2;
+        return Math.min(edits, maxEdits);
+    }
+
+    /**
+     * Finds the index terms within the maximum edit distance of a term,
+     * closest first, up to the maximum number of expansions.
+     * @param reader   the index reader
+     * @param term     the fuzzy term
+     * @param symSpell the symmetric delete index, or <code>null</code>
+     * @return the edit distance of each matching index term, in order of distance
+     * @throws IOException if an error occurs reading the index terms
+     */
+    private Map<BytesRef, Integer> expandTerm(final IndexReader reader, final Term term, final SymSpellIndex symSpell)
+            throws IOException {
+        if (symSpell != null) {
+            return lookupTerm(term.text(), symSpell);
+        }
+        CompiledAutomaton[] levels = automataFor(term.text());
+        Map<BytesRef, Integer> terms = new LinkedHashMap<>();
+        for (int edits = 0; edits < levels.length && terms.size() < maxExpansions; edits++) {
+            for (LeafReaderContext leaf : reader.leaves()) {
+                Terms fieldTerms = leaf.reader().terms(field);
+                if (fieldTerms == null) {
+                    continue;
+                }
+                TermsEnum termsEnum = levels[edits].getTermsEnum(fieldTerms);
+                BytesRef next;
+                while (terms.size() < maxExpansions && (next = termsEnum.next()) != null) {
+                    // terms within fewer edits were found at a lower level
+                    if (!terms.containsKey(next)) {
+                        terms.put(BytesRef.deepCopyOf(next), edits);
+                    }
+                }
+                if (terms.size() >= maxExpansions) {
+                    break;
+                }
+            }
+        }
+        return terms;
+    }
+
+    private Map<BytesRef, Integer> lookupTerm(final String text, final SymSpellIndex symSpell) throws IOException {
+        int[] codePoints = text.codePoints().toArray();
+        String prefix = new String(codePoints, 0, Math.min(prefixLength, codePoints.length));
+        Map<BytesRef, Integer> terms = new LinkedHashMap<>();
+        // candidates not sharing the prefix are dropped after the lookup, so fetch every candidate
+        int maxTerms = prefix.isEmpty() ? maxExpansions : Integer.MAX_VALUE;
+        for (Map.Entry<String, Integer> entry : symSpell.lookup(text, maxEdits(codePoints.length), maxTerms).entrySet()) {
+            if (terms.size() >= maxExpansions) {
+                break;
+            }
+            if (entry.getKey().startsWith(prefix)) {
+                terms.put(new BytesRef(entry.getKey()), entry.getValue());
+            }
+        }
+        return terms;
+    }
+
+    private CompiledAutomaton[] automataFor(final String text) {
+        int[] codePoints = text.codePoints().toArray();
+        int edits = maxEdits(codePoints.length);
+        AutomataKey key = new AutomataKey(text, edits);
+        CompiledAutomaton[] levels = automata != null ? automata.get(key) : null;
+        if (levels == null) {
+            int prefixCodePoints = Math.min(prefixLength, codePoints.length);
+            String prefix = new String(codePoints, 0, prefixCodePoints);
+            LevenshteinAutomata builder = new LevenshteinAutomata(
+                    new String(codePoints, prefixCodePoints, codePoints.length - prefixCodePoints), true);
+            levels = new CompiledAutomaton[edits + 1];
+            for (int i = 0; i <= edits; i++) {
+                levels[i] = new CompiledAutomaton(builder.toAutomaton(i, prefix), true, false);
+            }
+            if (automata != null) {
+                automata.put(key, levels);
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * Builds a disjunction of expanded terms boosted by their similarity to
+     * the fuzzy term, as Lucene's fuzzy term enumeration scores them.
+     */
+    private Query boostedDisjunction(final Term fuzzyTerm, final Map<BytesRef, Integer> terms) {
+        if (terms.isEmpty()) {
+            return new MatchNoDocsQuery();
+        }
+        int length = fuzzyTerm.text().codePointCount(0, fuzzyTerm.text().length());
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (Map.Entry<BytesRef, Integer> entry : terms.entrySet()) {
+            String text = entry.getKey().utf8ToString();
+            int minLength = Math.min(length, text.codePointCount(0, text.length()));
+            float boost = minLength > 0 ? 1f - (float) entry.getValue() / minLength : 0f;
+            Query termQuery = new TermQuery(new Term(field, entry.getKey()));
+            builder.add(boost < 1f ? new BoostQuery(termQuery, Math.max(boost, 0f)) : termQuery, Occur.SHOULD);
+        }
+        return builder.build();
+    }
+
+    /**
+     * The key of the cached automata of a term.
+     */
+    private static final class AutomataKey {
+        private final String text;
+        private final int edits;
+
+        AutomataKey(final String text, final int edits) {
+            this.text = text;
+            this.edits = edits;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            AutomataKey that = (AutomataKey) o;
+            return edits == that.edits && text.equals(that.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(text, edits);
+        }
+    }
+}
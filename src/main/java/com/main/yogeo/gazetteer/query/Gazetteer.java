@@ -32,6 +32,7 @@ import com.novetta.clavin.ClavinException;
 import com.novetta.clavin.gazetteer.GeoName;
 import com.novetta.clavin.resolver.ResolvedLocation;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -50,6 +51,24 @@ public interface Gazetteer {
      */
     List<ResolvedLocation> getClosestLocations(final GazetteerQuery query) throws ClavinException;
 
+    /**
+     * Execute a batch of queries against the gazetteer, returning the top
+     * matches for each query in the order the queries were provided.
+     * Implementations may share work between the queries of a batch; by
+     * default, they are executed one at a time.
+     *
+     * @param queries            the configuration parameters for each query
+     * @return                   the list of potential matches for each query
+     * @throws ClavinException   if an error occurs
+     */
+    default List<List<ResolvedLocation>> getClosestLocations(final List<GazetteerQuery> queries) throws ClavinException {
+        List<List<ResolvedLocation>> results = new ArrayList<>(queries.size());
+        for (GazetteerQuery query : queries) {
+            results.add(getClosestLocations(query));
+        }
+        return results;
+    }
+
     /**
      * Retrieves the GeoName with the provided ID, lazily loading its ancestry.
      * @param geonameId           the ID of the requested GeoName
@@ -81,4 +100,14 @@ public interface Gazetteer {
      * @throws ClavinException    if an error occurs
      */
     void loadAncestry(final Collection<GeoName> geoNames) throws ClavinException;
+
+    /**
+     * Registers a listener run whenever the index answering queries is
+     * replaced, e.g. to invalidate caches of results from the replaced
+     * index. Gazetteers that never replace their index ignore it;
+     * decorators pass it on to the gazetteer they decorate.
+     * @param listener            run after each replacement
+     */
+    default void addReloadListener(final Runnable listener) {
+    }
 }
@@ -34,6 +34,7 @@ import com.novetta.clavin.gazetteer.FeatureCode;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
 
 /**
@@ -57,6 +58,11 @@ public class GazetteerQuery {
      */
     private final FuzzyMode fuzzyMode;
 
+    /**
+     * Indicates how fuzzy matching finds candidate names.
+     */
+    private final FuzzyBackend fuzzyBackend;
+
     /**
      * Indicates how the ancestry of the matched locations should be loaded.
      */
@@ -100,14 +106,36 @@ public class GazetteerQuery {
     public GazetteerQuery(final LocationOccurrence occurrence, final int maxResults, final FuzzyMode fuzzyMode,
             final AncestryMode ancestryMode, final boolean includeHistorical, final boolean filterDupes,
             final Set<Integer> parentIds, final Set<FeatureCode> featureCodes) {
+        this(occurrence, maxResults, fuzzyMode, FuzzyBackend.AUTOMATON, ancestryMode, includeHistorical, filterDupes,
+                parentIds, featureCodes);
+    }
+
+    /**
+     * Create a new GazetteerQuery.
+     * @param occurrence the location occurrence
+     * @param maxResults the maximum number of results
+     * @param fuzzyMode the fuzzy mode for this query
+     * @param fuzzyBackend how fuzzy matching finds candidate names
+     * @param ancestryMode the ancestry loading mode for this query
+     * @param includeHistorical <code>true</code> to include historical locations
+     * @param filterDupes <code>true</code> to return only the highest scoring match for each individual location
+     * @param parentIds the set of parent IDs to restrict the search to; these will be OR'ed
+     * @param featureCodes the set of feature codes to restrict the search to; these will be OR'ed
+     */
+    public GazetteerQuery(final LocationOccurrence occurrence, final int maxResults, final FuzzyMode fuzzyMode,
+            final FuzzyBackend fuzzyBackend, final AncestryMode ancestryMode, final boolean includeHistorical,
+            final boolean filterDupes, final Set<Integer> parentIds, final Set<FeatureCode> featureCodes) {
         this.occurrence = occurrence;
         this.maxResults = maxResults;
         this.fuzzyMode = fuzzyMode;
+        this.fuzzyBackend = fuzzyBackend != null ? fuzzyBackend : FuzzyBackend.AUTOMATON;
         this.ancestryMode = ancestryMode;
         this.includeHistorical = includeHistorical;
         this.filterDupes = filterDupes;
         this.parentIds = parentIds != null ? new HashSet<>(parentIds) : Collections.emptySet();
-        this.featureCodes = featureCodes != null ? EnumSet.copyOf(featureCodes) : EnumSet.noneOf(FeatureCode.class);
+        // EnumSet.copyOf rejects empty collections that are not EnumSets, e.g. getFeatureCodes() of another query
+        this.featureCodes = featureCodes != null && !featureCodes.isEmpty() ?
+                EnumSet.copyOf(featureCodes) : EnumSet.noneOf(FeatureCode.class);
     }
 
     /**
@@ -134,6 +162,14 @@ public class GazetteerQuery {
         return fuzzyMode;
     }
 
+    /**
+     * Indicates how fuzzy matching finds candidate names.
+     * @return the fuzzy matching backend
+     */
+    public FuzzyBackend getFuzzyBackend() {
+        return fuzzyBackend;
+    }
+
     /**
      * Indicates how the ancestry, the hierarchy of political divisions, for matching
      * locations should be loaded.
@@ -175,4 +211,36 @@ public class GazetteerQuery {
     public Set<FeatureCode> getFeatureCodes() {
         return Collections.unmodifiableSet(featureCodes);
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        GazetteerQuery that = (GazetteerQuery) o;
+
+        if (maxResults != that.maxResults) return false;
+        if (includeHistorical != that.includeHistorical) return false;
+        if (filterDupes != that.filterDupes) return false;
+        if (fuzzyMode != that.fuzzyMode) return false;
+        if (fuzzyBackend != that.fuzzyBackend) return false;
+        if (ancestryMode != that.ancestryMode) return false;
+        if (!Objects.equals(occurrence, that.occurrence)) return false;
+        if (!parentIds.equals(that.parentIds)) return false;
+        return featureCodes.equals(that.featureCodes);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = occurrence != null ? occurrence.hashCode() : 0;
+        result = 31 * result + maxResults;
+        result = 31 * result + (fuzzyMode != null ? fuzzyMode.hashCode() : 0);
+        result = 31 * result + fuzzyBackend.hashCode();
+        result = 31 * result + (ancestryMode != null ? ancestryMode.hashCode() : 0);
+        result = 31 * result + (includeHistorical ? 1 : 0);
+        result = 31 * result + (filterDupes ? 1 : 0);
+        result = 31 * result + parentIds.hashCode();
+        result = 31 * result + featureCodes.hashCode();
+        return result;
+    }
 }
@@ -0,0 +1,46 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * GazetteerWarmer.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.gazetteer.query;
+
+import com.novetta.clavin.ClavinException;
+
+/**
+ * Prepares a newly opened gazetteer before it starts answering queries,
+ * e.g. by running representative queries so the index is paged in and
+ * the gazetteer's caches are populated.
+ */
+@FunctionalInterface
+public interface GazetteerWarmer {
+    /**
+     * Warms a gazetteer that is not yet visible to callers.
+     * @param gazetteer          the new gazetteer
+     * @throws ClavinException   if an error occurs; the gazetteer is then discarded
+     */
+    void warm(final Gazetteer gazetteer) throws ClavinException;
+}
@@ -0,0 +1,65 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * IndexDirectoryMode.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.gazetteer.query;
+
+/**
+ * How a {@link LuceneGazetteer} keeps its index resident. Each mode
+ * trades start-up time and memory for the latency of the first queries.
+ */
+public enum IndexDirectoryMode {
+    /**
+     * Let Lucene choose the directory for the platform, usually
+     * memory-mapped files paged in as queries touch them.
+     */
+    DEFAULT,
+
+    /**
+     * Memory-mapped files, loaded into the page cache when the index is
+     * opened so that the first queries do not wait on disk.
+     */
+    MMAP_PRELOAD,
+
+    /**
+     * A copy of the index held in Java heap buffers; the index files are
+     * not used after the gazetteer is created.
+     */
+    HEAP,
+
+    /**
+     * A copy of the index held in direct buffers outside of the Java heap,
+     * sized by <code>-XX:MaxDirectMemorySize</code> rather than the heap.
+     */
+    OFF_HEAP,
+
+    /**
+     * Positional reads through NIO file channels, keeping nothing mapped
+     * or copied and relying on the operating system page cache alone.
+     */
+    NIO
+}
@@ -29,11 +29,12 @@
 package com.novetta.clavin.gazetteer.query;
 
 import static com.novetta.clavin.index.IndexField.*;
-import static org.apache.lucene.queryparser.classic.QueryParserBase.escape;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -41,31 +42,57 @@ import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.FieldInfos;
 import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.queryparser.classic.ParseException;
-import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.BooleanQuery.Builder;
-import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.SingleInstanceLockFactory;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.SmallFloat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -76,14 +103,21 @@ import com.novetta.clavin.gazetteer.FeatureCode;
 import com.novetta.clavin.gazetteer.GeoName;
 import com.novetta.clavin.gazetteer.LazyAncestryGeoName;
 import com.novetta.clavin.index.BinarySimilarity;
+import com.novetta.clavin.index.ExactNameStore;
+import com.novetta.clavin.index.GeoNameRecordCodec;
+import com.novetta.clavin.index.IndexDirectoryBuilder;
 import com.novetta.clavin.index.IndexField;
+import com.novetta.clavin.index.NameBloomFilter;
+import com.novetta.clavin.index.SymSpellIndex;
+import com.novetta.clavin.metrics.ClavinMetrics;
 import com.novetta.clavin.resolver.ResolvedLocation;
+import com.novetta.clavin.util.LruCache;
 
 /**
  * An implementation of Gazetteer that uses Lucene to rapidly search
  * known locations.
  */
-public class LuceneGazetteer implements Gazetteer {
+public class LuceneGazetteer implements Gazetteer, Closeable {
     /**
      * The logger.
      */
@@ -125,19 +159,61 @@ public class LuceneGazetteer implements Gazetteer {
     private static final Set<FeatureCode> ALL_CODES = Collections.unmodifiableSet(EnumSet.allOf(FeatureCode.class));
 
     /**
-     * The format string for exact match queries.
+     * Builds the exact and fuzzy name queries.
      */
-    private static final String EXACT_MATCH_FMT = "\"%s\"";
+    private static final QueryCompiler QUERY_COMPILER = new QueryCompiler(INDEX_ANALYZER, INDEX_NAME.key());
 
     /**
-     * The format string for fuzzy queries.
+     * The feature codes of the administrative divisions that can be pinned
+     * in memory; nearly every ancestry chain passes through them.
      */
-    private static final String FUZZY_FMT = "%s~";
+    private static final Set<FeatureCode> PINNED_CODES = Collections.unmodifiableSet(EnumSet.of(
+            FeatureCode.PCL, FeatureCode.PCLD, FeatureCode.PCLF, FeatureCode.PCLI, FeatureCode.PCLIX,
+            FeatureCode.PCLS, FeatureCode.TERRI, FeatureCode.ADM1, FeatureCode.ADM2));
 
     // Lucene index built from GeoNames gazetteer
-    private final FSDirectory index;
+    private final Directory index;
     private final IndexSearcher indexSearcher;
 
+    // receives query and ancestry latencies
+    private final ClavinMetrics metrics;
+
+    // Bloom filter over all indexed name terms; null if the index has none or it is disabled
+    private final NameBloomFilter nameFilter;
+
+    // names with neither exact nor fuzzy matches; null if disabled
+    private final LruCache<NegativeKey, Boolean> negativeCache;
+
+    // runs the distinct queries of a batch in parallel; null to run them on the calling thread
+    private final Executor executor;
+
+    // true if GeoNames are decoded from binary records rather than parsed from gazetteer records
+    private final boolean binaryRecords;
+
+    // the stored fields loaded for each hit
+    private final Set<String> loadedFields;
+
+    // GeoNames with resolved ancestry by ID; null if disabled
+    private final LruCache<Integer, GeoName> geoNameCache;
+
+    // administrative divisions with resolved ancestry by ID, loaded on creation if configured
+    private final Map<Integer, GeoName> pinnedGeoNames = new ConcurrentHashMap<>();
+
+    // true if exact queries may stop after the most populous best matches of a population-sorted index
+    private final boolean earlyTermination;
+
+    // expands fuzzy name terms into a bounded set of index terms
+    private final FuzzyExpander fuzzyExpander;
+
+    // symmetric delete index over all indexed name terms; null if the index has none
+    private final SymSpellIndex symSpellIndex;
+
+    // the locations bearing each indexed name; null if the index has none or it is disabled
+    private final ExactNameStore exactNameStore;
+
+    // lazily resolves the ancestry of returned GeoNames
+    private final Gazetteer ancestryGazetteer;
+
     /**
      * Builds a {@link LuceneGazetteer} by loading a pre-built Lucene
      * index from disk and setting configuration parameters for
@@ -147,26 +223,238 @@ public class LuceneGazetteer implements Gazetteer {
      * @throws ClavinException      if an error occurs opening the index
      */
     public LuceneGazetteer(final File indexDir) throws ClavinException {
+        this(indexDir, ClavinMetrics.NOOP);
+    }
+
+    /**
+     * Builds a {@link LuceneGazetteer} by loading a pre-built Lucene
+     * index from disk, reporting exact and fuzzy query latencies,
+     * fuzzy fallbacks and ancestry resolution times to the provided
+     * metrics.
+     *
+     * @param indexDir              Lucene index directory to be loaded
+     * @param metrics               receives query and ancestry measurements
+     * @throws ClavinException      if an error occurs opening the index
+     */
+    public LuceneGazetteer(final File indexDir, final ClavinMetrics metrics) throws ClavinException {
+        this(indexDir, new LuceneGazetteerConfig().metrics(metrics));
+    }
+
+    /**
+     * Builds a {@link LuceneGazetteer} by loading a pre-built Lucene
+     * index from disk using the provided configuration.
+     *
+     * @param indexDir              Lucene index directory to be loaded
+     * @param config                the gazetteer configuration
+     * @throws ClavinException      if an error occurs opening the index
+     */
+    public LuceneGazetteer(final File indexDir, final LuceneGazetteerConfig config) throws ClavinException {
+        this(indexDir, config, null);
+    }
+
+    /**
+     * Builds a {@link LuceneGazetteer} whose lazily loaded GeoNames resolve
+     * their ancestry through another gazetteer, so they outlive this one
+     * when a {@link ReloadableGazetteer} swaps its index.
+     *
+     * @param indexDir              Lucene index directory to be loaded
+     * @param config                the gazetteer configuration
+     * @param ancestryGazetteer     resolves lazily loaded ancestry; <code>null</code> for this gazetteer
+     * @throws ClavinException      if an error occurs opening the index
+     */
+    LuceneGazetteer(final File indexDir, final LuceneGazetteerConfig config, final Gazetteer ancestryGazetteer)
+            throws ClavinException {
+        this.ancestryGazetteer = ancestryGazetteer != null ? ancestryGazetteer : this;
+        this.metrics = config.metrics();
+        this.negativeCache = config.negativeCacheSize() > 0 ? new LruCache<>(config.negativeCacheSize()) : null;
+        this.executor = config.executor();
+        this.geoNameCache = config.geoNameCacheSize() > 0 ? new LruCache<>(config.geoNameCacheSize()) : null;
+        this.fuzzyExpander = new FuzzyExpander(INDEX_NAME.key(), config.fuzzyMaxEdits(), config.fuzzyPrefixLength(),
+                config.fuzzyMaxExpansions(), config.adaptiveFuzzyEdits(), config.fuzzyAutomatonCacheSize());
+        // everything opened so far is closed if the index cannot be opened
+        Directory directory = null;
+        DirectoryReader reader = null;
+        SymSpellIndex symSpell = null;
+        ExactNameStore exactNames = null;
+        boolean success = false;
         try {
 	        // load the Lucene index directory from disk
-	        index = FSDirectory.open(indexDir.toPath());
-	        indexSearcher = new IndexSearcher(DirectoryReader.open(index));
+	        directory = openDirectory(indexDir, config.directoryMode());
+	        index = directory;
+	        reader = DirectoryReader.open(index);
+	        indexSearcher = new IndexSearcher(reader);
 	
 	        // override default TF/IDF score to ignore multiple appearances
 	        indexSearcher.setSimilarity(new BinarySimilarity());
+
+	        // binary records written with different enumeration constants cannot be decoded
+	        String recordFormat = reader.getIndexCommit().getUserData().get(GeoNameRecordCodec.FORMAT_KEY);
+	        boolean hasGazetteerRecords = FieldInfos.getMergedFieldInfos(reader).fieldInfo(GEONAME.key()) != null;
+	        if (recordFormat != null && !GeoNameRecordCodec.FORMAT_ID.equals(recordFormat) && !hasGazetteerRecords) {
+	            throw new ClavinException(String.format("Unsupported GeoName record format [%s] and no gazetteer records in index.",
+	                    recordFormat));
+	        }
+	        binaryRecords = GeoNameRecordCodec.FORMAT_ID.equals(recordFormat) && (config.useBinaryRecords() || !hasGazetteerRecords);
+	        loadedFields = new HashSet<>(Arrays.asList(GEONAME_ID.key(), PARENT_ID.key(), INDEX_NAME.key(), PREFERRED_NAME.key()));
+	        if (!binaryRecords) {
+	            loadedFields.add(GEONAME.key());
+	        }
+
+	        earlyTermination = config.useEarlyTermination() && isPopulationSorted(reader);
+	        if (earlyTermination) {
+	            LOG.info("Index is sorted by population; exact queries terminate early");
+	        }
+
+	        if (config.pinAdminDivisions()) {
+	            pinAdminDivisions();
+	        }
+
+	        // indexes built before the name filter was introduced have none, and
+	        // a filter built for another commit of the index may miss its names
+	        nameFilter = config.useNameFilter() ? NameBloomFilter.read(index, reader) : null;
+	        if (nameFilter != null) {
+	            LOG.info("Loaded name filter: {} bytes", nameFilter.sizeInBytes());
+	        }
+
+	        symSpell = SymSpellIndex.open(index, reader);
+	        symSpellIndex = symSpell;
+	        if (symSpellIndex != null) {
+	            LOG.info("Opened symmetric delete index: {} terms, {} bytes", symSpellIndex.termCount(),
+	                    symSpellIndex.sizeInBytes());
+	        }
+
+	        // a store built for another commit of the index refers to the wrong documents and is not opened
+	        exactNames = config.useExactNameStore() ? ExactNameStore.open(index, reader) : null;
+	        exactNameStore = exactNames;
+	        if (exactNameStore != null) {
+	            LOG.info("Opened exact name store: {} bytes", exactNameStore.sizeInBytes());
+	        }
 	
-	        // run an initial throw-away query just to "prime the pump" for
-	        // the cache, so we can accurately measure performance speed
-	        // per: http://wiki.apache.org/lucene-java/ImproveSearchingSpeed
-	        indexSearcher.search(new QueryParser(INDEX_NAME.key(), INDEX_ANALYZER).parse("Reston"),
-	        		DEFAULT_MAX_RESULTS, POPULATION_SORT, true);		// double check that last arg...
-        } catch (ParseException pe) {
-            throw new ClavinException("Error executing priming query.", pe);
+	        if (config.warmer() == null) {
+	            // run an initial throw-away query just to "prime the pump" for
+	            // the cache, so we can accurately measure performance speed
+	            // per: http://wiki.apache.org/lucene-java/ImproveSearchingSpeed
+	            indexSearcher.search(QUERY_COMPILER.exactQuery("Reston"),
+	            		DEFAULT_MAX_RESULTS, POPULATION_SORT, true);		// double check that last arg...
+	        }
+	        success = true;
         } catch (IOException ioe) {
             throw new ClavinException("Error opening gazetteer index.", ioe);
+        } finally {
+            if (!success) {
+                IOUtils.closeWhileHandlingException(reader, symSpell, exactNames, directory);
+            }
+        }
+
+        // warm the index with representative queries before it is used
+        if (config.warmer() != null) {
+            try {
+                config.warmer().warm(this);
+            } catch (ClavinException | RuntimeException e) {
+                try {
+                    close();
+                } catch (IOException ioe) {
+                    e.addSuppressed(ioe);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Checks whether the index directory this gazetteer was opened from
+     * has had no commits since. Copies of the index held in memory are
+     * always current.
+     * @return <code>true</code> if the opened index is the latest commit
+     * @throws IOException if an error occurs reading the index directory
+     */
+    boolean isCurrent() throws IOException {
+        return ((DirectoryReader) indexSearcher.getIndexReader()).isCurrent();
+    }
+
+    /**
+     * Closes the index. Queries in progress must have finished; GeoNames
+     * already returned keep their data but can no longer lazily load
+     * their ancestry through this gazetteer.
+     * @throws IOException if an error occurs closing the index
+     */
+    @Override
+    public void close() throws IOException {
+        IOUtils.close(indexSearcher.getIndexReader(), symSpellIndex, exactNameStore, index);
+    }
+
+    /**
+     * Opens the index directory in the requested mode, logging how much
+     * of the index is resident so deployments can be sized.
+     * @param indexDir the index directory
+     * @param mode the directory mode
+     * @return the opened directory
+     * @throws IOException if an error occurs opening or copying the index
+     */
+    private static Directory openDirectory(final File indexDir, final IndexDirectoryMode mode) throws IOException {
+        switch (mode) {
+            case MMAP_PRELOAD:
+                MMapDirectory mmap = new MMapDirectory(indexDir.toPath());
+                mmap.setPreload(true);
+                LOG.info("Opened index [{}]: {} bytes memory-mapped with preload", indexDir, directorySize(mmap));
+                return mmap;
+            case HEAP:
+            case OFF_HEAP:
+                ByteBuffersDirectory copy = mode == IndexDirectoryMode.HEAP ? new ByteBuffersDirectory() :
+                        new ByteBuffersDirectory(new SingleInstanceLockFactory(), () -> new ByteBuffersDataOutput(
+                                ByteBuffersDataOutput.DEFAULT_MIN_BITS_PER_BLOCK, ByteBuffersDataOutput.DEFAULT_MAX_BITS_PER_BLOCK,
+                                ByteBuffer::allocateDirect, ByteBuffersDataOutput.NO_REUSE),
+                                ByteBuffersDirectory.OUTPUT_AS_MANY_BUFFERS);
+                try (FSDirectory source = FSDirectory.open(indexDir.toPath())) {
+                    for (String file : source.listAll()) {
+                        copy.copyFrom(source, file, file, IOContext.READONCE);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // release the partial copy, which may hold direct memory
+                    IOUtils.closeWhileHandlingException(copy);
+                    throw e;
+                }
+                LOG.info("Opened index [{}]: {} bytes resident {}", indexDir, directorySize(copy),
+                        mode == IndexDirectoryMode.HEAP ? "on heap" : "in direct buffers");
+                return copy;
+            case NIO:
+                NIOFSDirectory nio = new NIOFSDirectory(indexDir.toPath());
+                LOG.info("Opened index [{}]: 0 bytes resident, {} bytes read through the page cache", indexDir, directorySize(nio));
+                return nio;
+            case DEFAULT:
+            default:
+                FSDirectory fs = FSDirectory.open(indexDir.toPath());
+                LOG.info("Opened index [{}]: {} bytes with {}", indexDir, directorySize(fs), fs.getClass().getSimpleName());
+                return fs;
         }
     }
 
+    /**
+     * Checks whether an index was built sorted by population, with the name
+     * lengths needed to find the best scoring exact matches.
+     * @param reader the index reader
+     * @return <code>true</code> if every segment is sorted by population
+     */
+    private static boolean isPopulationSorted(final DirectoryReader reader) {
+        if (reader.leaves().isEmpty() || FieldInfos.getMergedFieldInfos(reader).fieldInfo(NAME_LENGTH.key()) == null) {
+            return false;
+        }
+        for (LeafReaderContext leaf : reader.leaves()) {
+            if (!IndexDirectoryBuilder.POPULATION_INDEX_SORT.equals(leaf.reader().getMetaData().getSort())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long directorySize(final Directory directory) throws IOException {
+        long size = 0;
+        for (String file : directory.listAll()) {
+            size += directory.fileLength(file);
+        }
+        return size;
+    }
+
     /**
      * Execute a query against the Lucene gazetteer index using the provided configuration,
      * returning the top matches as {@link ResolvedLocation}s.
@@ -177,6 +465,99 @@ public class LuceneGazetteer implements Gazetteer {
      */
     @Override
     public List<ResolvedLocation> getClosestLocations(final GazetteerQuery query) throws ClavinException {
+        return getClosestLocations(query, query != null ? buildFilters(query) : null);
+    }
+
+    /**
+     * Execute a batch of queries against the Lucene gazetteer index, returning
+     * the top matches for each query in the order the queries were provided.
+     *
+     * Repeated mentions of a name are searched only once and their matches
+     * re-bound to each mention, queries with the same restrictions share
+     * one set of Lucene filters and, if this gazetteer was configured with
+     * an executor, distinct names are searched in parallel.
+     *
+     * @param queries            the configuration parameters for each query
+     * @return                   the list of potential matches for each query
+     * @throws ClavinException   if an error occurs
+     */
+    @Override
+    public List<List<ResolvedLocation>> getClosestLocations(final List<GazetteerQuery> queries) throws ClavinException {
+        // group the queries on their canonical form, keeping the positions of every mention
+        Map<GazetteerQuery, List<Integer>> distinctQueries = new LinkedHashMap<>();
+        List<List<ResolvedLocation>> results = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            GazetteerQuery key = CachingGazetteer.canonicalQuery(queries.get(i));
+            results.add(key == null ? Collections.emptyList() : null);
+            if (key != null) {
+                distinctQueries.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        // build the filters on this thread, once for each distinct set of restrictions
+        Map<FilterKey, BooleanQuery> filters = new HashMap<>();
+        List<GazetteerQuery> searches = new ArrayList<>(distinctQueries.size());
+        List<BooleanQuery> searchFilters = new ArrayList<>(distinctQueries.size());
+        for (List<Integer> mentions : distinctQueries.values()) {
+            GazetteerQuery query = queries.get(mentions.get(0));
+            searches.add(query);
+            searchFilters.add(filters.computeIfAbsent(new FilterKey(query), k -> buildFilters(query)));
+        }
+
+        List<List<ResolvedLocation>> matches = new ArrayList<>(searches.size());
+        if (executor == null || searches.size() < 2) {
+            for (int i = 0; i < searches.size(); i++) {
+                matches.add(getClosestLocations(searches.get(i), searchFilters.get(i)));
+            }
+        } else {
+            List<CompletableFuture<List<ResolvedLocation>>> futures = new ArrayList<>(searches.size());
+            for (int i = 0; i < searches.size(); i++) {
+                final GazetteerQuery query = searches.get(i);
+                final BooleanQuery queryFilters = searchFilters.get(i);
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return getClosestLocations(query, queryFilters);
+                    } catch (ClavinException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor));
+            }
+            for (CompletableFuture<List<ResolvedLocation>> future : futures) {
+                try {
+                    matches.add(future.join());
+                } catch (CompletionException ce) {
+                    if (ce.getCause() instanceof ClavinException) {
+                        throw (ClavinException) ce.getCause();
+                    }
+                    throw new ClavinException("Error executing batch query.", ce.getCause());
+                }
+            }
+        }
+
+        // the first mention of each name receives its matches, later mentions a re-bound copy
+        int search = 0;
+        for (List<Integer> mentions : distinctQueries.values()) {
+            List<ResolvedLocation> searchMatches = matches.get(search++);
+            results.set(mentions.get(0), searchMatches);
+            for (int i = 1; i < mentions.size(); i++) {
+                int mention = mentions.get(i);
+                results.set(mention, CachingGazetteer.rebind(searchMatches, queries.get(mention).getOccurrence()));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Execute a single query against the Lucene gazetteer index using
+     * previously built filters.
+     *
+     * @param query              the configuration parameters for the query
+     * @param filters            the Lucene filters for the query restrictions
+     * @return                   the list of ResolvedLocations as potential matches
+     * @throws ClavinException   if an error occurs
+     */
+    private List<ResolvedLocation> getClosestLocations(final GazetteerQuery query, final BooleanQuery filters)
+            throws ClavinException {
         // sanitize the query input
         String sanitizedLocationName = sanitizeQueryText(query);
 
@@ -187,11 +568,30 @@ public class LuceneGazetteer implements Gazetteer {
 
         LocationOccurrence location = query.getOccurrence();	//NOSONAR
         int maxResults = query.getMaxResults() > 0 ? query.getMaxResults() : DEFAULT_MAX_RESULTS;
+
+        // short-circuit names already known to have neither exact nor fuzzy matches
+        NegativeKey negativeKey = negativeCache != null ?
+                new NegativeKey(sanitizedLocationName, new FilterKey(query), query.getFuzzyBackend()) : null;
+        if (negativeKey != null && negativeCache.get(negativeKey) != null) {
+            metrics.increment(ClavinMetrics.Counter.NEGATIVE_CACHE_HITS);
+            LOG.debug("No match found for: '{}' [cached]", location.getText());
+            return new ArrayList<>();
+        }
+
         List<ResolvedLocation> matches;
+        boolean fuzzyQueried = false;
         try {
-            // attempt to find an exact match for the query
-            matches = executeQuery(
-            		location, sanitizedLocationName, query, maxResults, false, null);
+            // attempt to find an exact match for the query, unless the name filter
+            // shows one of its terms is not in the index
+            if (mayMatchExactly(location.getText())) {
+                long exactStart = System.nanoTime();
+                matches = executeQuery(
+                		location, sanitizedLocationName, query, filters, maxResults, false, null);
+                metrics.recordTime(ClavinMetrics.Timer.EXACT_QUERY, System.nanoTime() - exactStart);
+            } else {
+                metrics.increment(ClavinMetrics.Counter.EXACT_QUERIES_SKIPPED);
+                matches = new ArrayList<>();
+            }
             if (LOG.isDebugEnabled()) {
                 for (ResolvedLocation loc : matches) {
                     LOG.debug("{}", loc);
@@ -201,8 +601,12 @@ public class LuceneGazetteer implements Gazetteer {
             if (query.getFuzzyMode().useFuzzyMatching(maxResults, matches.size())) {
                 // provide any exact matches if we are running a fuzzy query so they can be considered for deduplication
                 // and result count
+                metrics.increment(ClavinMetrics.Counter.FUZZY_FALLBACKS);
+                long fuzzyStart = System.nanoTime();
                 matches = executeQuery(
-                		location, sanitizedLocationName, query, maxResults, true, matches);
+                		location, sanitizedLocationName, query, filters, maxResults, true, matches);
+                metrics.recordTime(ClavinMetrics.Timer.FUZZY_QUERY, System.nanoTime() - fuzzyStart);
+                fuzzyQueried = true;
                 if (LOG.isDebugEnabled()) {
                     for (ResolvedLocation loc : matches) {
                         LOG.debug("{}[fuzzy]", loc);
@@ -211,9 +615,11 @@ public class LuceneGazetteer implements Gazetteer {
             }
             if (matches.isEmpty()) {
                 LOG.debug("No match found for: '{}'", location.getText());
+                // without any fuzzy match, no query for this name and these filters can match
+                if (fuzzyQueried && negativeKey != null) {
+                    negativeCache.put(negativeKey, Boolean.TRUE);
+                }
             }
-        } catch (ParseException pe) {
-            throw new ClavinException(String.format("Error parsing query for: '%s'}", location.getText()), pe);
         } catch (IOException ioe) {
             throw new ClavinException(String.format("Error executing query for: '%s'}", location.getText()), ioe);
         }
@@ -226,51 +632,119 @@ public class LuceneGazetteer implements Gazetteer {
      * @param location the location occurrence
      * @param sanitizedName the sanitized name of the search location
      * @param filterQuery base query for determining how to handle duplicates, ancestors, historical locations, and code restrictions 
-     * @param filter the filter used to restrict the search results
+     * @param filters the filters used to restrict the search results
      * @param maxResults the maximum number of results
      * @param fuzzy is this a fuzzy query
      * @param previousResults the results of a previous query that should be used for duplicate filtering and appended to until
      *                        no additional matches are found or maxResults has been reached; the input list will not be modified
      *                        and may be <code>null</code>
      * @return the ResolvedLocations with ancestry resolved matching the query
-     * @throws ParseException if an error occurs generating the query
-     * @throws IOException if an error occurs executing the query
+     * @throws IOException if an error occurs generating or executing the query
      */
     private List<ResolvedLocation> executeQuery(final LocationOccurrence location, final String sanitizedName,
-    		GazetteerQuery filterQuery, final int maxResults, final boolean fuzzy,
-            final List<ResolvedLocation> previousResults) throws ParseException, IOException {
+    		GazetteerQuery filterQuery, final BooleanQuery filters, final int maxResults, final boolean fuzzy,
+            final List<ResolvedLocation> previousResults) throws IOException {
     	// combine filters with search term query
-    	QueryParser queryParser = new QueryParser(INDEX_NAME.key(), INDEX_ANALYZER);
-    	Query query = queryParser.parse(String.format(fuzzy ? FUZZY_FMT : EXACT_MATCH_FMT, sanitizedName));
+    	Query query = fuzzy ? QUERY_COMPILER.fuzzyQuery(sanitizedName) : QUERY_COMPILER.exactQuery(sanitizedName);
     	
-    	// fuzzy queries use a boolean rewrite that adds all unique fuzzy matches together
-    	// instead, only consider the best individual matching term in the document
-    	// i.e. search "Bstn~2" should score "Boston Basin" as though it had only one match, not two  
-    	if (query instanceof FuzzyQuery) {
-    		FuzzyQuery fuzzyQuery = (FuzzyQuery)query;
-    		fuzzyQuery.setRewriteMethod(new UniqueFuzzyScoringRewrite());
-    		fuzzyQuery.rewrite(indexSearcher.getIndexReader());
-    		query = fuzzyQuery;
+    	// fuzzy terms are expanded into at most a bounded number of the closest index terms; a lone
+    	// fuzzy term only considers the best individual matching term in the document
+    	// i.e. search "Bstn~2" should score "Boston Basin" as though it had only one match, not two
+    	if (fuzzy) {
+    		SymSpellIndex symSpell = filterQuery.getFuzzyBackend() == FuzzyBackend.SYMSPELL ? symSpellIndex : null;
+    		query = fuzzyExpander.expand(indexSearcher.getIndexReader(), query, symSpell,
+    				expansions -> metrics.recordValue(ClavinMetrics.Distribution.FUZZY_EXPANSIONS, expansions));
     	}
     	
-    	Builder builder = buildFilters(filterQuery);
+    	// the best scoring exact matches are those whose names have exactly as many tokens as the
+    	// query; if there are enough of them, the most populous can be read from the exact name store
+    	// or, in a population-sorted index, collected without scoring and sorting every match
+    	int nameLength = fuzzy ? 0 : termCount(query);
+    	if (nameLength > 0 && SmallFloat.intToByte4(nameLength) == SmallFloat.intToByte4(nameLength + 1)) {
+    	    // very long names share their length norm, and score, with longer names
+    	    nameLength = 0;
+    	}
+
+    	Builder builder = new BooleanQuery.Builder();
+    	for (BooleanClause clause : filters) {
+    		builder.add(clause);
+    	}
     	builder.add(query, Occur.MUST);
     	query = builder.build();
 
-        List<ResolvedLocation> matches = new ArrayList<>(maxResults);
         Map<Integer, Set<GeoName>> parentMap = new HashMap<>();
+        List<ResolvedLocation> matches = null;
+        // the best matches are also the entries of the exact name store, already in population order;
+        // ancestors are not recorded there, so parent ID restrictions always search the index
+        if (nameLength > 0 && exactNameStore != null && filterQuery.getParentIds().isEmpty()) {
+            matches = storedMatches(location, sanitizedName, filterQuery, maxResults, previousResults, parentMap);
+            if (matches != null) {
+                metrics.increment(ClavinMetrics.Counter.EXACT_STORE_HITS);
+            } else {
+                parentMap.clear();
+            }
+        }
+        if (matches == null && nameLength > 0 && earlyTermination) {
+            Query bestMatches = new BooleanQuery.Builder()
+                    .add(query, Occur.FILTER)
+                    .add(IntPoint.newExactQuery(NAME_LENGTH.key(), nameLength), Occur.FILTER)
+                    .build();
+            matches = collectMatches(location, bestMatches, true, filterQuery, maxResults, fuzzy, previousResults, parentMap);
+            if (matches.size() < maxResults) {
+                // the best matches cannot fill the results; rank all matches
+                matches = null;
+                parentMap.clear();
+            }
+        }
+        if (matches == null) {
+            matches = collectMatches(location, query, false, filterQuery, maxResults, fuzzy, previousResults, parentMap);
+        }
+        // if any results need ancestry resolution, resolve parents
+        // this map should only contain GeoNames if ancestryMode == ON_CREATE
+        if (!parentMap.isEmpty()) {
+            resolveAncestry(parentMap);
+        }
+        //Explanation explanation1 = indexSearcher.explain(query, 17254382);	// compare incorrect score
+        //Explanation explanation2 = indexSearcher.explain(query, 20381356);	// compare correct score
+        return matches;
+    }
 
+    /**
+     * Get the number of terms of an exact name query.
+     * @param query the exact name query
+     * @return the number of terms
+     */
+    private static int termCount(final Query query) {
+        if (query instanceof TermQuery) {
+            return 1;
+        } else if (query instanceof PhraseQuery) {
+            return ((PhraseQuery) query).getTerms().length;
+        }
+        return 0;
+    }
+
+    /**
+     * Collects at most maxResults matches of a query, in descending order of
+     * score and population or, when terminating early, of population alone.
+     * @param location the location occurrence
+     * @param query the query, including filters
+     * @param earlyTerminate collect the most populous matches without scoring, stopping once
+     *                       maxResults matches are found; requires a population-sorted index
+     * @param filterQuery base query for determining how to handle duplicates and ancestors
+     * @param maxResults the maximum number of results
+     * @param fuzzy is this a fuzzy query
+     * @param previousResults the results of a previous query to deduplicate against and append to; may be <code>null</code>
+     * @param parentMap receives the GeoNames whose ancestry must be resolved by parent ID
+     * @return the ResolvedLocations matching the query
+     * @throws IOException if an error occurs executing the query
+     */
+    private List<ResolvedLocation> collectMatches(final LocationOccurrence location, final Query query,
+            final boolean earlyTerminate, final GazetteerQuery filterQuery, final int maxResults, final boolean fuzzy,
+            final List<ResolvedLocation> previousResults, final Map<Integer, Set<GeoName>> parentMap) throws IOException {
         // reuse GeoName instances so all ancestry is correctly resolved if multiple names for
         // the same GeoName match the query
         Map<Integer, GeoName> geonameMap = new HashMap<>();
-        // if we are filling previous results, add them to the match list and the geoname map
-        // so they can be used for deduplication or re-used if additional matches are found
-        if (previousResults != null) {
-            matches.addAll(previousResults);
-            for (ResolvedLocation loc : previousResults) {
-                geonameMap.put(loc.getGeoname().getGeonameID(), loc.getGeoname());
-            }
-        }
+        List<ResolvedLocation> matches = startMatches(previousResults, maxResults, geonameMap);
 
         // short circuit if we were provided enough previous results to satisfy maxResults
         // we do this here because the query loop condition is evaluated after the query
@@ -287,67 +761,169 @@ public class LuceneGazetteer implements Gazetteer {
             // on Lucene match score and population for the associated
             // GeoNames record
         	//TopDocs results = indexSearcher.
-            TopDocs results = indexSearcher.searchAfter(lastDoc, query, maxResults, POPULATION_SORT, true);	// double check last arg
+            TopDocs results;
+            if (earlyTerminate) {
+                // the collector stops each segment once it has maxResults hits in index order
+                TopFieldCollector collector = TopFieldCollector.create(IndexDirectoryBuilder.POPULATION_INDEX_SORT,
+                        maxResults, (FieldDoc) lastDoc, maxResults);
+                indexSearcher.search(query, collector);
+                results = collector.topDocs();
+            } else {
+                results = indexSearcher.searchAfter(lastDoc, query, maxResults, POPULATION_SORT, true);	// double check last arg
+            }
             // set lastDoc to null so we don't infinite loop if results is empty
             lastDoc = null;
             // populate results if matches were discovered
             for (ScoreDoc scoreDoc : results.scoreDocs) {
                 lastDoc = scoreDoc;
-                Document doc = indexSearcher.doc(scoreDoc.doc);
-                // reuse GeoName instances so all ancestry is correctly resolved if multiple names for
-                // the same GeoName match the query
-                int geonameID = GEONAME_ID.getValue(doc);
-                GeoName geoname = geonameMap.get(geonameID);
-                if (geoname == null) {
-                    geoname = BasicGeoName.parseFromGeoNamesRecord((String) GEONAME.getValue(doc), (String) PREFERRED_NAME.getValue(doc));
-                    geonameMap.put(geonameID, geoname);
-                } else if (filterQuery.isFilterDupes()) {
-                    // if we have already seen this GeoName and we are removing duplicates, skip to the next doc
-                    continue;
-                }
-                
-                String matchedName = INDEX_NAME.getValue(doc);
-                if (!geoname.isAncestryResolved()) {
-                    IndexableField parentIdField = doc.getField(IndexField.PARENT_ID.key());
-                    Integer parentId = parentIdField != null && parentIdField.numericValue() != null ?
-                            parentIdField.numericValue().intValue() : null;
-                    if (parentId != null) {
-                        // if we are lazily or manually loading ancestry, replace GeoName with a LazyAncestryGeoName
-                        // otherwise, build the parent resolution map
-                        switch (filterQuery.getAncestryMode()) {
-                            case LAZY:
-                                geoname = new LazyAncestryGeoName(geoname, parentId, this);
-                                break;
-                            case MANUAL:
-                                geoname = new LazyAncestryGeoName(geoname, parentId);
-                                break;
-                            case ON_CREATE:
-                                Set<GeoName> geos = parentMap.computeIfAbsent(parentId, k -> new HashSet<>());
-                                geos.add(geoname);
-                                break;
-                        }
-                    }
-                }
-                matches.add(new ResolvedLocation(location, geoname, matchedName, fuzzy));
+                addMatch(location, scoreDoc.doc, filterQuery, fuzzy, matches, geonameMap, parentMap);
                 // stop processing results if we have reached maxResults matches
                 if (matches.size() >= maxResults) {
                     break;
                 }
             }
         } while (filterQuery.isFilterDupes() && lastDoc != null && matches.size() < maxResults);
-        // if any results need ancestry resolution, resolve parents
-        // this map should only contain GeoNames if ancestryMode == ON_CREATE
-        if (!parentMap.isEmpty()) {
-            resolveParents(parentMap);
+        return matches;
+    }
+
+    /**
+     * Collects at most maxResults of the best scoring matches of an exact
+     * query from the exact name store, in the order a search would rank them.
+     * @param location the location occurrence
+     * @param sanitizedName the sanitized location name
+     * @param filterQuery base query for determining how to filter matches and handle duplicates and ancestors;
+     *                    it must not restrict parent IDs
+     * @param maxResults the maximum number of results
+     * @param previousResults the results of a previous query to deduplicate against and append to; may be <code>null</code>
+     * @param parentMap receives the GeoNames whose ancestry must be resolved by parent ID
+     * @return the ResolvedLocations matching the query, or <code>null</code> if the store holds fewer than
+     *         maxResults matches and the index must be searched
+     * @throws IOException if an error occurs reading the store or the index
+     */
+    private List<ResolvedLocation> storedMatches(final LocationOccurrence location, final String sanitizedName,
+            final GazetteerQuery filterQuery, final int maxResults, final List<ResolvedLocation> previousResults,
+            final Map<Integer, Set<GeoName>> parentMap) throws IOException {
+        ExactNameStore.Entries entries = exactNameStore.lookup(ExactNameStore.key(INDEX_ANALYZER, sanitizedName));
+        Map<Integer, GeoName> geonameMap = new HashMap<>();
+        List<ResolvedLocation> matches = startMatches(previousResults, maxResults, geonameMap);
+
+        Set<FeatureCode> codes = filterQuery.getFeatureCodes();
+        boolean filterCodes = !(codes.isEmpty() || ALL_CODES.equals(codes));
+        for (int i = 0; i < entries.size() && matches.size() < maxResults; i++) {
+            // apply the search filters, and skip duplicates before loading their documents
+            if ((!filterQuery.isIncludeHistorical() && entries.isHistorical(i))
+                    || (filterCodes && !codes.contains(entries.featureCode(i)))
+                    || (filterQuery.isFilterDupes() && geonameMap.containsKey(entries.geonameId(i)))) {
+                continue;
+            }
+            addMatch(location, entries.docId(i), filterQuery, false, matches, geonameMap, parentMap);
+        }
+        return matches.size() >= maxResults ? matches : null;
+    }
+
+    /**
+     * Starts a list of matches with the results of a previous query, if any,
+     * adding their GeoNames to the map of GeoNames by ID so they can be used
+     * for deduplication or re-used if additional matches are found.
+     * @param previousResults the results of a previous query; may be <code>null</code>
+     * @param maxResults the maximum number of results
+     * @param geonameMap receives the GeoNames of the previous results by ID
+     * @return the list of matches
+     */
+    private static List<ResolvedLocation> startMatches(final List<ResolvedLocation> previousResults,
+            final int maxResults, final Map<Integer, GeoName> geonameMap) {
+        List<ResolvedLocation> matches = new ArrayList<>(maxResults);
+        if (previousResults != null) {
+            matches.addAll(previousResults);
+            for (ResolvedLocation loc : previousResults) {
+                geonameMap.put(loc.getGeoname().getGeonameID(), loc.getGeoname());
+            }
         }
-        //Explanation explanation1 = indexSearcher.explain(query, 17254382);	// compare incorrect score
-        //Explanation explanation2 = indexSearcher.explain(query, 20381356);	// compare correct score
         return matches;
     }
 
+    /**
+     * Adds the GeoName of a matching document to the matches, unless it has
+     * already been matched and duplicates are being removed.
+     * @param location the location occurrence
+     * @param docId the ID of the matching document
+     * @param filterQuery base query for determining how to handle duplicates and ancestors
+     * @param fuzzy is this a fuzzy match
+     * @param matches receives the match
+     * @param geonameMap the GeoNames matched so far by ID, reused so all ancestry is correctly resolved
+     *                   if multiple names for the same GeoName match the query
+     * @param parentMap receives the GeoNames whose ancestry must be resolved by parent ID
+     * @throws IOException if an error occurs loading the document
+     */
+    private void addMatch(final LocationOccurrence location, final int docId, final GazetteerQuery filterQuery,
+            final boolean fuzzy, final List<ResolvedLocation> matches, final Map<Integer, GeoName> geonameMap,
+            final Map<Integer, Set<GeoName>> parentMap) throws IOException {
+        Document doc = indexSearcher.doc(docId, loadedFields);
+        // reuse GeoName instances so all ancestry is correctly resolved if multiple names for
+        // the same GeoName match the query
+        int geonameID = GEONAME_ID.getValue(doc);
+        GeoName geoname = geonameMap.get(geonameID);
+        if (geoname == null) {
+            geoname = readGeoName(docId, doc);
+            geonameMap.put(geonameID, geoname);
+        } else if (filterQuery.isFilterDupes()) {
+            // if we have already seen this GeoName and we are removing duplicates, skip it
+            return;
+        }
+        
+        String matchedName = INDEX_NAME.getValue(doc);
+        if (!geoname.isAncestryResolved()) {
+            IndexableField parentIdField = doc.getField(IndexField.PARENT_ID.key());
+            Integer parentId = parentIdField != null && parentIdField.numericValue() != null ?
+                    parentIdField.numericValue().intValue() : null;
+            if (parentId != null) {
+                // if we are lazily or manually loading ancestry, replace GeoName with a LazyAncestryGeoName
+                // otherwise, build the parent resolution map
+                switch (filterQuery.getAncestryMode()) {
+                    case LAZY:
+                        geoname = new LazyAncestryGeoName(geoname, parentId, ancestryGazetteer);
+                        break;
+                    case MANUAL:
+                        geoname = new LazyAncestryGeoName(geoname, parentId);
+                        break;
+                    case ON_CREATE:
+                        Set<GeoName> geos = parentMap.computeIfAbsent(parentId, k -> new HashSet<>());
+                        geos.add(geoname);
+                        break;
+                }
+            }
+        }
+        matches.add(new ResolvedLocation(location, geoname, matchedName, fuzzy));
+    }
+
+    /**
+     * Checks the analyzed terms of a location name against the name filter.
+     * Exact queries are phrase queries, so they can only match if the index
+     * contains every one of their terms.
+     * @param name the location name
+     * @return <code>false</code> if an exact query for the name definitely has no matches
+     * @throws IOException if an error occurs analyzing the name
+     */
+    private boolean mayMatchExactly(final String name) throws IOException {
+        if (nameFilter == null) {
+            return true;
+        }
+        boolean mayMatch = true;
+        try (TokenStream tokens = INDEX_ANALYZER.tokenStream(INDEX_NAME.key(), name.trim().toLowerCase())) {
+            TermToBytesRefAttribute term = tokens.addAttribute(TermToBytesRefAttribute.class);
+            tokens.reset();
+            while (mayMatch && tokens.incrementToken()) {
+                mayMatch = nameFilter.mightContain(term.getBytesRef());
+            }
+            tokens.end();
+        }
+        return mayMatch;
+    }
+
     /**
      * Sanitizes the text of the LocationOccurrence in the query parameters for
-     * use in a Lucene query, returning an empty string if no text is found.
+     * use in a Lucene query by trimming and lower-casing it, returning an empty
+     * string if no text is found.
      * @param query the query configuration
      * @return the santitized query text or the empty string if there is no query text
      */
@@ -356,7 +932,7 @@ public class LuceneGazetteer implements Gazetteer {
         if (query != null && query.getOccurrence() != null) {
             String text = query.getOccurrence().getText();
             if (text != null) {
-                sanitized = escape(text.trim().toLowerCase());
+                sanitized = text.trim().toLowerCase();
             }
         }
         return sanitized;
@@ -365,10 +941,10 @@ public class LuceneGazetteer implements Gazetteer {
     /**
      * Builds a Lucene search filter based on the provided parameters.
      * @param params the query configuration parameters
-     * @return a Lucene search filter that will restrict the returned documents to the criteria provided or <code>null</code>
-     *         if no filtering is necessary
+     * @return the Lucene search filters that will restrict the returned documents to the criteria provided; they have
+     *         no clauses if no filtering is necessary
      */
-    private Builder buildFilters(final GazetteerQuery params) {
+    private BooleanQuery buildFilters(final GazetteerQuery params) {
         List<Query> queryParts = new ArrayList<>();
 
         // create the historical locations restriction if we are not including historical locations
@@ -400,25 +976,50 @@ public class LuceneGazetteer implements Gazetteer {
         for (Query part : queryParts) {
         	builder.add(part, Occur.MUST);
         }
-        return builder;
+        return builder.build();
     }
 
     /**
-     * Retrieves and sets the parents of the provided children.
+     * Retrieves and sets the full ancestry of the provided children,
+     * recording the time taken.
+     * @param childMap the map of parent geonameID to the set of children that belong to it
+     * @throws IOException if an error occurs during parent resolution
+     */
+    private void resolveAncestry(final Map<Integer, Set<GeoName>> childMap) throws IOException {
+        long start = System.nanoTime();
+        resolveParents(childMap);
+        metrics.recordTime(ClavinMetrics.Timer.ANCESTRY, System.nanoTime() - start);
+    }
+
+    /**
+     * Retrieves and sets the parents of the provided children, looking up
+     * all uncached parents of one ancestry level with a single search.
      * @param childMap the map of parent geonameID to the set of children that belong to it
      * @throws IOException if an error occurs during parent resolution
      */
     private void resolveParents(final Map<Integer, Set<GeoName>> childMap) throws IOException {
         Map<Integer, GeoName> parentMap = new HashMap<>();
         Map<Integer, Set<GeoName>> grandParentMap = new HashMap<>();
+        List<GeoName> loaded = new ArrayList<>();
+        List<Integer> uncachedIds = new ArrayList<>();
         for (Integer parentId : childMap.keySet()) {
-            // Lucene query used to look for exact match on the "geonameID" field
-            Query q = IntPoint.newExactQuery(GEONAME_ID.key(), parentId);
-            TopDocs results = indexSearcher.search(q, 1, POPULATION_SORT, true);		// another mystery bool
-            if (results.scoreDocs.length > 0) {
-                Document doc = indexSearcher.doc(results.scoreDocs[0].doc);
-                GeoName parent = BasicGeoName.parseFromGeoNamesRecord(doc.get(GEONAME.key()), doc.get(PREFERRED_NAME.key()));
+            GeoName cached = getCachedGeoName(parentId);
+            if (cached != null) {
+                parentMap.put(parentId, cached);
+            } else {
+                uncachedIds.add(parentId);
+            }
+        }
+        // Lucene query used to look for exact matches on the "geonameID" field
+        Map<Integer, Integer> parentDocs = uncachedIds.isEmpty() ? Collections.emptyMap() :
+                findDocsByGeoNameId(IntPoint.newSetQuery(GEONAME_ID.key(), uncachedIds));
+        for (Integer parentId : uncachedIds) {
+            Integer docId = parentDocs.get(parentId);
+            if (docId != null) {
+                Document doc = indexSearcher.doc(docId, loadedFields);
+                GeoName parent = readGeoName(docId, doc);
                 parentMap.put(parent.getGeonameID(), parent);
+                loaded.add(parent);
                 if (!parent.isAncestryResolved()) {
                     Integer grandParentId = PARENT_ID.getValue(doc);
                     if (grandParentId != null) {
@@ -435,6 +1036,9 @@ public class LuceneGazetteer implements Gazetteer {
         if (!grandParentMap.isEmpty()) {
             resolveParents(grandParentMap);
         }
+        for (GeoName parent : loaded) {
+            cacheGeoName(parent);
+        }
 
         // set parents of children
         for (Map.Entry<Integer, Set<GeoName>> entry : childMap.entrySet()) {
@@ -451,6 +1055,139 @@ public class LuceneGazetteer implements Gazetteer {
         }
     }
 
+    /**
+     * Reads the GeoName stored in a matching document, decoding its binary
+     * record if the index has compatible ones and parsing its gazetteer
+     * record otherwise.
+     * @param docId the ID of the document in the index
+     * @param doc the stored fields of the document
+     * @return the GeoName
+     * @throws IOException if an error occurs reading the binary record
+     */
+    private GeoName readGeoName(final int docId, final Document doc) throws IOException {
+        String preferredName = PREFERRED_NAME.getValue(doc);
+        if (binaryRecords) {
+            List<LeafReaderContext> leaves = indexSearcher.getIndexReader().leaves();
+            LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+            BinaryDocValues records = DocValues.getBinary(leaf.reader(), GEONAME_RECORD.key());
+            if (records.advanceExact(docId - leaf.docBase)) {
+                return GeoNameRecordCodec.decode(records.binaryValue(), preferredName);
+            }
+            throw new IOException(String.format("Missing GeoName record for document [%d]", docId));
+        }
+        return BasicGeoName.parseFromGeoNamesRecord((String) GEONAME.getValue(doc), preferredName);
+    }
+
+    /**
+     * Get a GeoName with resolved ancestry from the pinned administrative
+     * divisions or the GeoName cache.
+     * @param geonameId the ID of the GeoName
+     * @return the GeoName or <code>null</code> if it is not cached
+     */
+    private GeoName getCachedGeoName(final int geonameId) {
+        GeoName geoName = pinnedGeoNames.get(geonameId);
+        if (geoName == null && geoNameCache != null) {
+            geoName = geoNameCache.get(geonameId);
+        }
+        if (geoName != null) {
+            metrics.increment(ClavinMetrics.Counter.GEONAME_CACHE_HITS);
+        }
+        return geoName;
+    }
+
+    /**
+     * Caches a GeoName by ID once its ancestry is resolved; GeoNames with
+     * partial ancestry are not cached so every cache hit is complete.
+     * @param geoName the GeoName
+     */
+    private void cacheGeoName(final GeoName geoName) {
+        if (geoNameCache != null && geoName.isAncestryResolved() && !pinnedGeoNames.containsKey(geoName.getGeonameID())) {
+            geoNameCache.put(geoName.getGeonameID(), geoName);
+        }
+    }
+
+    /**
+     * Finds one matching document for each GeoName matching a query. The
+     * search is neither scored nor sorted, and GeoName IDs are read from
+     * doc values rather than stored fields; every document of a GeoName
+     * holds the same record, so any of them will do.
+     * @param query the query
+     * @return the ID of a matching document by GeoName ID
+     * @throws IOException if an error occurs searching the index
+     */
+    private Map<Integer, Integer> findDocsByGeoNameId(final Query query) throws IOException {
+        final Map<Integer, Integer> docs = new HashMap<>();
+        indexSearcher.search(query, new SimpleCollector() {
+            private int docBase;
+            private NumericDocValues geonameIds;
+
+            @Override
+            protected void doSetNextReader(final LeafReaderContext context) throws IOException {
+                docBase = context.docBase;
+                geonameIds = DocValues.getNumeric(context.reader(), GEONAME_ID.key());
+            }
+
+            @Override
+            public void collect(final int doc) throws IOException {
+                if (geonameIds.advanceExact(doc)) {
+                    docs.putIfAbsent((int) geonameIds.longValue(), docBase + doc);
+                }
+            }
+
+            @Override
+            public ScoreMode scoreMode() {
+                return ScoreMode.COMPLETE_NO_SCORES;
+            }
+        });
+        return docs;
+    }
+
+    /**
+     * Loads all countries, first and second-order administrative divisions
+     * and resolves their ancestry, largely from each other, keeping them
+     * in memory for the life of this gazetteer.
+     * @throws IOException if an error occurs reading the index
+     */
+    private void pinAdminDivisions() throws IOException {
+        long start = System.nanoTime();
+        Builder codeQuery = new Builder();
+        for (FeatureCode code : PINNED_CODES) {
+            codeQuery.add(new TermQuery(new Term(FEATURE_CODE.key(), code.name())), Occur.SHOULD);
+        }
+        Map<Integer, GeoName> divisions = new HashMap<>();
+        Map<Integer, Integer> parentIds = new HashMap<>();
+        for (Map.Entry<Integer, Integer> entry : findDocsByGeoNameId(codeQuery.build()).entrySet()) {
+            Document doc = indexSearcher.doc(entry.getValue(), loadedFields);
+            divisions.put(entry.getKey(), readGeoName(entry.getValue(), doc));
+            Integer parentId = PARENT_ID.getValue(doc);
+            if (parentId != null) {
+                parentIds.put(entry.getKey(), parentId);
+            }
+        }
+
+        // link divisions to pinned parents, then look up the parents that are not pinned
+        Map<Integer, Set<GeoName>> childMap = new HashMap<>();
+        for (GeoName geoName : divisions.values()) {
+            Integer parentId = parentIds.get(geoName.getGeonameID());
+            if (!geoName.isAncestryResolved() && parentId != null) {
+                GeoName parent = divisions.get(parentId);
+                if (parent == null || !geoName.setParent(parent)) {
+                    childMap.computeIfAbsent(parentId, k -> new HashSet<>()).add(geoName);
+                }
+            }
+        }
+        if (!childMap.isEmpty()) {
+            resolveParents(childMap);
+        }
+        for (GeoName geoName : divisions.values()) {
+            if (geoName.isAncestryResolved()) {
+                pinnedGeoNames.put(geoName.getGeonameID(), geoName);
+            }
+        }
+        LOG.info("Pinned {} administrative divisions in {} ms", pinnedGeoNames.size(),
+                (System.nanoTime() - start) / 1000000L);
+    }
+
     @Override
     public GeoName getGeoName(final int geonameId) throws ClavinException {
         return getGeoName(geonameId, AncestryMode.LAZY);
@@ -459,14 +1196,17 @@ public class LuceneGazetteer implements Gazetteer {
     @Override
     public GeoName getGeoName(final int geonameId, final AncestryMode ancestryMode) throws ClavinException {
         try {
-            GeoName geoName = null;
+            GeoName geoName = ancestryMode == AncestryMode.ON_CREATE ? getCachedGeoName(geonameId) : null;
+            if (geoName != null) {
+                return geoName;
+            }
             // Lucene query used to look for exact match on the "geonameID" field
             Query q = IntPoint.newExactQuery(GEONAME_ID.key(), geonameId);
             // retrieve only one matching document
             TopDocs results = indexSearcher.search(q, 1);
             if (results.scoreDocs.length > 0) {
-                Document doc = indexSearcher.doc(results.scoreDocs[0].doc);
-                geoName = BasicGeoName.parseFromGeoNamesRecord(doc.get(GEONAME.key()), doc.get(PREFERRED_NAME.key()));
+                Document doc = indexSearcher.doc(results.scoreDocs[0].doc, loadedFields);
+                geoName = readGeoName(results.scoreDocs[0].doc, doc);
                 if (!geoName.isAncestryResolved()) {
                     Integer parentId = PARENT_ID.getValue(doc);
                     if (parentId != null) {
@@ -474,11 +1214,11 @@ public class LuceneGazetteer implements Gazetteer {
                             case ON_CREATE:
                                 Map<Integer, Set<GeoName>> childMap = new HashMap<>();
                                 childMap.put(parentId, Collections.singleton(geoName));
-                                resolveParents(childMap);
+                                resolveAncestry(childMap);
                                 break;
                             case LAZY:
                                 // ancestry will be loaded on request
-                                geoName = new LazyAncestryGeoName(geoName, parentId, this);
+                                geoName = new LazyAncestryGeoName(geoName, parentId, ancestryGazetteer);
                                 break;
                             case MANUAL:
                                 // ancestry must be loaded manually
@@ -487,6 +1227,9 @@ public class LuceneGazetteer implements Gazetteer {
                         }
                     }
                 }
+                if (ancestryMode == AncestryMode.ON_CREATE) {
+                    cacheGeoName(geoName);
+                }
             } else {
                 LOG.debug("No geoname found for ID: {}", geonameId);
             }
@@ -515,10 +1258,71 @@ public class LuceneGazetteer implements Gazetteer {
         }
         if (!parentMap.isEmpty()) {
             try {
-                resolveParents(parentMap);
+                resolveAncestry(parentMap);
             } catch (IOException ioe) {
                 throw new ClavinException("Error loading ancestry.", ioe);
             }
         }
     }
+
+    /**
+     * The query restrictions that determine the Lucene filters of a query.
+     */
+    private static final class FilterKey {
+        private final boolean includeHistorical;
+        private final Set<Integer> parentIds;
+        private final Set<FeatureCode> featureCodes;
+
+        FilterKey(final GazetteerQuery query) {
+            this.includeHistorical = query.isIncludeHistorical();
+            this.parentIds = query.getParentIds();
+            this.featureCodes = query.getFeatureCodes();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            FilterKey that = (FilterKey) o;
+            return includeHistorical == that.includeHistorical
+                    && parentIds.equals(that.parentIds) && featureCodes.equals(that.featureCodes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(includeHistorical, parentIds, featureCodes);
+        }
+    }
+
+    /**
+     * Key of the negative cache: a sanitized location name, the query
+     * restrictions that determine whether it can match at all and the
+     * fuzzy backend that found no approximate match.
+     */
+    private static final class NegativeKey {
+        private final String name;
+        private final FilterKey filters;
+        private final FuzzyBackend fuzzyBackend;
+
+        NegativeKey(final String name, final FilterKey filters, final FuzzyBackend fuzzyBackend) {
+            this.name = name;
+            this.filters = filters;
+            this.fuzzyBackend = fuzzyBackend;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            NegativeKey that = (NegativeKey) o;
+            return name.equals(that.name) && filters.equals(that.filters) && fuzzyBackend == that.fuzzyBackend;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, filters, fuzzyBackend);
+        }
+    }
 }
@@ -0,0 +1,404 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * LuceneGazetteerConfig.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.gazetteer.query;
+
+import java.util.concurrent.Executor;
+
+import com.novetta.clavin.metrics.ClavinMetrics;
+
+/**
+ * Configuration options for a {@link LuceneGazetteer}. Like
+ * {@link QueryBuilder}, setters return this configuration so options
+ * can be chained; configurations are not thread-safe and are read only
+ * when the gazetteer is created.
+ */
+public class LuceneGazetteerConfig {
+    /**
+     * The default maximum number of names remembered as having no match.
+     */
+    public static final int DEFAULT_NEGATIVE_CACHE_SIZE = 10000;
+
+    /**
+     * The default maximum number of GeoNames cached by ID.
+     */
+    public static final int DEFAULT_GEONAME_CACHE_SIZE = 10000;
+
+    /**
+     * The default maximum number of index terms a fuzzy name term expands to.
+     */
+    public static final int DEFAULT_FUZZY_MAX_EXPANSIONS = 50;
+
+    /**
+     * The default maximum number of terms whose fuzzy automata are cached.
+     */
+    public static final int DEFAULT_FUZZY_AUTOMATON_CACHE_SIZE = 1000;
+
+    private ClavinMetrics metrics = ClavinMetrics.NOOP;
+    private boolean useNameFilter = true;
+    private int negativeCacheSize = DEFAULT_NEGATIVE_CACHE_SIZE;
+    private Executor executor;
+    private boolean useBinaryRecords = true;
+    private IndexDirectoryMode directoryMode = IndexDirectoryMode.DEFAULT;
+    private int geoNameCacheSize = DEFAULT_GEONAME_CACHE_SIZE;
+    private boolean pinAdminDivisions;
+    private int fuzzyMaxEdits = 2;
+    private int fuzzyPrefixLength;
+    private int fuzzyMaxExpansions = DEFAULT_FUZZY_MAX_EXPANSIONS;
+    private boolean adaptiveFuzzyEdits;
+    private int fuzzyAutomatonCacheSize = DEFAULT_FUZZY_AUTOMATON_CACHE_SIZE;
+    private boolean useEarlyTermination = true;
+    private boolean useExactNameStore = true;
+    private GazetteerWarmer warmer;
+
+    /**
+     * Get the metrics receiving query and ancestry measurements.
+     * @return the metrics
+     */
+    public ClavinMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Set the metrics receiving query and ancestry measurements.
+     * @param m the metrics
+     * @return this
+     */
+    public LuceneGazetteerConfig metrics(final ClavinMetrics m) {
+        metrics = m != null ? m : ClavinMetrics.NOOP;
+        return this;
+    }
+
+    /**
+     * Should the index's name Bloom filter be used to skip exact queries
+     * that cannot match?
+     * @return <code>true</code> if the name filter is used when the index has one
+     */
+    public boolean useNameFilter() {
+        return useNameFilter;
+    }
+
+    /**
+     * Configure use of the index's name Bloom filter, built by
+     * {@link com.novetta.clavin.index.IndexDirectoryBuilder}. Indexes
+     * without a filter are always queried.
+     * @param use <code>true</code> to skip exact queries that cannot match
+     * @return this
+     */
+    public LuceneGazetteerConfig useNameFilter(final boolean use) {
+        useNameFilter = use;
+        return this;
+    }
+
+    /**
+     * Get the maximum number of names remembered as having no exact or
+     * fuzzy match.
+     * @return the negative cache size
+     */
+    public int negativeCacheSize() {
+        return negativeCacheSize;
+    }
+
+    /**
+     * Set the maximum number of names remembered as having no exact or
+     * fuzzy match; 0 disables the negative cache.
+     * @param size the negative cache size
+     * @return this
+     */
+    public LuceneGazetteerConfig negativeCacheSize(final int size) {
+        negativeCacheSize = size;
+        return this;
+    }
+
+    /**
+     * Get the executor searching the distinct names of a query batch in
+     * parallel.
+     * @return the executor or <code>null</code> if batches are searched on the calling thread
+     */
+    public Executor executor() {
+        return executor;
+    }
+
+    /**
+     * Set the executor searching the distinct names of a query batch in
+     * parallel; <code>null</code> searches them on the calling thread.
+     * @param e the executor
+     * @return this
+     */
+    public LuceneGazetteerConfig executor(final Executor e) {
+        executor = e;
+        return this;
+    }
+
+    /**
+     * Should GeoNames be decoded from the index's binary records rather
+     * than parsed from its gazetteer records?
+     * @return <code>true</code> if binary records are used when the index has them
+     */
+    public boolean useBinaryRecords() {
+        return useBinaryRecords;
+    }
+
+    /**
+     * Configure use of the binary GeoName records written by
+     * {@link com.novetta.clavin.index.IndexDirectoryBuilder}. Indexes
+     * without compatible binary records are read from their gazetteer
+     * records.
+     * @param use <code>true</code> to decode binary records
+     * @return this
+     */
+    public LuceneGazetteerConfig useBinaryRecords(final boolean use) {
+        useBinaryRecords = use;
+        return this;
+    }
+
+    /**
+     * Get how the index is kept resident.
+     * @return the directory mode
+     */
+    public IndexDirectoryMode directoryMode() {
+        return directoryMode;
+    }
+
+    /**
+     * Set how the index is kept resident: memory-mapped and preloaded,
+     * copied into heap or direct buffers, or read through NIO.
+     * @param mode the directory mode
+     * @return this
+     */
+    public LuceneGazetteerConfig directoryMode(final IndexDirectoryMode mode) {
+        directoryMode = mode != null ? mode : IndexDirectoryMode.DEFAULT;
+        return this;
+    }
+
+    /**
+     * Get the maximum number of GeoNames, with their resolved ancestry,
+     * cached by ID for parent and ID lookups.
+     * @return the GeoName cache size
+     */
+    public int geoNameCacheSize() {
+        return geoNameCacheSize;
+    }
+
+    /**
+     * Set the maximum number of GeoNames, with their resolved ancestry,
+     * cached by ID for parent and ID lookups; 0 disables the cache.
+     * @param size the GeoName cache size
+     * @return this
+     */
+    public LuceneGazetteerConfig geoNameCacheSize(final int size) {
+        geoNameCacheSize = size;
+        return this;
+    }
+
+    /**
+     * Should all countries, first and second-order administrative
+     * divisions be loaded when the gazetteer is created and kept in
+     * memory?
+     * @return <code>true</code> if administrative divisions are pinned
+     */
+    public boolean pinAdminDivisions() {
+        return pinAdminDivisions;
+    }
+
+    /**
+     * Configure loading all countries, first and second-order
+     * administrative divisions when the gazetteer is created, so that
+     * ancestry is resolved without index lookups. Pinned GeoNames are
+     * never evicted and do not count against the GeoName cache size.
+     * @param pin <code>true</code> to pin administrative divisions
+     * @return this
+     */
+    public LuceneGazetteerConfig pinAdminDivisions(final boolean pin) {
+        pinAdminDivisions = pin;
+        return this;
+    }
+
+    /**
+     * Should exact queries against a population-sorted index stop after
+     * the most populous of the best scoring matches?
+     * @return <code>true</code> if early termination is used when the index supports it
+     */
+    public boolean useEarlyTermination() {
+        return useEarlyTermination;
+    }
+
+    /**
+     * Configure early termination of exact queries against indexes built
+     * with the sort-by-population option of
+     * {@link com.novetta.clavin.index.IndexDirectoryBuilder}. Other indexes
+     * always score and sort every match.
+     * @param use <code>true</code> to stop after the most populous best matches
+     * @return this
+     */
+    public LuceneGazetteerConfig useEarlyTermination(final boolean use) {
+        useEarlyTermination = use;
+        return this;
+    }
+
+    /**
+     * Get the maximum edit distance of fuzzy name matches.
+     * @return the maximum fuzzy edit distance
+     */
+    public int fuzzyMaxEdits() {
+        return fuzzyMaxEdits;
+    }
+
+    /**
+     * Set the maximum edit distance of fuzzy name matches, from 0 to 2.
+     * @param edits the maximum fuzzy edit distance
+     * @return this
+     */
+    public LuceneGazetteerConfig fuzzyMaxEdits(final int edits) {
+        fuzzyMaxEdits = edits;
+        return this;
+    }
+
+    /**
+     * Get the number of leading characters a fuzzy name match must share
+     * with the queried name.
+     * @return the fuzzy prefix length
+     */
+    public int fuzzyPrefixLength() {
+        return fuzzyPrefixLength;
+    }
+
+    /**
+     * Set the number of leading characters a fuzzy name match must share
+     * with the queried name. A longer prefix makes fuzzy queries cheaper
+     * but misses misspellings of the first characters.
+     * @param length the fuzzy prefix length
+     * @return this
+     */
+    public LuceneGazetteerConfig fuzzyPrefixLength(final int length) {
+        fuzzyPrefixLength = length;
+        return this;
+    }
+
+    /**
+     * Get the maximum number of index terms a fuzzy name term expands to.
+     * @return the maximum fuzzy expansions
+     */
+    public int fuzzyMaxExpansions() {
+        return fuzzyMaxExpansions;
+    }
+
+    /**
+     * Set the maximum number of index terms a fuzzy name term expands to.
+     * Terms are expanded closest edit distance first, so a lower bound
+     * drops only the most distant matches.
+     * @param expansions the maximum fuzzy expansions
+     * @return this
+     */
+    public LuceneGazetteerConfig fuzzyMaxExpansions(final int expansions) {
+        fuzzyMaxExpansions = expansions;
+        return this;
+    }
+
+    /**
+     * Is the fuzzy edit distance reduced for short name terms?
+     * @return <code>true</code> if fuzzy edits adapt to term length
+     */
+    public boolean adaptiveFuzzyEdits() {
+        return adaptiveFuzzyEdits;
+    }
+
+    /**
+     * Configure reducing the fuzzy edit distance for short name terms:
+     * terms of fewer than three characters are matched exactly and terms
+     * of fewer than six within one edit. Short terms are within two edits
+     * of many unrelated names, but abbreviations are no longer matched.
+     * @param adaptive <code>true</code> to adapt fuzzy edits to term length
+     * @return this
+     */
+    public LuceneGazetteerConfig adaptiveFuzzyEdits(final boolean adaptive) {
+        adaptiveFuzzyEdits = adaptive;
+        return this;
+    }
+
+    /**
+     * Get the maximum number of name terms whose fuzzy automata are cached.
+     * @return the fuzzy automaton cache size
+     */
+    public int fuzzyAutomatonCacheSize() {
+        return fuzzyAutomatonCacheSize;
+    }
+
+    /**
+     * Set the maximum number of name terms whose fuzzy automata are
+     * cached; 0 disables the cache.
+     * @param size the fuzzy automaton cache size
+     * @return this
+     */
+    public LuceneGazetteerConfig fuzzyAutomatonCacheSize(final int size) {
+        fuzzyAutomatonCacheSize = size;
+        return this;
+    }
+
+    /**
+     * Should exact queries be answered from the index's exact name store
+     * when it holds enough of the best scoring matches?
+     * @return <code>true</code> if the exact name store is used when the index has one
+     */
+    public boolean useExactNameStore() {
+        return useExactNameStore;
+    }
+
+    /**
+     * Configure use of the exact name store built by the exact-name-store
+     * option of {@link com.novetta.clavin.index.IndexDirectoryBuilder}.
+     * Indexes without a store are always searched.
+     * @param use <code>true</code> to read the best exact matches from the store
+     * @return this
+     */
+    public LuceneGazetteerConfig useExactNameStore(final boolean use) {
+        useExactNameStore = use;
+        return this;
+    }
+
+    /**
+     * Get the warmer run on the index once it is opened.
+     * @return the warmer, or <code>null</code> to run a single priming query
+     */
+    public GazetteerWarmer warmer() {
+        return warmer;
+    }
+
+    /**
+     * Set the warmer run on the index once it is opened, before the
+     * gazetteer is returned, e.g. a {@link QueryLogWarmer} replaying the
+     * most frequent production queries. Without one, a single query
+     * primes the index.
+     * @param w the warmer, or <code>null</code> for none
+     * @return this
+     */
+    public LuceneGazetteerConfig warmer(final GazetteerWarmer w) {
+        warmer = w;
+        return this;
+    }
+}
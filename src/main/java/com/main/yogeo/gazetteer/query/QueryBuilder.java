@@ -46,6 +46,7 @@ import java.util.Set;
 public class QueryBuilder {
     private static final int DEFAULT_MAX_RESULTS = 10;
     private static final FuzzyMode DEFAULT_FUZZY_MODE = FuzzyMode.OFF;
+    private static final FuzzyBackend DEFAULT_FUZZY_BACKEND = FuzzyBackend.AUTOMATON;
     private static final AncestryMode DEFAULT_HIERARCHY_MODE = AncestryMode.LAZY;
     private static final boolean DEFAULT_INCLUDE_HISTORICAL = true;
     private static final boolean DEFAULT_FILTER_DUPES = false;
@@ -113,6 +114,7 @@ public class QueryBuilder {
     private LocationOccurrence location;
     private int maxResults = DEFAULT_MAX_RESULTS;
     private FuzzyMode fuzzyMode = DEFAULT_FUZZY_MODE;
+    private FuzzyBackend fuzzyBackend = DEFAULT_FUZZY_BACKEND;
     private AncestryMode ancestryMode = DEFAULT_HIERARCHY_MODE;
     private boolean includeHistorical = DEFAULT_INCLUDE_HISTORICAL;
     private boolean filterDupes = DEFAULT_FILTER_DUPES;
@@ -124,7 +126,7 @@ public class QueryBuilder {
      * @return a {@link GazetteerQuery} configuration object
      */
     public GazetteerQuery build() {
-        return new GazetteerQuery(location, maxResults, fuzzyMode, ancestryMode, includeHistorical, filterDupes, parentIds, featureCodes);
+        return new GazetteerQuery(location, maxResults, fuzzyMode, fuzzyBackend, ancestryMode, includeHistorical, filterDupes, parentIds, featureCodes);
     }
 
     /**
@@ -192,6 +194,24 @@ public class QueryBuilder {
         return this;
     }
 
+    /**
+     * Get the current fuzzy matching backend.
+     * @return the fuzzy matching backend
+     */
+    public FuzzyBackend fuzzyBackend() {
+        return fuzzyBackend;
+    }
+
+    /**
+     * Configure how fuzzy matching finds candidate names.
+     * @param backend the fuzzy matching backend
+     * @return this
+     */
+    public QueryBuilder fuzzyBackend(final FuzzyBackend backend) {
+        fuzzyBackend = backend;
+        return this;
+    }
+
     /**
      * Get the current ancestry loading mode.
      * @return the ancestry loading mode
@@ -534,7 +554,7 @@ public class QueryBuilder {
 
     @Override
     public String toString() {
-        return String.format("loc: %s, maxResults: %s, fuzzyMode: %s, historical? %s, filterDupes? %s, parents: %s, codes: %s",
-                location, maxResults, fuzzyMode, includeHistorical, filterDupes, parentIds, featureCodes);
+        return String.format("loc: %s, maxResults: %s, fuzzyMode: %s, fuzzyBackend: %s, historical? %s, filterDupes? %s, parents: %s, codes: %s",
+                location, maxResults, fuzzyMode, fuzzyBackend, includeHistorical, filterDupes, parentIds, featureCodes);
     }
 }
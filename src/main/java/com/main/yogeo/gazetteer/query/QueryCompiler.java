@@ -0,0 +1,188 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * QueryCompiler.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.gazetteer.query;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Builds the Lucene queries for location names directly from their
+ * analyzed tokens.
+ *
+ * The queries are identical to those the classic
+ * {@link org.apache.lucene.queryparser.classic.QueryParser} produces
+ * for an escaped name, quoted for exact matching or followed by
+ * <code>~</code> for fuzzy matching, without formatting, escaping and
+ * re-parsing the name on every query. Token streams are reused per
+ * thread by the {@link Analyzer}, so a compiler can be shared by
+ * concurrent queries.
+ */
+class QueryCompiler {
+    /**
+     * The characters the query parser treats as whitespace between terms.
+     */
+    private static final Pattern WHITESPACE = Pattern.compile("[ \t\n\r\u3000]+");
+
+    /**
+     * The analyzer tokenizing location names.
+     */
+    private final Analyzer analyzer;
+
+    /**
+     * The field the queries search.
+     */
+    private final String field;
+
+    /**
+     * Create a new QueryCompiler.
+     * @param analyzer the analyzer the field was indexed with
+     * @param field    the field the queries search
+     */
+    QueryCompiler(final Analyzer analyzer, final String field) {
+        this.analyzer = analyzer;
+        this.field = field;
+    }
+
+    /**
+     * Builds the query matching the location name exactly: a term query
+     * for single-token names and a phrase query for longer ones.
+     * @param name the location name
+     * @return the exact match query; an empty boolean query if the name has no tokens
+     * @throws IOException if an error occurs analyzing the name
+     */
+    Query exactQuery(final String name) throws IOException {
+        List<BytesRef> terms = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        analyze(name, terms, positions);
+        switch (terms.size()) {
+            case 0:
+                return new BooleanQuery.Builder().build();
+            case 1:
+                return new TermQuery(new Term(field, terms.get(0)));
+            default:
+                PhraseQuery.Builder phrase = new PhraseQuery.Builder();
+                for (int i = 0; i < terms.size(); i++) {
+                    phrase.add(new Term(field, terms.get(i)), positions.get(i));
+                }
+                return phrase.build();
+        }
+    }
+
+    /**
+     * Builds the query matching the location name approximately. As with
+     * the query parser, only the last whitespace-separated word is fuzzy;
+     * the tokens of the preceding words are optional term queries.
+     * @param name the location name
+     * @return the fuzzy query
+     * @throws IOException if an error occurs analyzing the name
+     */
+    Query fuzzyQuery(final String name) throws IOException {
+        List<String> words = new ArrayList<>();
+        for (String word : WHITESPACE.split(name)) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        if (words.isEmpty()) {
+            return new BooleanQuery.Builder().build();
+        }
+
+        // the last word is normalized, but not tokenized
+        String last = words.get(words.size() - 1);
+        Query fuzzy = new FuzzyQuery(new Term(field, analyzer.normalize(field, last)),
+                FuzzyQuery.defaultMaxEdits, FuzzyQuery.defaultPrefixLength);
+        if (words.size() == 1) {
+            return fuzzy;
+        }
+
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        if (words.size() == 2) {
+            // a single preceding word contributes its own sub-query
+            List<BytesRef> terms = new ArrayList<>();
+            analyze(words.get(0), terms, new ArrayList<>());
+            if (terms.size() == 1) {
+                builder.add(new TermQuery(new Term(field, terms.get(0))), Occur.SHOULD);
+            } else if (terms.size() > 1) {
+                BooleanQuery.Builder word = new BooleanQuery.Builder();
+                for (BytesRef term : terms) {
+                    word.add(new TermQuery(new Term(field, term)), Occur.SHOULD);
+                }
+                builder.add(word.build(), Occur.SHOULD);
+            }
+        } else {
+            // several preceding words are analyzed together and their tokens flattened
+            for (String word : words.subList(0, words.size() - 1)) {
+                List<BytesRef> terms = new ArrayList<>();
+                analyze(word, terms, new ArrayList<>());
+                for (BytesRef term : terms) {
+                    builder.add(new TermQuery(new Term(field, term)), Occur.SHOULD);
+                }
+            }
+        }
+        builder.add(fuzzy, Occur.SHOULD);
+        return builder.build();
+    }
+
+    /**
+     * Analyzes text into its tokens and their positions.
+     * @param text      the text
+     * @param terms     receives the tokens
+     * @param positions receives the position of each token
+     * @throws IOException if an error occurs analyzing the text
+     */
+    private void analyze(final String text, final List<BytesRef> terms, final List<Integer> positions) throws IOException {
+        try (TokenStream tokens = analyzer.tokenStream(field, text)) {
+            TermToBytesRefAttribute term = tokens.addAttribute(TermToBytesRefAttribute.class);
+            PositionIncrementAttribute increment = tokens.addAttribute(PositionIncrementAttribute.class);
+            tokens.reset();
+            int position = -1;
+            while (tokens.incrementToken()) {
+                position += increment.getPositionIncrement();
+                terms.add(BytesRef.deepCopyOf(term.getBytesRef()));
+                positions.add(position);
+            }
+            tokens.end();
+        }
+    }
+}
@@ -0,0 +1,355 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * QueryLog.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.gazetteer.query;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.novetta.clavin.ClavinException;
+import com.novetta.clavin.extractor.LocationOccurrence;
+import com.novetta.clavin.gazetteer.FeatureCode;
+
+/**
+ * Records a sample of the queries a gazetteer answers in production, so
+ * that a newly opened index can be warmed with the most frequent ones
+ * (see {@link QueryLogWarmer}).
+ *
+ * Name queries are recorded in the canonical form a
+ * {@link CachingGazetteer} uses as its cache key, with all whitespace
+ * collapsed; GeoName ID lookups are recorded with their ancestry mode.
+ * Sampled queries are counted in memory, up to a maximum number of
+ * distinct queries, and {@link #save() saved} to a tab-separated file
+ * holding one query per line, preceded by its count. Saving merges the
+ * counts with those already in the file and keeps the most frequent
+ * queries, so the log accumulates across restarts.
+ */
+public class QueryLog {
+    /**
+     * The logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(QueryLog.class);
+
+    /**
+     * The default fraction of queries recorded.
+     */
+    public static final double DEFAULT_SAMPLE_RATE = 0.01;
+
+    /**
+     * The default maximum number of distinct queries kept.
+     */
+    public static final int DEFAULT_MAX_QUERIES = 10000;
+
+    private static final String NAME_QUERY = "name";
+    private static final String ID_QUERY = "id";
+    private static final String ALL_CODES = "*";
+    private static final String FIELD_SEPARATOR = "\t";
+    private static final String LIST_SEPARATOR = ",";
+
+    private static final Set<FeatureCode> ALL_FEATURE_CODES = Collections.unmodifiableSet(EnumSet.allOf(FeatureCode.class));
+
+    /**
+     * The log file.
+     */
+    private final File file;
+
+    /**
+     * The fraction of queries recorded.
+     */
+    private final double sampleRate;
+
+    /**
+     * The maximum number of distinct queries kept.
+     */
+    private final int maxQueries;
+
+    /**
+     * The counts of the queries recorded since the log was last saved, keyed on their log lines.
+     */
+    private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new QueryLog with the default sample rate and maximum number of queries.
+     * @param file the log file; it need not exist yet
+     */
+    public QueryLog(final File file) {
+        this(file, DEFAULT_SAMPLE_RATE, DEFAULT_MAX_QUERIES);
+    }
+
+    /**
+     * Create a new QueryLog.
+     * @param file       the log file; it need not exist yet
+     * @param sampleRate the fraction of queries recorded, between 0 and 1
+     * @param maxQueries the maximum number of distinct queries kept in memory and in the file
+     */
+    public QueryLog(final File file, final double sampleRate, final int maxQueries) {
+        this.file = file;
+        this.sampleRate = sampleRate;
+        this.maxQueries = maxQueries;
+    }
+
+    /**
+     * Get the log file.
+     * @return the log file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Records a name query, if it is sampled.
+     * @param query the query
+     */
+    public void record(final GazetteerQuery query) {
+        GazetteerQuery canonical = CachingGazetteer.canonicalQuery(query);
+        if (canonical != null && sampled()) {
+            count(format(canonical));
+        }
+    }
+
+    /**
+     * Records a GeoName ID lookup, if it is sampled.
+     * @param geonameId    the GeoName ID
+     * @param ancestryMode the ancestry mode of the lookup
+     */
+    public void record(final int geonameId, final AncestryMode ancestryMode) {
+        if (sampled()) {
+            count(String.join(FIELD_SEPARATOR, ID_QUERY, String.valueOf(geonameId), ancestryMode.name()));
+        }
+    }
+
+    private boolean sampled() {
+        return sampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    private void count(final String line) {
+        LongAdder count = counts.get(line);
+        if (count == null) {
+            if (counts.size() >= maxQueries) {
+                // the most frequent queries are most likely recorded already
+                return;
+            }
+            count = counts.computeIfAbsent(line, l -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * Adds the queries recorded since the last save to the log file,
+     * keeping the most frequent queries. The file is replaced atomically.
+     * @throws ClavinException if the log file cannot be read or written
+     */
+    public synchronized void save() throws ClavinException {
+        Map<String, Long> merged = new HashMap<>();
+        for (Entry entry : read(file, Integer.MAX_VALUE)) {
+            merged.put(entry.line, entry.count);
+        }
+        for (String line : new ArrayList<>(counts.keySet())) {
+            LongAdder count = counts.remove(line);
+            merged.merge(line, count.sum(), Long::sum);
+        }
+        List<Map.Entry<String, Long>> entries = merged.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(maxQueries)
+                .collect(Collectors.toList());
+
+        Path target = file.getAbsoluteFile().toPath();
+        try {
+            Path temp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Long> entry : entries) {
+                    writer.write(entry.getValue() + FIELD_SEPARATOR + entry.getKey());
+                    writer.newLine();
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ioe) {
+            throw new ClavinException(String.format("Error saving query log [%s].", file), ioe);
+        }
+    }
+
+    /**
+     * Reads the most frequent queries of a log file. Lines that cannot be
+     * parsed, e.g. those naming feature codes unknown to this version, are
+     * skipped.
+     * @param file the log file
+     * @param max  the maximum number of queries to read
+     * @return the queries in descending order of frequency; empty if the file does not exist
+     * @throws ClavinException if the log file cannot be read
+     */
+    public static List<Entry> read(final File file, final int max) throws ClavinException {
+        if (!file.exists()) {
+            return Collections.emptyList();
+        }
+        List<Entry> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    entries.add(parse(line));
+                } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                    LOG.debug("Skipping query log line [{}]", line, e);
+                }
+            }
+        } catch (IOException ioe) {
+            throw new ClavinException(String.format("Error reading query log [%s].", file), ioe);
+        }
+        entries.sort(Comparator.comparingLong(Entry::getCount).reversed());
+        return entries.size() > max ? new ArrayList<>(entries.subList(0, max)) : entries;
+    }
+
+    private static String format(final GazetteerQuery query) {
+        Set<FeatureCode> codes = query.getFeatureCodes();
+        return String.join(FIELD_SEPARATOR,
+                NAME_QUERY,
+                StringUtils.normalizeSpace(query.getOccurrence().getText()),
+                String.valueOf(query.getMaxResults()),
+                query.getFuzzyMode().name(),
+                query.getFuzzyBackend().name(),
+                query.getAncestryMode().name(),
+                String.valueOf(query.isIncludeHistorical()),
+                String.valueOf(query.isFilterDupes()),
+                StringUtils.join(query.getParentIds(), LIST_SEPARATOR),
+                ALL_FEATURE_CODES.equals(codes) ? ALL_CODES : StringUtils.join(codes, LIST_SEPARATOR));
+    }
+
+    private static Entry parse(final String line) {
+        String[] fields = line.split(FIELD_SEPARATOR, -1);
+        long count = Long.parseLong(fields[0]);
+        String queryLine = line.substring(fields[0].length() + 1);
+        switch (fields[1]) {
+            case NAME_QUERY:
+                Set<Integer> parentIds = new LinkedHashSet<>();
+                for (String id : StringUtils.split(fields[9], LIST_SEPARATOR)) {
+                    parentIds.add(Integer.valueOf(id));
+                }
+                Set<FeatureCode> codes = EnumSet.noneOf(FeatureCode.class);
+                if (ALL_CODES.equals(fields[10])) {
+                    codes.addAll(ALL_FEATURE_CODES);
+                } else {
+                    for (String code : StringUtils.split(fields[10], LIST_SEPARATOR)) {
+                        codes.add(FeatureCode.valueOf(code));
+                    }
+                }
+                GazetteerQuery query = new GazetteerQuery(new LocationOccurrence(fields[2], 0),
+                        Integer.parseInt(fields[3]), FuzzyMode.valueOf(fields[4]), FuzzyBackend.valueOf(fields[5]),
+                        AncestryMode.valueOf(fields[6]), Boolean.parseBoolean(fields[7]), Boolean.parseBoolean(fields[8]),
+                        parentIds, codes);
+                return new Entry(queryLine, count, query, 0, null);
+            case ID_QUERY:
+                return new Entry(queryLine, count, null, Integer.parseInt(fields[2]), AncestryMode.valueOf(fields[3]));
+            default:
+                throw new IllegalArgumentException("Unknown query type: " + fields[1]);
+        }
+    }
+
+    /**
+     * A logged query and the number of times it was recorded.
+     */
+    public static final class Entry {
+        private final String line;
+        private final long count;
+        private final GazetteerQuery query;
+        private final int geonameId;
+        private final AncestryMode ancestryMode;
+
+        private Entry(final String line, final long count, final GazetteerQuery query, final int geonameId,
+                final AncestryMode ancestryMode) {
+            this.line = line;
+            this.count = count;
+            this.query = query;
+            this.geonameId = geonameId;
+            this.ancestryMode = ancestryMode;
+        }
+
+        /**
+         * Get the number of times the query was recorded.
+         * @return the count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Get the name query.
+         * @return the name query, or <code>null</code> if this is a GeoName ID lookup
+         */
+        public GazetteerQuery getQuery() {
+            return query;
+        }
+
+        /**
+         * Get the GeoName ID of a lookup.
+         * @return the GeoName ID; 0 for name queries
+         */
+        public int getGeonameId() {
+            return geonameId;
+        }
+
+        /**
+         * Runs the query against a gazetteer.
+         * @param gazetteer the gazetteer
+         * @throws ClavinException if an error occurs
+         */
+        public void replay(final Gazetteer gazetteer) throws ClavinException {
+            if (query != null) {
+                gazetteer.getClosestLocations(query);
+            } else {
+                gazetteer.getGeoName(geonameId, ancestryMode);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return count + FIELD_SEPARATOR + line;
+        }
+    }
+}
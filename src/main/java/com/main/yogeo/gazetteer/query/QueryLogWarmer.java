@@ -0,0 +1,127 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * QueryLogWarmer.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.gazetteer.query;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.io.File;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.novetta.clavin.ClavinException;
+import com.novetta.clavin.metrics.ClavinMetrics;
+
+/**
+ * Warms a newly opened gazetteer by replaying the most frequent queries
+ * of a {@link QueryLog} file: name queries, exact and fuzzy, and GeoName
+ * ID lookups, in descending order of frequency. Replay stops when all
+ * queries have run or the time budget is spent, whichever comes first;
+ * progress is logged at every tenth of the queries and reported to the
+ * metrics.
+ *
+ * The log file is read on every warm-up, so each new index is warmed
+ * with the latest saved queries. A missing log file warms nothing.
+ */
+public class QueryLogWarmer implements GazetteerWarmer {
+    /**
+     * The logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(QueryLogWarmer.class);
+
+    /**
+     * The default maximum number of logged queries replayed.
+     */
+    public static final int DEFAULT_TOP_QUERIES = 1000;
+
+    /**
+     * The default time budget for replaying queries, in milliseconds.
+     */
+    public static final long DEFAULT_BUDGET_MILLIS = 30000;
+
+    // the number of progress reports over all queries
+    private static final int PROGRESS_STEPS = 10;
+
+    private final File logFile;
+    private final int topQueries;
+    private final long budgetMillis;
+    private final ClavinMetrics metrics;
+
+    /**
+     * Create a new QueryLogWarmer with the default number of queries and
+     * time budget.
+     * @param logFile the query log file
+     */
+    public QueryLogWarmer(final File logFile) {
+        this(logFile, DEFAULT_TOP_QUERIES, DEFAULT_BUDGET_MILLIS, ClavinMetrics.NOOP);
+    }
+
+    /**
+     * Create a new QueryLogWarmer.
+     * @param logFile      the query log file
+     * @param topQueries   the maximum number of the most frequent logged queries replayed
+     * @param budgetMillis the time after which no further queries are replayed, in milliseconds
+     * @param metrics      receives the number of queries replayed and the warm-up time
+     */
+    public QueryLogWarmer(final File logFile, final int topQueries, final long budgetMillis, final ClavinMetrics metrics) {
+        this.logFile = logFile;
+        this.topQueries = topQueries;
+        this.budgetMillis = budgetMillis;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void warm(final Gazetteer gazetteer) throws ClavinException {
+        long start = System.nanoTime();
+        long deadline = start + MILLISECONDS.toNanos(budgetMillis);
+        List<QueryLog.Entry> entries = QueryLog.read(logFile, topQueries);
+        int step = Math.max(1, entries.size() / PROGRESS_STEPS);
+        int replayed = 0;
+        for (QueryLog.Entry entry : entries) {
+            if (System.nanoTime() - deadline > 0) {
+                LOG.info("Warm-up time budget of {} ms spent after {}/{} logged queries", budgetMillis, replayed,
+                        entries.size());
+                break;
+            }
+            entry.replay(gazetteer);
+            metrics.increment(ClavinMetrics.Counter.WARMUP_QUERIES);
+            replayed++;
+            if (replayed % step == 0 && replayed < entries.size()) {
+                LOG.info("Warmed with {}/{} logged queries in {} ms", replayed, entries.size(),
+                        NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        metrics.recordTime(ClavinMetrics.Timer.WARMUP, elapsed);
+        LOG.info("Warmed with {}/{} logged queries from [{}] in {} ms", replayed, entries.size(), logFile,
+                NANOSECONDS.toMillis(elapsed));
+    }
+}
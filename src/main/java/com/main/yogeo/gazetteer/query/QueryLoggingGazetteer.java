@@ -0,0 +1,131 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * QueryLoggingGazetteer.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.gazetteer.query;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.novetta.clavin.ClavinException;
+import com.novetta.clavin.gazetteer.GeoName;
+import com.novetta.clavin.resolver.ResolvedLocation;
+
+/**
+ * A Gazetteer decorator that records a sample of the name queries and
+ * GeoName ID lookups it passes on in a {@link QueryLog}, so the most
+ * frequent production queries can warm the next index that is opened.
+ *
+ * Only queries made through this decorator are recorded; queries replayed
+ * to warm an index directly are not, so warming never inflates the log.
+ */
+public class QueryLoggingGazetteer implements Gazetteer {
+    /**
+     * The decorated gazetteer.
+     */
+    private final Gazetteer delegate;
+
+    /**
+     * Receives the sampled queries.
+     */
+    private final QueryLog log;
+
+    /**
+     * Create a new QueryLoggingGazetteer.
+     * @param delegate the gazetteer answering the queries
+     * @param log      receives the sampled queries
+     */
+    public QueryLoggingGazetteer(final Gazetteer delegate, final QueryLog log) {
+        this.delegate = delegate;
+        this.log = log;
+    }
+
+    @Override
+    public List<ResolvedLocation> getClosestLocations(final GazetteerQuery query) throws ClavinException {
+        log.record(query);
+        return delegate.getClosestLocations(query);
+    }
+
+    @Override
+    public List<List<ResolvedLocation>> getClosestLocations(final List<GazetteerQuery> queries) throws ClavinException {
+        for (GazetteerQuery query : queries) {
+            log.record(query);
+        }
+        return delegate.getClosestLocations(queries);
+    }
+
+    /**
+     * Looks up a GeoName by ID, recording the lookup with lazily loaded
+     * ancestry as {@link LuceneGazetteer} performs it.
+     *
+     * @param geonameId          the GeoName ID
+     * @return                   the GeoName, or <code>null</code> if not found
+     * @throws ClavinException   if an error occurs
+     */
+    @Override
+    public GeoName getGeoName(final int geonameId) throws ClavinException {
+        log.record(geonameId, AncestryMode.LAZY);
+        return delegate.getGeoName(geonameId);
+    }
+
+    @Override
+    public GeoName getGeoName(final int geonameId, final AncestryMode ancestryMode) throws ClavinException {
+        log.record(geonameId, ancestryMode);
+        return delegate.getGeoName(geonameId, ancestryMode);
+    }
+
+    @Override
+    public void loadAncestry(final GeoName... geoNames) throws ClavinException {
+        delegate.loadAncestry(geoNames);
+    }
+
+    @Override
+    public void loadAncestry(final Collection<GeoName> geoNames) throws ClavinException {
+        delegate.loadAncestry(geoNames);
+    }
+
+    @Override
+    public void addReloadListener(final Runnable listener) {
+        delegate.addReloadListener(listener);
+    }
+
+    /**
+     * Get the decorated gazetteer.
+     * @return the decorated gazetteer
+     */
+    public Gazetteer getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Get the log receiving the sampled queries.
+     * @return the query log
+     */
+    public QueryLog getLog() {
+        return log;
+    }
+}
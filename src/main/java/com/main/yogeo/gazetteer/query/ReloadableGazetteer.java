@@ -0,0 +1,422 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * ReloadableGazetteer.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.gazetteer.query;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.search.ReferenceManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.novetta.clavin.ClavinException;
+import com.novetta.clavin.gazetteer.GeoName;
+import com.novetta.clavin.metrics.ClavinMetrics;
+import com.novetta.clavin.resolver.ResolvedLocation;
+import com.novetta.clavin.util.LruCache;
+
+/**
+ * A Gazetteer whose index can be replaced while it is in use, so a
+ * rebuilt GeoNames index can be rolled out without restarting the JVM.
+ *
+ * Each call acquires the current {@link LuceneGazetteer} from a
+ * {@link ReferenceManager} and releases it when done; a replaced index
+ * is closed once the last call using it has finished, so calls in
+ * progress are never broken. A new index is opened and warmed before it
+ * is published: recent distinct queries are replayed against it,
+ * followed by an optional {@link GazetteerWarmer}. The caches of a
+ * {@link LuceneGazetteer} belong to its index and are discarded with
+ * it; a {@link CachingGazetteer} decorating this gazetteer, directly or
+ * through other decorators, is invalidated on every swap, and other
+ * dependent caches can register a reload listener.
+ *
+ * GeoNames returned with lazily loaded ancestry resolve it through this
+ * gazetteer, i.e. against whichever index is current at the time.
+ */
+public class ReloadableGazetteer implements Gazetteer, Closeable {
+    /**
+     * The logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ReloadableGazetteer.class);
+
+    /**
+     * The default maximum number of recent distinct queries replayed
+     * against a new index before it is published.
+     */
+    public static final int DEFAULT_WARM_QUERIES = 1000;
+
+    // configuration for each index opened; read when an index is opened
+    private final LuceneGazetteerConfig config;
+
+    // runs after the recent queries have been replayed; null if none
+    private final GazetteerWarmer warmer;
+
+    // the most recent distinct queries in canonical form; null if none are replayed
+    private final LruCache<GazetteerQuery, Boolean> recentQueries;
+
+    private final GazetteerManager manager;
+
+    // the number of indexes swapped in since creation
+    private final AtomicLong reloads = new AtomicLong();
+
+    // the index directory to switch to on the next refresh; null to reopen the current directory if it changed
+    private File pendingIndexDir;
+
+    /**
+     * Builds a {@link ReloadableGazetteer} over a pre-built Lucene index.
+     *
+     * @param indexDir              Lucene index directory to be loaded
+     * @param config                the configuration of every index opened
+     * @throws ClavinException      if an error occurs opening the index
+     */
+    public ReloadableGazetteer(final File indexDir, final LuceneGazetteerConfig config) throws ClavinException {
+        this(indexDir, config, null, DEFAULT_WARM_QUERIES);
+    }
+
+    /**
+     * Builds a {@link ReloadableGazetteer} over a pre-built Lucene index.
+     *
+     * @param indexDir              Lucene index directory to be loaded
+     * @param config                the configuration of every index opened
+     * @param warmer                warms each index, including this first one, before it is published; may be <code>null</code>
+     * @param warmQueries           the maximum number of recent distinct queries replayed against a new index
+     * @throws ClavinException      if an error occurs opening or warming the index
+     */
+    public ReloadableGazetteer(final File indexDir, final LuceneGazetteerConfig config, final GazetteerWarmer warmer,
+            final int warmQueries) throws ClavinException {
+        this.config = config;
+        this.warmer = warmer;
+        // segmented, so recording queries does not serialize the query threads
+        this.recentQueries = warmQueries > 0 ? new LruCache<>(warmQueries) : null;
+        this.manager = new GazetteerManager(open(indexDir));
+    }
+
+    /**
+     * Atomically switches to another index directory, e.g. a freshly
+     * built index. The new index is opened and warmed while queries
+     * continue against the current one; if it cannot be opened, the
+     * current index remains in use.
+     *
+     * @param indexDir              the new Lucene index directory
+     * @throws ClavinException      if an error occurs opening or warming the new index
+     */
+    public void reload(final File indexDir) throws ClavinException {
+        synchronized (this) {
+            pendingIndexDir = indexDir;
+        }
+        refresh();
+    }
+
+    /**
+     * Reopens the current index directory if it has new commits, e.g.
+     * from incremental updates. Indexes copied into memory when opened
+     * never have new commits and are only replaced by {@link #reload}.
+     * The name filter, symmetric delete index and exact name store are
+     * only used with the commit they were built for; an update opened
+     * before they were rebuilt answers queries without them until the
+     * next {@link #reload}.
+     *
+     * @return <code>true</code> if a new index was swapped in
+     * @throws ClavinException      if an error occurs opening or warming the new index
+     */
+    public boolean maybeReload() throws ClavinException {
+        long before = reloads.get();
+        refresh();
+        return reloads.get() != before;
+    }
+
+    /**
+     * Get the index directory currently answering queries.
+     * @return the current index directory
+     * @throws ClavinException if this gazetteer has been closed
+     */
+    public File getIndexDirectory() throws ClavinException {
+        GazetteerReference ref = acquire();
+        try {
+            return ref.indexDir;
+        } finally {
+            release(ref);
+        }
+    }
+
+    /**
+     * Registers a listener notified before and after every refresh, e.g.
+     * to invalidate caches of results from the replaced index.
+     * @param listener the listener
+     */
+    public void addListener(final ReferenceManager.RefreshListener listener) {
+        manager.addListener(listener);
+    }
+
+    /**
+     * Removes a listener registered with {@link #addListener}.
+     * @param listener the listener
+     */
+    public void removeListener(final ReferenceManager.RefreshListener listener) {
+        manager.removeListener(listener);
+    }
+
+    @Override
+    public void addReloadListener(final Runnable listener) {
+        addListener(new ReferenceManager.RefreshListener() {
+            @Override
+            public void beforeRefresh() {
+            }
+
+            @Override
+            public void afterRefresh(final boolean didRefresh) {
+                if (didRefresh) {
+                    listener.run();
+                }
+            }
+        });
+    }
+
+    @Override
+    public List<ResolvedLocation> getClosestLocations(final GazetteerQuery query) throws ClavinException {
+        remember(query);
+        GazetteerReference ref = acquire();
+        try {
+            return ref.gazetteer.getClosestLocations(query);
+        } finally {
+            release(ref);
+        }
+    }
+
+    @Override
+    public List<List<ResolvedLocation>> getClosestLocations(final List<GazetteerQuery> queries) throws ClavinException {
+        for (GazetteerQuery query : queries) {
+            remember(query);
+        }
+        GazetteerReference ref = acquire();
+        try {
+            return ref.gazetteer.getClosestLocations(queries);
+        } finally {
+            release(ref);
+        }
+    }
+
+    @Override
+    public GeoName getGeoName(final int geonameId) throws ClavinException {
+        GazetteerReference ref = acquire();
+        try {
+            return ref.gazetteer.getGeoName(geonameId);
+        } finally {
+            release(ref);
+        }
+    }
+
+    @Override
+    public GeoName getGeoName(final int geonameId, final AncestryMode ancestryMode) throws ClavinException {
+        GazetteerReference ref = acquire();
+        try {
+            return ref.gazetteer.getGeoName(geonameId, ancestryMode);
+        } finally {
+            release(ref);
+        }
+    }
+
+    @Override
+    public void loadAncestry(final GeoName... geoNames) throws ClavinException {
+        GazetteerReference ref = acquire();
+        try {
+            ref.gazetteer.loadAncestry(geoNames);
+        } finally {
+            release(ref);
+        }
+    }
+
+    @Override
+    public void loadAncestry(final Collection<GeoName> geoNames) throws ClavinException {
+        GazetteerReference ref = acquire();
+        try {
+            ref.gazetteer.loadAncestry(geoNames);
+        } finally {
+            release(ref);
+        }
+    }
+
+    /**
+     * Closes the current index once the calls in progress have finished.
+     * @throws IOException if an error occurs closing the index
+     */
+    @Override
+    public void close() throws IOException {
+        manager.close();
+    }
+
+    private void refresh() throws ClavinException {
+        try {
+            manager.maybeRefreshBlocking();
+        } catch (IOException ioe) {
+            // unwrap failures to open or warm the new gazetteer
+            if (ioe.getCause() instanceof ClavinException) {
+                throw (ClavinException) ioe.getCause();
+            }
+            throw new ClavinException("Error reloading gazetteer index.", ioe);
+        }
+    }
+
+    /**
+     * Opens and warms the gazetteer for an index directory.
+     */
+    private GazetteerReference open(final File indexDir) throws ClavinException {
+        long start = System.nanoTime();
+        LuceneGazetteer gazetteer = new LuceneGazetteer(indexDir, config, this);
+        List<GazetteerQuery> queries = recentQueries != null ? recentQueries.keys() : Collections.emptyList();
+        try {
+            if (!queries.isEmpty()) {
+                gazetteer.getClosestLocations(queries);
+            }
+            if (warmer != null) {
+                warmer.warm(gazetteer);
+            }
+        } catch (ClavinException | RuntimeException e) {
+            try {
+                gazetteer.close();
+            } catch (IOException ioe) {
+                e.addSuppressed(ioe);
+            }
+            throw e;
+        }
+        config.metrics().recordTime(ClavinMetrics.Timer.INDEX_RELOAD, System.nanoTime() - start);
+        LOG.info("Opened gazetteer index [{}], warmed with {} recent queries", indexDir, queries.size());
+        return new GazetteerReference(gazetteer, indexDir);
+    }
+
+    private void remember(final GazetteerQuery query) {
+        GazetteerQuery key = CachingGazetteer.canonicalQuery(query);
+        if (key != null && recentQueries != null) {
+            recentQueries.put(key, Boolean.TRUE);
+        }
+    }
+
+    private GazetteerReference acquire() throws ClavinException {
+        try {
+            return manager.acquire();
+        } catch (IOException | RuntimeException e) {
+            throw new ClavinException("Gazetteer index is not available.", e);
+        }
+    }
+
+    private void release(final GazetteerReference ref) {
+        try {
+            manager.release(ref);
+        } catch (IOException ioe) {
+            // the caller's results are unaffected by a replaced index failing to close
+            LOG.warn("Error closing replaced gazetteer index [{}]", ref.indexDir, ioe);
+        }
+    }
+
+    /**
+     * A gazetteer and the index directory it was opened from, closed
+     * when its last reference is released.
+     */
+    private static final class GazetteerReference {
+        private final LuceneGazetteer gazetteer;
+        private final File indexDir;
+        private final AtomicInteger refCount = new AtomicInteger(1);
+
+        GazetteerReference(final LuceneGazetteer gazetteer, final File indexDir) {
+            this.gazetteer = gazetteer;
+            this.indexDir = indexDir;
+        }
+
+        boolean tryIncRef() {
+            int count;
+            while ((count = refCount.get()) > 0) {
+                if (refCount.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void decRef() throws IOException {
+            if (refCount.decrementAndGet() == 0) {
+                gazetteer.close();
+            }
+        }
+    }
+
+    /**
+     * Manages the current gazetteer, swapping in a new one on refresh if
+     * a reload is pending or the current index directory changed.
+     */
+    private final class GazetteerManager extends ReferenceManager<GazetteerReference> {
+        GazetteerManager(final GazetteerReference initial) {
+            current = initial;
+        }
+
+        @Override
+        protected void decRef(final GazetteerReference reference) throws IOException {
+            reference.decRef();
+        }
+
+        @Override
+        protected GazetteerReference refreshIfNeeded(final GazetteerReference referenceToRefresh) throws IOException {
+            File indexDir;
+            synchronized (ReloadableGazetteer.this) {
+                indexDir = pendingIndexDir;
+                pendingIndexDir = null;
+            }
+            if (indexDir == null) {
+                if (referenceToRefresh.gazetteer.isCurrent()) {
+                    return null;
+                }
+                indexDir = referenceToRefresh.indexDir;
+            }
+            GazetteerReference refreshed;
+            try {
+                refreshed = open(indexDir);
+            } catch (ClavinException ce) {
+                throw new IOException(String.format("Error opening gazetteer index [%s]", indexDir), ce);
+            }
+            reloads.incrementAndGet();
+            config.metrics().increment(ClavinMetrics.Counter.INDEX_RELOADS);
+            return refreshed;
+        }
+
+        @Override
+        protected boolean tryIncRef(final GazetteerReference reference) {
+            return reference.tryIncRef();
+        }
+
+        @Override
+        protected int getRefCount(final GazetteerReference reference) {
+            return reference.refCount.get();
+        }
+    }
+}
@@ -0,0 +1,487 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * ExactNameStore.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.index;
+
+import static com.novetta.clavin.index.IndexField.FEATURE_CODE;
+import static com.novetta.clavin.index.IndexField.GEONAME_ID;
+import static com.novetta.clavin.index.IndexField.HISTORICAL;
+import static com.novetta.clavin.index.IndexField.INDEX_NAME;
+import static com.novetta.clavin.index.IndexField.PARENT_ID;
+import static com.novetta.clavin.index.IndexField.SORT_POP;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RandomAccessInput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefArray;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.Counter;
+import org.apache.lucene.util.IntroSorter;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.fst.Builder;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.OffHeapFSTStore;
+import org.apache.lucene.util.fst.PositiveIntOutputs;
+import org.apache.lucene.util.fst.Util;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.novetta.clavin.gazetteer.FeatureCode;
+
+/**
+ * Maps each analyzed {@link IndexField#INDEX_NAME} of a gazetteer index
+ * to the documents bearing exactly that name, in descending order of
+ * sort population.
+ *
+ * An exact name query matches every name containing the query's tokens,
+ * but the best scoring matches are the names consisting of nothing else;
+ * as long as there are enough of them, a gazetteer can find the best
+ * exact matches here without searching the index. Each entry carries the
+ * document ID, GeoName ID, parent ID, feature code and historical flag,
+ * so that simple filters and duplicate removal need no document loads.
+ *
+ * The store is built from the index once it has been written, requiring
+ * feature codes as sorted doc values, and is persisted next to it as
+ * {@value #FILE_NAME}: the entries, followed by a finite state transducer
+ * from names to entry offsets. Both are read in place, memory-mapped
+ * if the index directory is. Document IDs are only valid for the commit
+ * the store was built from, so a store for another commit is ignored.
+ */
+public class ExactNameStore implements Closeable {
+    /**
+     * The logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ExactNameStore.class);
+
+    /**
+     * The name of the exact name store file in the index directory.
+     */
+    public static final String FILE_NAME = "names.exact";
+
+    /**
+     * The parent ID of entries without a parent.
+     */
+    public static final int NO_PARENT = -1;
+
+    private static final String CODEC_NAME = "ClavinExactNameStore";
+    private static final int VERSION_START = 0;
+    private static final int VERSION_CURRENT = VERSION_START;
+
+    // separates the tokens of a name key
+    private static final byte TOKEN_SEPARATOR = ' ';
+
+    // document ID, GeoName ID, parent ID and feature code index shifted above the historical flag
+    private static final int ENTRY_INTS = 4;
+
+    private final IndexInput input;
+    private final FST<Long> fst;
+    private final FeatureCode[] featureCodes;
+    private final long entriesStart;
+    private final long entriesLength;
+
+    private ExactNameStore(final IndexInput input, final FST<Long> fst, final FeatureCode[] featureCodes,
+            final long entriesStart, final long entriesLength) {
+        this.input = input;
+        this.fst = fst;
+        this.featureCodes = featureCodes;
+        this.entriesStart = entriesStart;
+        this.entriesLength = entriesLength;
+    }
+
+    /**
+     * Builds the key of a name: its analyzed tokens, separated by spaces.
+     * @param analyzer the index analyzer
+     * @param name     the name
+     * @return the key, empty if the name has no tokens
+     * @throws IOException if an error occurs analyzing the name
+     */
+    public static BytesRef key(final Analyzer analyzer, final String name) throws IOException {
+        BytesRefBuilder key = new BytesRefBuilder();
+        try (TokenStream tokens = analyzer.tokenStream(INDEX_NAME.key(), name)) {
+            TermToBytesRefAttribute term = tokens.addAttribute(TermToBytesRefAttribute.class);
+            tokens.reset();
+            while (tokens.incrementToken()) {
+                if (key.length() > 0) {
+                    key.append(TOKEN_SEPARATOR);
+                }
+                key.append(term.getBytesRef());
+            }
+            tokens.end();
+        }
+        return key.toBytesRef();
+    }
+
+    /**
+     * Builds the store over all names of an index and writes it to
+     * {@value #FILE_NAME} in the index directory, replacing any previous
+     * store. The names and entries of all documents are sorted in memory.
+     * @param reader    reader of the gazetteer index
+     * @param directory the index directory
+     * @param analyzer  the index analyzer
+     * @return the number of distinct names
+     * @throws IOException if the index cannot be read or the store written
+     */
+    public static long write(final DirectoryReader reader, final Directory directory, final Analyzer analyzer)
+            throws IOException {
+        BytesRefArray keys = new BytesRefArray(Counter.newCounter());
+        int[] docIds = new int[16];
+        long[] populations = new long[16];
+        int[] geonameIds = new int[16];
+        int[] parentIds = new int[16];
+        int[] codes = new int[16];
+        Map<String, Integer> codeIndexes = new HashMap<>();
+        List<String> codeNames = new ArrayList<>();
+
+        Set<String> nameField = Collections.singleton(INDEX_NAME.key());
+        int count = 0;
+        for (LeafReaderContext leaf : reader.leaves()) {
+            LeafReader leafReader = leaf.reader();
+            if (leafReader.getFieldInfos().fieldInfo(FEATURE_CODE.key()) == null
+                    || leafReader.getSortedDocValues(FEATURE_CODE.key()) == null) {
+                throw new IllegalStateException("Index has no feature code doc values for an exact name store");
+            }
+            NumericDocValues geonameIdValues = DocValues.getNumeric(leafReader, GEONAME_ID.key());
+            NumericDocValues populationValues = DocValues.getNumeric(leafReader, SORT_POP.key());
+            NumericDocValues historicalValues = DocValues.getNumeric(leafReader, HISTORICAL.key());
+            NumericDocValues parentIdValues = DocValues.getNumeric(leafReader, PARENT_ID.key());
+            SortedDocValues codeValues = DocValues.getSorted(leafReader, FEATURE_CODE.key());
+            Bits liveDocs = leafReader.getLiveDocs();
+            for (int doc = 0; doc < leafReader.maxDoc(); doc++) {
+                if (liveDocs != null && !liveDocs.get(doc)) {
+                    continue;
+                }
+                Document document = leafReader.document(doc, nameField);
+                BytesRef key = key(analyzer, document.get(INDEX_NAME.key()));
+                if (key.length == 0) {
+                    continue;
+                }
+                docIds = ArrayUtil.grow(docIds, count + 1);
+                populations = ArrayUtil.grow(populations, count + 1);
+                geonameIds = ArrayUtil.grow(geonameIds, count + 1);
+                parentIds = ArrayUtil.grow(parentIds, count + 1);
+                codes = ArrayUtil.grow(codes, count + 1);
+
+                keys.append(key);
+                docIds[count] = leaf.docBase + doc;
+                populations[count] = populationValues.advanceExact(doc) ? populationValues.longValue() : 0;
+                geonameIds[count] = geonameIdValues.advanceExact(doc) ? (int) geonameIdValues.longValue() : 0;
+                parentIds[count] = parentIdValues.advanceExact(doc) ? (int) parentIdValues.longValue() : NO_PARENT;
+                String code = codeValues.advanceExact(doc) ? codeValues.binaryValue().utf8ToString() : "";
+                int codeIndex = codeIndexes.computeIfAbsent(code, c -> {
+                    codeNames.add(c);
+                    return codeNames.size() - 1;
+                });
+                boolean historical = historicalValues.advanceExact(doc)
+                        && historicalValues.longValue() == IndexField.getBooleanIndexValue(true);
+                codes[count] = codeIndex << 1 | (historical ? 1 : 0);
+                count++;
+            }
+        }
+
+        // order by name, then as an exact name query ranks equally scored matches
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        final long[] pops = populations;
+        final int[] docs = docIds;
+        new IntroSorter() {
+            private final BytesRefBuilder left = new BytesRefBuilder();
+            private final BytesRefBuilder right = new BytesRefBuilder();
+            private final BytesRefBuilder pivotKey = new BytesRefBuilder();
+            private int pivot;
+
+            @Override
+            protected void swap(final int i, final int j) {
+                int tmp = order[i];
+                order[i] = order[j];
+                order[j] = tmp;
+            }
+
+            @Override
+            protected int compare(final int i, final int j) {
+                return compareEntries(keys.get(left, order[i]), order[i], keys.get(right, order[j]), order[j]);
+            }
+
+            @Override
+            protected void setPivot(final int i) {
+                pivot = order[i];
+                keys.get(pivotKey, pivot);
+            }
+
+            @Override
+            protected int comparePivot(final int j) {
+                return compareEntries(pivotKey.get(), pivot, keys.get(right, order[j]), order[j]);
+            }
+
+            private int compareEntries(final BytesRef key1, final int entry1, final BytesRef key2, final int entry2) {
+                int cmp = key1.compareTo(key2);
+                if (cmp == 0) {
+                    cmp = Long.compare(pops[entry2], pops[entry1]);
+                }
+                return cmp != 0 ? cmp : Integer.compare(docs[entry1], docs[entry2]);
+            }
+        }.sort(0, count);
+
+        Builder<Long> fstBuilder = new Builder<>(FST.INPUT_TYPE.BYTE1, PositiveIntOutputs.getSingleton());
+        ByteBuffersDataOutput entries = new ByteBuffersDataOutput();
+        IntsRefBuilder scratch = new IntsRefBuilder();
+        BytesRefBuilder current = new BytesRefBuilder();
+        BytesRefBuilder next = new BytesRefBuilder();
+        long names = 0;
+        for (int start = 0; start < count; ) {
+            current.copyBytes(keys.get(next, order[start]));
+            int end = start + 1;
+            while (end < count && keys.get(next, order[end]).equals(current.get())) {
+                end++;
+            }
+            fstBuilder.add(Util.toIntsRef(current.get(), scratch), entries.size());
+            entries.writeInt(end - start);
+            for (int i = start; i < end; i++) {
+                int entry = order[i];
+                entries.writeInt(docIds[entry]);
+                entries.writeInt(geonameIds[entry]);
+                entries.writeInt(parentIds[entry]);
+                entries.writeInt(codes[entry]);
+            }
+            names++;
+            start = end;
+        }
+        FST<Long> fst = fstBuilder.finish();
+
+        String tempName;
+        try (IndexOutput out = directory.createTempOutput("names", "exact", IOContext.DEFAULT)) {
+            tempName = out.getName();
+            CodecUtil.writeHeader(out, CODEC_NAME, VERSION_CURRENT);
+            out.writeString(reader.getIndexCommit().getSegmentsFileName());
+            out.writeVInt(codeNames.size());
+            for (String code : codeNames) {
+                out.writeString(code);
+            }
+            out.writeVLong(entries.size());
+            entries.copyTo(out);
+            out.writeByte((byte) (fst != null ? 1 : 0));
+            if (fst != null) {
+                fst.save(out);
+            }
+            CodecUtil.writeFooter(out);
+        }
+        try {
+            directory.deleteFile(FILE_NAME);
+        } catch (NoSuchFileException | FileNotFoundException e) {
+            // nothing to replace
+        }
+        directory.rename(tempName, FILE_NAME);
+        directory.syncMetaData();
+        return names;
+    }
+
+    /**
+     * Opens the exact name store of an index. The store stays open,
+     * reading from the directory, until it is closed.
+     * @param directory the index directory
+     * @param reader    the reader whose documents the store must describe
+     * @return the store, or <code>null</code> if the index has none or it was built for another commit
+     * @throws IOException if the store is corrupt or cannot be read
+     */
+    public static ExactNameStore open(final Directory directory, final DirectoryReader reader) throws IOException {
+        IndexInput in;
+        try {
+            in = directory.openInput(FILE_NAME, IOContext.READ);
+        } catch (NoSuchFileException | FileNotFoundException e) {
+            return null;
+        }
+        try {
+            CodecUtil.checkHeader(in, CODEC_NAME, VERSION_START, VERSION_CURRENT);
+            String commit = in.readString();
+            if (!commit.equals(reader.getIndexCommit().getSegmentsFileName())) {
+                LOG.warn("Ignoring exact name store built for index commit [{}]", commit);
+                in.close();
+                return null;
+            }
+            FeatureCode[] featureCodes = new FeatureCode[in.readVInt()];
+            for (int i = 0; i < featureCodes.length; i++) {
+                String code = in.readString();
+                try {
+                    featureCodes[i] = FeatureCode.valueOf(code);
+                } catch (IllegalArgumentException iae) {
+                    // unknown codes never match feature code filters
+                    featureCodes[i] = null;
+                }
+            }
+            long entriesLength = in.readVLong();
+            long entriesStart = in.getFilePointer();
+            in.seek(entriesStart + entriesLength);
+            FST<Long> fst = in.readByte() != 0 ?
+                    new FST<>(in, PositiveIntOutputs.getSingleton(), new OffHeapFSTStore()) : null;
+            CodecUtil.retrieveChecksum(in);
+            return new ExactNameStore(in, fst, featureCodes, entriesStart, entriesLength);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Looks up the documents whose name has exactly the given key.
+     * @param key the name key, as built by {@link #key}
+     * @return the entries, in descending order of sort population; empty if no name has the key
+     * @throws IOException if the store cannot be read
+     */
+    public Entries lookup(final BytesRef key) throws IOException {
+        Long offset = fst != null && key.length > 0 ? Util.get(fst, key) : null;
+        if (offset == null) {
+            return Entries.EMPTY;
+        }
+        RandomAccessInput entries = input.randomAccessSlice(entriesStart, entriesLength);
+        return new Entries(entries, offset, entries.readInt(offset), featureCodes);
+    }
+
+    /**
+     * Get the size of the store file.
+     * @return the size in bytes
+     */
+    public long sizeInBytes() {
+        return input.length();
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    /**
+     * The entries of a name, read from the store on access.
+     */
+    public static final class Entries {
+        private static final Entries EMPTY = new Entries(null, 0, 0, null);
+
+        private final RandomAccessInput input;
+        private final long start;
+        private final int size;
+        private final FeatureCode[] featureCodes;
+
+        private Entries(final RandomAccessInput input, final long offset, final int size,
+                final FeatureCode[] featureCodes) {
+            this.input = input;
+            this.start = offset + Integer.BYTES;
+            this.size = size;
+            this.featureCodes = featureCodes;
+        }
+
+        /**
+         * Get the number of entries.
+         * @return the number of entries
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Get the index document ID of an entry.
+         * @param i the entry
+         * @return the document ID
+         * @throws IOException if the store cannot be read
+         */
+        public int docId(final int i) throws IOException {
+            return read(i, 0);
+        }
+
+        /**
+         * Get the GeoName ID of an entry.
+         * @param i the entry
+         * @return the GeoName ID
+         * @throws IOException if the store cannot be read
+         */
+        public int geonameId(final int i) throws IOException {
+            return read(i, 1);
+        }
+
+        /**
+         * Get the parent ID of an entry.
+         * @param i the entry
+         * @return the parent ID, or {@link #NO_PARENT}
+         * @throws IOException if the store cannot be read
+         */
+        public int parentId(final int i) throws IOException {
+            return read(i, 2);
+        }
+
+        /**
+         * Get the feature code of an entry.
+         * @param i the entry
+         * @return the feature code, or <code>null</code> if unknown
+         * @throws IOException if the store cannot be read
+         */
+        public FeatureCode featureCode(final int i) throws IOException {
+            return featureCodes[read(i, 3) >>> 1];
+        }
+
+        /**
+         * Is the entry a historical location?
+         * @param i the entry
+         * @return <code>true</code> if the location is historical
+         * @throws IOException if the store cannot be read
+         */
+        public boolean isHistorical(final int i) throws IOException {
+            return (read(i, 3) & 1) != 0;
+        }
+
+        private int read(final int i, final int field) throws IOException {
+            return input.readInt(start + ((long) i * ENTRY_INTS + field) * Integer.BYTES);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * GeoNameRecordCodec.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.novetta.clavin.gazetteer.BasicGeoName;
+import com.novetta.clavin.gazetteer.CountryCode;
+import com.novetta.clavin.gazetteer.FeatureClass;
+import com.novetta.clavin.gazetteer.FeatureCode;
+import com.novetta.clavin.gazetteer.GeoName;
+
+/**
+ * Encodes GeoNames as compact binary records, stored in the
+ * {@link IndexField#GEONAME_RECORD} doc values field, and decodes them
+ * without the string splitting, number and date parsing and time zone
+ * lookups of {@link BasicGeoName#parseFromGeoNamesRecord(String, String)}.
+ *
+ * A record holds the GeoName followed by the ancestors it was encoded
+ * with. Enumerations are stored by ordinal, so the format identifier
+ * written to the index commit data includes a fingerprint of their
+ * constants; an index written with different constants must be read
+ * from its gazetteer records instead. Decoded GeoNames are equal to the
+ * parsed ones, except that null strings become empty and their
+ * gazetteer record is only rebuilt on request.
+ */
+public final class GeoNameRecordCodec {
+    /**
+     * The logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(GeoNameRecordCodec.class);
+
+    /**
+     * The index commit data key holding the record format.
+     */
+    public static final String FORMAT_KEY = "geonameRecordFormat";
+
+    /**
+     * The record format written by this codec.
+     */
+    public static final String FORMAT_ID = "1:" + Integer.toHexString(Arrays.deepHashCode(new Object[] {
+        names(FeatureClass.values()), names(FeatureCode.values()), names(CountryCode.values())
+    }));
+
+    private static final FeatureClass[] FEATURE_CLASSES = FeatureClass.values();
+    private static final FeatureCode[] FEATURE_CODES = FeatureCode.values();
+    private static final CountryCode[] COUNTRY_CODES = CountryCode.values();
+
+    /**
+     * Marks a missing modification date.
+     */
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    /**
+     * Time zones by ID; GeoNames clone the time zones they are given.
+     */
+    private static final Map<String, TimeZone> TIME_ZONES = new ConcurrentHashMap<>();
+
+    private GeoNameRecordCodec() {
+    }
+
+    /**
+     * Encodes a GeoName as a binary record.
+     * @param geoName      the GeoName
+     * @param withAncestry also encode its ancestors, as far as they are resolved
+     * @return the binary record
+     * @throws IOException if an error occurs writing the record
+     */
+    public static BytesRef encode(final GeoName geoName, final boolean withAncestry) throws IOException {
+        List<GeoName> chain = new ArrayList<>();
+        for (GeoName current = geoName; current != null; current = withAncestry ? current.getParent() : null) {
+            chain.add(current);
+        }
+        ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+        out.writeVInt(chain.size());
+        for (GeoName current : chain) {
+            encodeGeoName(out, current);
+        }
+        return new BytesRef(out.toArrayCopy());
+    }
+
+    /**
+     * Decodes a binary record, setting the parents of the GeoName to the
+     * ancestors encoded with it.
+     * @param record        the binary record
+     * @param preferredName the preferred name of the GeoName, if known
+     * @return the GeoName
+     * @throws IOException if the record is truncated
+     */
+    public static GeoName decode(final BytesRef record, final String preferredName) throws IOException {
+        ByteArrayDataInput in = new ByteArrayDataInput(record.bytes, record.offset, record.length);
+        int count = in.readVInt();
+        GeoName geoName = decodeGeoName(in, preferredName);
+        GeoName current = geoName;
+        for (int idx = 1; idx < count; idx++) {
+            GeoName parent = decodeGeoName(in, null);
+            if (!current.setParent(parent)) {
+                LOG.error("Invalid ancestry path for GeoName [{}]: parent [{}]", geoName, parent);
+                break;
+            }
+            current = parent;
+        }
+        return geoName;
+    }
+
+    private static void encodeGeoName(final ByteBuffersDataOutput out, final GeoName geoName) throws IOException {
+        out.writeVInt(geoName.getGeonameID());
+        writeString(out, geoName.getName());
+        writeString(out, geoName.getAsciiName());
+        out.writeVInt(geoName.getAlternateNames().size());
+        for (String name : geoName.getAlternateNames()) {
+            writeString(out, name);
+        }
+        out.writeLong(Double.doubleToLongBits(geoName.getLatitude()));
+        out.writeLong(Double.doubleToLongBits(geoName.getLongitude()));
+        out.writeVInt(geoName.getFeatureClass().ordinal());
+        // TERRI is derived from TERR when the GeoName is created
+        FeatureCode code = geoName.getFeatureCode() == FeatureCode.TERRI ? FeatureCode.TERR : geoName.getFeatureCode();
+        out.writeVInt(code.ordinal());
+        out.writeVInt(geoName.getPrimaryCountryCode().ordinal());
+        out.writeVInt(geoName.getAlternateCountryCodes().size());
+        for (CountryCode cc : geoName.getAlternateCountryCodes()) {
+            out.writeVInt(cc.ordinal());
+        }
+        writeString(out, geoName.getAdmin1Code());
+        writeString(out, geoName.getAdmin2Code());
+        writeString(out, geoName.getAdmin3Code());
+        writeString(out, geoName.getAdmin4Code());
+        out.writeZLong(geoName.getPopulation());
+        out.writeZInt(geoName.getElevation());
+        out.writeZInt(geoName.getDigitalElevationModel());
+        writeString(out, geoName.getTimezone() != null ? geoName.getTimezone().getID() : null);
+        out.writeZLong(geoName.getModificationDate() != null ? geoName.getModificationDate().getTime() : NO_DATE);
+    }
+
+    private static GeoName decodeGeoName(final ByteArrayDataInput in, final String preferredName) throws IOException {
+        int geonameID = in.readVInt();
+        String name = in.readString();
+        String asciiName = in.readString();
+        int altNameCount = in.readVInt();
+        List<String> alternateNames = new ArrayList<>(altNameCount);
+        for (int i = 0; i < altNameCount; i++) {
+            alternateNames.add(in.readString());
+        }
+        double latitude = Double.longBitsToDouble(in.readLong());
+        double longitude = Double.longBitsToDouble(in.readLong());
+        FeatureClass featureClass = FEATURE_CLASSES[in.readVInt()];
+        FeatureCode featureCode = FEATURE_CODES[in.readVInt()];
+        CountryCode primaryCountryCode = COUNTRY_CODES[in.readVInt()];
+        int altCodeCount = in.readVInt();
+        List<CountryCode> alternateCountryCodes = new ArrayList<>(altCodeCount);
+        for (int i = 0; i < altCodeCount; i++) {
+            alternateCountryCodes.add(COUNTRY_CODES[in.readVInt()]);
+        }
+        String admin1Code = in.readString();
+        String admin2Code = in.readString();
+        String admin3Code = in.readString();
+        String admin4Code = in.readString();
+        long population = in.readZLong();
+        int elevation = in.readZInt();
+        int digitalElevationModel = in.readZInt();
+        String timezoneId = in.readString();
+        TimeZone timezone = timezoneId.isEmpty() ? null : TIME_ZONES.computeIfAbsent(timezoneId, TimeZone::getTimeZone);
+        long modified = in.readZLong();
+        Date modificationDate = modified != NO_DATE ? new Date(modified) : null;
+
+        return new BasicGeoName(geonameID, name, asciiName, alternateNames, preferredName,
+                latitude, longitude, featureClass, featureCode,
+                primaryCountryCode, alternateCountryCodes, admin1Code,
+                admin2Code, admin3Code, admin4Code, population,
+                elevation, digitalElevationModel, timezone,
+                modificationDate, null);
+    }
+
+    private static void writeString(final ByteBuffersDataOutput out, final String value) throws IOException {
+        out.writeString(value != null ? value : "");
+    }
+
+    private static String[] names(final Enum<?>[] constants) {
+        String[] names = new String[constants.length];
+        for (int i = 0; i < constants.length; i++) {
+            names[i] = constants[i].name();
+        }
+        return names;
+    }
+}
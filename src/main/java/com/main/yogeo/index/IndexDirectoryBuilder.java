@@ -2,26 +2,42 @@ package com.novetta.clavin.index;
 
 import static com.novetta.clavin.index.IndexField.*;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.Reader;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -33,21 +49,43 @@ import org.apache.commons.cli.ParseException;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.codecs.lucene50.Lucene50StoredFieldsFormat;
+import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.IntPoint;
 import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermInSetQuery;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import com.novetta.clavin.gazetteer.BasicGeoName;
 import com.novetta.clavin.gazetteer.CountryCode;
 import com.novetta.clavin.gazetteer.FeatureClass;
@@ -97,26 +135,102 @@ public class IndexDirectoryBuilder {
     private static final String INDEX_PATH_OPTION = "index-path";
     private static final String REPLACE_INDEX_OPTION = "replace-index";
     private static final String ALTERNATE_NAMES_OPTION = "alt-names-file";
+    private static final String RECORD_FORMAT_OPTION = "record-format";
+    private static final String SORT_BY_POPULATION_OPTION = "sort-by-population";
+    private static final String SYMSPELL_EDITS_OPTION = "symspell-edits";
+    private static final String EXACT_NAME_STORE_OPTION = "exact-name-store";
+    private static final String THREADS_OPTION = "threads";
+    private static final String TWO_PASS_OPTION = "two-pass";
+    private static final String RAM_BUFFER_OPTION = "ram-buffer-mb";
+    private static final String MERGE_POLICY_OPTION = "merge-policy";
+    private static final String FORCE_MERGE_OPTION = "force-merge";
+    private static final String NO_COMPOUND_FILES_OPTION = "no-compound-files";
+    private static final String STORED_FIELDS_MODE_OPTION = "stored-fields-mode";
+    private static final String MODIFICATIONS_FILES_OPTION = "modifications-files";
+    private static final String DELETIONS_FILES_OPTION = "deletions-files";
+
+    /**
+     * The file in the index directory reporting how the index was built.
+     */
+    public static final String BUILD_REPORT_FILE = "build-report.json";
+
+    // the number of gazetteer lines parsed together by a parser thread;
+    // tests lower it so small gazetteers are parsed in many batches
+    static int parseBatchSize = 1000;
+
+    // the number of parsed batches or GeoNames to index waiting per thread
+    private static final int BATCHES_PER_THREAD = 4;
+    private static final int GEONAMES_PER_THREAD = 256;
+
+    /**
+     * The index sort written with the sort-by-population option: documents in
+     * descending order of their sort population, so the most populous matches
+     * of a query are found first.
+     */
+    public static final Sort POPULATION_INDEX_SORT = new Sort(new SortField(SORT_POP.key(), SortField.Type.LONG, true));
+
+    // the feature codes of administrative divisions with an ancestry key; see GeoName#getAncestryKey()
+    private static final List<BytesRef> ADMIN_FEATURE_CODES = Arrays.asList(
+            new BytesRef(FeatureCode.ADM1.name()), new BytesRef(FeatureCode.ADM2.name()),
+            new BytesRef(FeatureCode.ADM3.name()), new BytesRef(FeatureCode.ADM4.name()),
+            new BytesRef(FeatureCode.PCL.name()), new BytesRef(FeatureCode.PCLD.name()),
+            new BytesRef(FeatureCode.PCLF.name()), new BytesRef(FeatureCode.PCLI.name()),
+            new BytesRef(FeatureCode.PCLIX.name()), new BytesRef(FeatureCode.PCLS.name()),
+            new BytesRef(FeatureCode.TERRI.name()));
+
+    // orders administrative divisions from the least to the most specific, before all other GeoNames
+    private static final Comparator<GeoName> ANCESTRY_ORDER = Comparator.comparingInt(geoName ->
+            geoName.getAncestryKey() != null ? geoName.getAncestryKey().split("\\.").length : Integer.MAX_VALUE);
 
     private static final String[] DEFAULT_GAZETTEER_FILES = new String[] {
         "./allCountries.txt",
         "./src/main/resources/SupplementaryGazetteer.txt"
     };
     private static final String DEFAULT_INDEX_DIRECTORY = "./IndexDirectory";
+    private static final RecordFormat DEFAULT_RECORD_FORMAT = RecordFormat.BOTH;
 
     private final Map<String, GeoName> adminMap;
     private final Map<String, Set<GeoName>> unresolvedMap;
     private final Map<Integer, AlternateName> alternateNameMap;
+    private final Map<Integer, String> indexedPreferredNames;
     private final boolean fullAncestry;
-
+    private final RecordFormat recordFormat;
+    private final boolean sortByPopulation;
+    private final int symSpellEdits;
+    private final boolean exactNameStore;
+    private final int threads;
+    private final boolean twoPass;
+    private final IndexWriterOptions writerOptions;
+
+    private Analyzer indexAnalyzer;
     private IndexWriter indexWriter;
     private int indexCount;
 
-    private IndexDirectoryBuilder(final boolean fullAncestryIn) {
+    // adds the documents of resolved GeoNames concurrently; null to add them on the calling thread
+    private ExecutorService indexers;
+
+    // in the second pass of a two-pass build, the administrative divisions resolved
+    // by the first pass in gazetteer order; null when building in a single pass
+    private Iterator<GeoName> resolvedAdmins;
+    // the last administrative division of each key, with which a single pass resolves
+    // the GeoNames whose parent key is missing once every gazetteer record is read
+    private Map<String, GeoName> lastAdmins;
+
+    private IndexDirectoryBuilder(final boolean fullAncestryIn, final RecordFormat recordFormatIn,
+            final boolean sortByPopulationIn, final int symSpellEditsIn, final boolean exactNameStoreIn,
+            final int threadsIn, final boolean twoPassIn, final IndexWriterOptions writerOptionsIn) {
         adminMap = new TreeMap<>();
         unresolvedMap = new TreeMap<>();
         alternateNameMap = new HashMap<>();
+        indexedPreferredNames = new HashMap<>();
         this.fullAncestry = fullAncestryIn;
+        this.recordFormat = recordFormatIn;
+        this.sortByPopulation = sortByPopulationIn;
+        this.symSpellEdits = symSpellEditsIn;
+        this.exactNameStore = exactNameStoreIn;
+        this.threads = threadsIn;
+        this.twoPass = twoPassIn;
+        this.writerOptions = writerOptionsIn;
     }
 
     /*
@@ -137,40 +251,54 @@ public class IndexDirectoryBuilder {
         FSDirectory index = FSDirectory.open(indexDir.toPath());
 
         // indexing by lower-casing & tokenizing on whitespace
-        Analyzer indexAnalyzer = new StandardAnalyzer(Reader.nullReader());
+        indexAnalyzer = new StandardAnalyzer(Reader.nullReader());
 
         // create the object that will actually build the Lucene index
-        indexWriter = new IndexWriter(index, new IndexWriterConfig(indexAnalyzer));
+        IndexWriterConfig writerConfig = writerOptions.apply(new IndexWriterConfig(indexAnalyzer));
+        LOG.info("Index writer options: {}", writerOptions);
+        if (sortByPopulation) {
+            writerConfig.setIndexSort(POPULATION_INDEX_SORT);
+        }
+        indexWriter = new IndexWriter(index, writerConfig);
 
         // let's see how long this takes...
         Date start = new Date();
+        long startNanos = System.nanoTime();
 
         // if we were given an alternate names file, process it
         if (altNamesFile != null) {
             loadAlternateNames(altNamesFile);
         }
 
+        if (twoPass) {
+            // resolve the administrative hierarchy first, so no GeoName waits for its parent
+            LOG.info("Reading administrative divisions... please wait.");
+            resolvedAdmins = loadAdminDivisions(gazetteerFiles).iterator();
+        }
+
         // load GeoNames gazetteer into Lucene index
-        String line;
-        int count = 0;
-        for (File gazetteer : gazetteerFiles) {
-            LOG.info("Processing Gazetteer: {}", gazetteer.getAbsolutePath());
-            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(gazetteer), "UTF-8"));
-            while ((line = reader.readLine()) != null) {
-                try {
-                    count += 1;
-                    // print progress update to console
-                    if (count % 100000 == 0 ) {
-                        LOG.info("rowcount: {}", count);
-                    }
-                    GeoName geoName = BasicGeoName.parseFromGeoNamesRecord(line);
-                    resolveAncestry(geoName);
-                } catch (IOException|RuntimeException e) {
-                    LOG.info("{} ({})", e.getCause(), e.getMessage());
+        int count;
+        if (threads > 1) {
+            LOG.info("Indexing with {} parser and {} indexing threads.", threads, threads);
+            indexers = new ThreadPoolExecutor(threads, threads, 0L, MILLISECONDS,
+                    new ArrayBlockingQueue<>(threads * GEONAMES_PER_THREAD), daemonThreads("gazetteer-indexer"),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            boolean loaded = false;
+            try {
+                count = loadGazetteersInParallel(gazetteerFiles);
+                loaded = true;
+            } finally {
+                if (!loaded) {
+                    // stop the indexing threads and drop their queued work
+                    indexers.shutdownNow();
+                    indexers = null;
                 }
             }
-            reader.close();
+        } else {
+            count = loadGazetteers(gazetteerFiles);
         }
+        resolvedAdmins = null;
+        lastAdmins = null;
 
         // that wasn't so long, was it?
         Date stop = new Date();
@@ -190,11 +318,54 @@ public class IndexDirectoryBuilder {
             }
         }
 
+        if (indexers != null) {
+            // wait for the documents of every GeoName to be added
+            indexers.shutdown();
+            try {
+                while (!indexers.awaitTermination(1, MINUTES)) {
+                    LOG.info("Waiting for indexing threads to finish.");
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for indexing threads");
+            } finally {
+                indexers = null;
+            }
+        }
+
         LOG.info("[DONE]");
         LOG.info("{} geonames added to index. ({} records)", indexWriter.getDocStats().maxDoc, indexCount);
+        double seconds = Math.max(1L, System.nanoTime() - startNanos) / (double) SECONDS.toNanos(1);
+        LOG.info("Indexed {} gazetteer lines in {} seconds: {} lines/s, {} documents/s.", count,
+                String.format("%.1f", seconds), Math.round(count / seconds),
+                Math.round(indexWriter.getDocStats().maxDoc / seconds));
         LOG.info("Merging indices... please wait.");
+        if (writerOptions.forceMerge()) {
+            indexWriter.forceMerge(1);
+        }
 
+        if (recordFormat.writesBinary()) {
+            // record the binary format so readers can tell whether they can decode it
+            indexWriter.setLiveCommitData(Collections.singletonMap(
+                    GeoNameRecordCodec.FORMAT_KEY, GeoNameRecordCodec.FORMAT_ID).entrySet());
+        }
         indexWriter.close();
+
+        LOG.info("Building name filter... please wait.");
+        writeNameFilter(index);
+
+        if (symSpellEdits > 0) {
+            LOG.info("Building symmetric delete index... please wait.");
+            writeSymSpellIndex(index);
+        }
+
+        if (exactNameStore) {
+            LOG.info("Building exact name store... please wait.");
+            writeExactNameStore(index);
+        }
+
+        writeBuildReport(index, indexDir, count, System.nanoTime() - startNanos, null);
+
         index.close();
 
         LOG.info("[DONE]");
@@ -205,6 +376,636 @@ public class IndexDirectoryBuilder {
         		df.format(start), df.format(stop), MILLISECONDS.toSeconds(elapsedTime));
     }
 
+    /**
+     * Applies GeoNames.org daily modification and deletion files to an
+     * existing index, built with the same options as this builder. The
+     * documents of modified GeoNames are replaced and those of deleted
+     * GeoNames removed; when the ancestry of an administrative division
+     * changes, or it is deleted, the ancestry of every GeoName below it is
+     * recomputed as well. All changes are committed at once, so readers
+     * see either the index before the update or the whole update, and the
+     * sidecar files are rebuilt once the changes are committed.
+     *
+     * @param indexDir          index directory location
+     * @param modificationFiles modification files, in the order they should be applied
+     * @param deletionFiles     deletion files, in the order they should be applied
+     * @throws IOException      if the index or the update files cannot be read, or the index updated
+     */
+    public void updateIndex(final File indexDir, final List<File> modificationFiles, final List<File> deletionFiles)
+            throws IOException {
+        LOG.info("Updating index... please wait.");
+
+        indexCount = 0;
+        long startNanos = System.nanoTime();
+
+        FSDirectory index = FSDirectory.open(indexDir.toPath());
+        indexAnalyzer = new StandardAnalyzer(Reader.nullReader());
+
+        // later files override earlier ones, and deleted GeoNames are not re-added
+        Map<Integer, GeoName> modified = new LinkedHashMap<>();
+        Set<Integer> deleted = new HashSet<>();
+        int count = readModifications(modificationFiles, modified) + readDeletions(deletionFiles, deleted);
+        modified.keySet().removeAll(deleted);
+        LOG.info("Found {} modified and {} deleted GeoNames.", modified.size(), deleted.size());
+
+        List<GeoName> updated = new ArrayList<>(modified.values());
+        Map<String, String> commitData;
+        int descendantCount;
+        try (DirectoryReader reader = DirectoryReader.open(index)) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            commitData = reader.getIndexCommit().getUserData();
+
+            // rebuild the administrative hierarchy of the index from the parent IDs of its divisions
+            Map<Integer, IndexedGeoName> indexedAdmins = readIndexedGeoNames(searcher,
+                    new TermInSetQuery(FEATURE_CODE.key(), ADMIN_FEATURE_CODES));
+            Map<Integer, GeoName> admins = new HashMap<>();
+            for (IndexedGeoName admin : indexedAdmins.values()) {
+                if (admin.geoName.getAncestryKey() != null) {
+                    admins.put(admin.geoName.getGeonameID(), admin.geoName);
+                }
+            }
+            for (IndexedGeoName admin : indexedAdmins.values()) {
+                GeoName parent = admin.parentId != null ? admins.get(admin.parentId) : null;
+                if (parent != null) {
+                    admin.geoName.setParent(parent);
+                }
+            }
+            for (GeoName admin : admins.values()) {
+                adminMap.put(admin.getAncestryKey(), admin);
+            }
+            LOG.info("Found {} administrative divisions.", adminMap.size());
+
+            // keep the preferred names of the GeoNames being replaced
+            Map<Integer, IndexedGeoName> existing = modified.isEmpty() ? Collections.emptyMap() :
+                    readIndexedGeoNames(searcher, IntPoint.newSetQuery(GEONAME_ID.key(), modified.keySet()));
+            for (IndexedGeoName geoName : existing.values()) {
+                keepPreferredName(geoName);
+            }
+
+            // replace the modified divisions, and remove the deleted ones, from the hierarchy
+            Set<Integer> changedAdmins = new HashSet<>();
+            for (Integer geonameId : deleted) {
+                if (removeAdmin(admins.remove(geonameId))) {
+                    changedAdmins.add(geonameId);
+                }
+            }
+            List<GeoName> modifiedAdmins = new ArrayList<>();
+            for (GeoName geoName : modified.values()) {
+                if (geoName.getAncestryKey() != null) {
+                    replaceAdmin(admins, geoName);
+                    modifiedAdmins.add(geoName);
+                }
+            }
+            modifiedAdmins.sort(ANCESTRY_ORDER);
+            for (GeoName admin : modifiedAdmins) {
+                linkParent(admin);
+                // without full ancestry, documents only hold the IDs of their ancestors
+                IndexedGeoName before = existing.get(admin.getGeonameID());
+                if (before != null && (fullAncestry || !before.ancestorIds.equals(ancestorIds(admin)))) {
+                    changedAdmins.add(admin.getGeonameID());
+                }
+            }
+
+            // reload the GeoNames below every division whose ancestry changed
+            Map<Integer, IndexedGeoName> descendants = changedAdmins.isEmpty() ? new HashMap<>() :
+                    readIndexedGeoNames(searcher, IntPoint.newSetQuery(ANCESTOR_IDS.key(), changedAdmins));
+            descendants.keySet().removeAll(modified.keySet());
+            descendants.keySet().removeAll(deleted);
+            for (IndexedGeoName descendant : descendants.values()) {
+                keepPreferredName(descendant);
+                if (descendant.geoName.getAncestryKey() != null) {
+                    replaceAdmin(admins, descendant.geoName);
+                }
+                updated.add(descendant.geoName);
+            }
+            descendantCount = descendants.size();
+            LOG.info("Recomputing the ancestry of {} GeoNames below {} changed administrative divisions.",
+                    descendantCount, changedAdmins.size());
+        }
+
+        // parents before their children, so every ancestry is complete when it is indexed
+        updated.sort(ANCESTRY_ORDER);
+        for (GeoName geoName : updated) {
+            linkParent(geoName);
+        }
+
+        IndexWriterConfig writerConfig = writerOptions.apply(new IndexWriterConfig(indexAnalyzer))
+                .setOpenMode(IndexWriterConfig.OpenMode.APPEND);
+        if (sortByPopulation) {
+            writerConfig.setIndexSort(POPULATION_INDEX_SORT);
+        }
+        indexWriter = new IndexWriter(index, writerConfig);
+        boolean committed = false;
+        try {
+            // GEONAME_ID is only indexed as a point, so documents are replaced by deleting
+            // every document of the GeoName before adding the new ones
+            for (Integer geonameId : deleted) {
+                indexWriter.deleteDocuments(IntPoint.newExactQuery(GEONAME_ID.key(), geonameId));
+            }
+            for (GeoName geoName : updated) {
+                indexWriter.deleteDocuments(IntPoint.newExactQuery(GEONAME_ID.key(), geoName.getGeonameID()));
+                indexGeoName(geoName);
+            }
+            if (writerOptions.forceMerge()) {
+                indexWriter.forceMerge(1);
+            }
+            indexWriter.setLiveCommitData(commitData.entrySet());
+            indexWriter.commit();
+            committed = true;
+        } finally {
+            if (committed) {
+                indexWriter.close();
+            } else {
+                // leave the index as it was
+                indexWriter.rollback();
+            }
+        }
+        LOG.info("{} GeoNames updated, {} deleted.", indexCount, deleted.size());
+
+        // the sidecars below record the commit they are built for, so a gazetteer
+        // opening the new commit before they are replaced ignores the old ones
+
+        LOG.info("Building name filter... please wait.");
+        writeNameFilter(index);
+
+        if (symSpellEdits > 0) {
+            LOG.info("Building symmetric delete index... please wait.");
+            writeSymSpellIndex(index);
+        }
+
+        if (exactNameStore) {
+            LOG.info("Building exact name store... please wait.");
+            writeExactNameStore(index);
+        }
+
+        Map<String, Object> update = new LinkedHashMap<>();
+        update.put("modified", modified.size());
+        update.put("deleted", deleted.size());
+        update.put("descendants", descendantCount);
+        writeBuildReport(index, indexDir, count, System.nanoTime() - startNanos, update);
+
+        index.close();
+
+        LOG.info("[DONE]");
+    }
+
+    /**
+     * Reads the modified GeoNames from GeoNames.org modification files,
+     * which hold complete gazetteer records.
+     *
+     * @param modificationFiles the modification files
+     * @param modified          receives the modified GeoNames by GeoName ID
+     * @return                  the number of lines read
+     * @throws IOException      if a modification file cannot be read
+     */
+    private int readModifications(final List<File> modificationFiles, final Map<Integer, GeoName> modified)
+            throws IOException {
+        String line;
+        int count = 0;
+        for (File modifications : modificationFiles) {
+            LOG.info("Processing modifications: {}", modifications.getAbsolutePath());
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(modifications), "UTF-8"))) {
+                while ((line = reader.readLine()) != null) {
+                    count++;
+                    try {
+                        GeoName geoName = BasicGeoName.parseFromGeoNamesRecord(line);
+                        modified.put(geoName.getGeonameID(), geoName);
+                    } catch (RuntimeException e) {
+                        LOG.info("{} ({})", e.getCause(), e.getMessage());
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reads the IDs of deleted GeoNames from GeoNames.org deletion files,
+     * whose lines hold the GeoName ID, name and a comment.
+     *
+     * @param deletionFiles     the deletion files
+     * @param deleted           receives the IDs of the deleted GeoNames
+     * @return                  the number of lines read
+     * @throws IOException      if a deletion file cannot be read
+     */
+    private int readDeletions(final List<File> deletionFiles, final Set<Integer> deleted) throws IOException {
+        String line;
+        int count = 0;
+        for (File deletions : deletionFiles) {
+            LOG.info("Processing deletions: {}", deletions.getAbsolutePath());
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(deletions), "UTF-8"))) {
+                while ((line = reader.readLine()) != null) {
+                    count++;
+                    try {
+                        deleted.add(Integer.parseInt(StringUtils.substringBefore(line, "\t").trim()));
+                    } catch (NumberFormatException nfe) {
+                        LOG.info("Invalid deletion: {}", line);
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reads the GeoNames of the documents matching a query from the
+     * index, without their ancestry, reading a single document of each.
+     *
+     * @param searcher      searches the index
+     * @param query         the query
+     * @return              the indexed GeoNames by GeoName ID
+     * @throws IOException  if the index cannot be read
+     */
+    private static Map<Integer, IndexedGeoName> readIndexedGeoNames(final IndexSearcher searcher, final Query query)
+            throws IOException {
+        final Map<Integer, IndexedGeoName> geoNames = new HashMap<>();
+        searcher.search(query, new SimpleCollector() {
+            private LeafReader leafReader;
+            private NumericDocValues geonameIds;
+            private BinaryDocValues records;
+
+            @Override
+            protected void doSetNextReader(final LeafReaderContext context) throws IOException {
+                leafReader = context.reader();
+                geonameIds = DocValues.getNumeric(leafReader, GEONAME_ID.key());
+                records = DocValues.getBinary(leafReader, GEONAME_RECORD.key());
+            }
+
+            @Override
+            public void collect(final int doc) throws IOException {
+                if (!geonameIds.advanceExact(doc) || geoNames.containsKey((int) geonameIds.longValue())) {
+                    return;
+                }
+                Document document = leafReader.document(doc);
+                // the first line of a stored record is the GeoName's own record, followed by its ancestors
+                String record = StringUtils.substringBefore(document.get(GEONAME.key()), "\n");
+                if (record == null && records.advanceExact(doc)) {
+                    record = GeoNameRecordCodec.decode(records.binaryValue(), null).getGazetteerRecord();
+                }
+                if (record == null) {
+                    LOG.error("No record found for GeoName {}", geonameIds.longValue());
+                    return;
+                }
+                IndexedGeoName indexed = new IndexedGeoName(BasicGeoName.parseFromGeoNamesRecord(record), document);
+                geoNames.put(indexed.geoName.getGeonameID(), indexed);
+            }
+
+            @Override
+            public ScoreMode scoreMode() {
+                return ScoreMode.COMPLETE_NO_SCORES;
+            }
+        });
+        return geoNames;
+    }
+
+    private void keepPreferredName(final IndexedGeoName indexed) {
+        if (indexed.preferredName != null) {
+            indexedPreferredNames.put(indexed.geoName.getGeonameID(), indexed.preferredName);
+        }
+    }
+
+    /**
+     * Puts an administrative division in the hierarchy in place of the
+     * division with the same GeoName ID.
+     */
+    private void replaceAdmin(final Map<Integer, GeoName> admins, final GeoName admin) {
+        removeAdmin(admins.put(admin.getGeonameID(), admin));
+        adminMap.put(admin.getAncestryKey(), admin);
+    }
+
+    /**
+     * Removes an administrative division from the hierarchy, unless
+     * another division has taken its ancestry key.
+     *
+     * @return true if the division was in the hierarchy
+     */
+    private boolean removeAdmin(final GeoName admin) {
+        if (admin == null) {
+            return false;
+        }
+        if (adminMap.get(admin.getAncestryKey()) == admin) {
+            adminMap.remove(admin.getAncestryKey());
+        }
+        return true;
+    }
+
+    /**
+     * Sets the parent of a GeoName to the administrative division of its
+     * parent ancestry key or, when it is missing, of the closest less
+     * specific key, as unresolved GeoNames are when building the index.
+     */
+    private void linkParent(final GeoName geoName) {
+        linkParent(geoName, adminMap);
+    }
+
+    /**
+     * Sets the parent of a GeoName to the administrative division of its
+     * parent ancestry key in the admin map or, when it is missing, of the
+     * closest less specific key in the given divisions.
+     */
+    private void linkParent(final GeoName geoName, final Map<String, GeoName> fallbackAdmins) {
+        String parentKey = geoName.getParentAncestryKey();
+        if (parentKey == null) {
+            return;
+        }
+        String subKey = parentKey;
+        GeoName parent = adminMap.get(subKey);
+        int lastDot;
+        while (parent == null && (lastDot = subKey.lastIndexOf(".")) > 0) {
+            subKey = subKey.substring(0, lastDot);
+            parent = fallbackAdmins.get(subKey);
+        }
+        if (parent == null || !geoName.setParent(parent)) {
+            LOG.error("Unable to resolve parent for GeoName [{}] with key: {}", geoName, parentKey);
+        }
+    }
+
+    private static List<Integer> ancestorIds(final GeoName geoName) {
+        List<Integer> ids = new ArrayList<>();
+        for (GeoName parent = geoName.getParent(); parent != null; parent = parent.getParent()) {
+            ids.add(parent.getGeonameID());
+        }
+        return ids;
+    }
+
+    /**
+     * Writes the {@value #BUILD_REPORT_FILE} summarizing the built index
+     * and the options it was built with to the index directory.
+     *
+     * @param index         the index directory
+     * @param indexDir      the index directory location
+     * @param lines         the number of gazetteer lines read
+     * @param buildNanos    the time taken to build the index and its sidecar files
+     * @param update        what an update of the index changed; null when the index was built
+     * @throws IOException  if the index cannot be read or the report written
+     */
+    private void writeBuildReport(final FSDirectory index, final File indexDir, final int lines, final long buildNanos,
+            final Map<String, Object> update) throws IOException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        try (DirectoryReader reader = DirectoryReader.open(index)) {
+            report.put("segmentCount", reader.leaves().size());
+            report.put("documents", reader.numDocs());
+        }
+        long indexSize = 0;
+        for (String file : index.listAll()) {
+            if (!BUILD_REPORT_FILE.equals(file)) {
+                indexSize += index.fileLength(file);
+            }
+        }
+        report.put("indexSizeBytes", indexSize);
+        report.put("buildTimeMillis", NANOSECONDS.toMillis(buildNanos));
+        report.put("gazetteerLines", lines);
+        report.put("geoNames", indexCount);
+        if (update != null) {
+            report.put("update", update);
+        }
+
+        Map<String, Object> options = new LinkedHashMap<>();
+        options.put("ramBufferSizeMB", writerOptions.ramBufferSizeMB());
+        options.put("mergePolicy", writerOptions.mergePolicy());
+        options.put("forceMerge", writerOptions.forceMerge());
+        options.put("compoundFiles", writerOptions.compoundFiles());
+        options.put("storedFieldsMode", writerOptions.storedFieldsMode());
+        options.put("threads", threads);
+        options.put("twoPass", twoPass);
+        options.put("fullAncestry", fullAncestry);
+        options.put("recordFormat", recordFormat);
+        options.put("sortByPopulation", sortByPopulation);
+        options.put("symSpellEdits", symSpellEdits);
+        options.put("exactNameStore", exactNameStore);
+        report.put("options", options);
+
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(new File(indexDir, BUILD_REPORT_FILE), report);
+        LOG.info("Index: {} segments, {} bytes", report.get("segmentCount"), indexSize);
+    }
+
+    /**
+     * Reads, parses and resolves the ancestry of every gazetteer record
+     * on the calling thread.
+     *
+     * @param gazetteerFiles    the gazetteer files to process
+     * @return                  the number of gazetteer lines read
+     * @throws IOException      if a gazetteer file cannot be read
+     */
+    private int loadGazetteers(final List<File> gazetteerFiles) throws IOException {
+        String line;
+        int count = 0;
+        for (File gazetteer : gazetteerFiles) {
+            LOG.info("Processing Gazetteer: {}", gazetteer.getAbsolutePath());
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(gazetteer), "UTF-8"));
+            while ((line = reader.readLine()) != null) {
+                try {
+                    count += 1;
+                    // print progress update to console
+                    if (count % 100000 == 0 ) {
+                        LOG.info("rowcount: {}", count);
+                    }
+                    GeoName geoName = BasicGeoName.parseFromGeoNamesRecord(line);
+                    addGeoName(geoName);
+                } catch (IOException|RuntimeException e) {
+                    LOG.info("{} ({})", e.getCause(), e.getMessage());
+                }
+            }
+            reader.close();
+        }
+        return count;
+    }
+
+    /**
+     * Reads, parses and resolves the ancestry of every gazetteer record
+     * in a pipeline: a reader thread reads batches of lines, parser
+     * threads parse them and the calling thread resolves the ancestry of
+     * the parsed GeoNames, batch by batch in the order they were read, so
+     * the administrative hierarchy is built exactly as on a single thread.
+     * Resolved GeoNames are indexed concurrently by the indexing threads.
+     *
+     * @param gazetteerFiles    the gazetteer files to process
+     * @return                  the number of gazetteer lines read
+     * @throws IOException      if a gazetteer file cannot be read
+     */
+    private int loadGazetteersInParallel(final List<File> gazetteerFiles) throws IOException {
+        ExecutorService parsers = Executors.newFixedThreadPool(threads, daemonThreads("gazetteer-parser"));
+        BlockingQueue<CompletableFuture<ParsedBatch>> batches = new ArrayBlockingQueue<>(threads * BATCHES_PER_THREAD);
+        Thread reader = new Thread(() -> readBatches(gazetteerFiles, parsers, batches), "gazetteer-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        int count = 0;
+        try {
+            ParsedBatch batch;
+            while ((batch = batches.take().join()) != ParsedBatch.END) {
+                for (GeoName geoName : batch.geoNames) {
+                    try {
+                        addGeoName(geoName);
+                    } catch (IOException|RuntimeException e) {
+                        LOG.info("{} ({})", e.getCause(), e.getMessage());
+                    }
+                }
+                // print progress update to console
+                if ((count + batch.lines) / 100000 > count / 100000) {
+                    LOG.info("rowcount: {}", (count + batch.lines) / 100000 * 100000);
+                }
+                count += batch.lines;
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted reading gazetteer files");
+        } catch (CompletionException ce) {
+            if (ce.getCause() instanceof IOException) {
+                throw (IOException) ce.getCause();
+            }
+            throw ce;
+        } finally {
+            reader.interrupt();
+            parsers.shutdownNow();
+        }
+        return count;
+    }
+
+    /**
+     * Reads the gazetteer files in batches of lines, handing each batch to
+     * the parser threads and queueing its result in reading order. Runs on
+     * the reader thread of a parallel build.
+     */
+    private static void readBatches(final List<File> gazetteerFiles, final ExecutorService parsers,
+            final BlockingQueue<CompletableFuture<ParsedBatch>> batches) {
+        int batchSize = parseBatchSize;
+        try {
+            try {
+                for (File gazetteer : gazetteerFiles) {
+                    LOG.info("Processing Gazetteer: {}", gazetteer.getAbsolutePath());
+                    try (BufferedReader reader = new BufferedReader(
+                            new InputStreamReader(new FileInputStream(gazetteer), "UTF-8"))) {
+                        List<String> lines = new ArrayList<>(batchSize);
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            lines.add(line);
+                            if (lines.size() == batchSize) {
+                                batches.put(parseBatch(lines, parsers));
+                                lines = new ArrayList<>(batchSize);
+                            }
+                        }
+                        if (!lines.isEmpty()) {
+                            batches.put(parseBatch(lines, parsers));
+                        }
+                    }
+                }
+                batches.put(CompletableFuture.completedFuture(ParsedBatch.END));
+            } catch (IOException ioe) {
+                batches.put(CompletableFuture.failedFuture(ioe));
+            }
+        } catch (InterruptedException ie) {
+            // the build has failed; stop reading
+        }
+    }
+
+    private static ThreadFactory daemonThreads(final String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static CompletableFuture<ParsedBatch> parseBatch(final List<String> lines, final ExecutorService parsers) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<GeoName> geoNames = new ArrayList<>(lines.size());
+            for (String line : lines) {
+                try {
+                    geoNames.add(BasicGeoName.parseFromGeoNamesRecord(line));
+                } catch (RuntimeException e) {
+                    LOG.info("{} ({})", e.getCause(), e.getMessage());
+                }
+            }
+            return new ParsedBatch(lines.size(), geoNames);
+        }, parsers);
+    }
+
+    /**
+     * A GeoName read from an existing index, with the preferred name and
+     * ancestry stored in its documents.
+     */
+    private static final class IndexedGeoName {
+        private final GeoName geoName;
+        private final String preferredName;
+        private final Integer parentId;
+        private final List<Integer> ancestorIds;
+
+        private IndexedGeoName(final GeoName geoName, final Document document) {
+            this.geoName = geoName;
+            this.preferredName = document.get(PREFERRED_NAME.key());
+            IndexableField parent = document.getField(PARENT_ID.key());
+            this.parentId = parent != null ? parent.numericValue().intValue() : null;
+            this.ancestorIds = new ArrayList<>();
+            for (IndexableField ancestor : document.getFields(ANCESTOR_IDS.key())) {
+                ancestorIds.add(ancestor.numericValue().intValue());
+            }
+        }
+    }
+
+    /**
+     * The GeoNames parsed from a batch of gazetteer lines.
+     */
+    private static final class ParsedBatch {
+        // marks the end of the gazetteer files
+        private static final ParsedBatch END = new ParsedBatch(0, Collections.emptyList());
+
+        private final int lines;
+        private final List<GeoName> geoNames;
+
+        private ParsedBatch(final int lines, final List<GeoName> geoNames) {
+            this.lines = lines;
+            this.geoNames = geoNames;
+        }
+    }
+
+    /**
+     * Builds the Bloom filter over all indexed name terms and stores it
+     * in the index directory, so gazetteers can skip exact queries for
+     * names that cannot match.
+     *
+     * @param index         the index directory
+     * @throws IOException  if the index cannot be read or the filter written
+     */
+    private void writeNameFilter(final FSDirectory index) throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(index)) {
+            NameBloomFilter filter = NameBloomFilter.build(reader, NameBloomFilter.DEFAULT_FALSE_POSITIVE_PROBABILITY);
+            filter.write(index, reader);
+            LOG.info("Name filter: {} bytes", filter.sizeInBytes());
+        }
+    }
+
+    /**
+     * Builds the symmetric delete index over all indexed name terms and
+     * stores it in the index directory, so gazetteers can find fuzzy
+     * candidates without walking the term dictionary.
+     *
+     * @param index         the index directory
+     * @throws IOException  if the index cannot be read or the symmetric delete index written
+     */
+    private void writeSymSpellIndex(final FSDirectory index) throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(index)) {
+            long deletes = SymSpellIndex.write(reader, index, symSpellEdits, SymSpellIndex.DEFAULT_PREFIX_LENGTH);
+            LOG.info("Symmetric delete index: {} deletes", deletes);
+        }
+    }
+
+    /**
+     * Builds the exact name store over all indexed names and stores it
+     * in the index directory, so gazetteers can find the best exact
+     * matches of common names without searching the index.
+     *
+     * @param index         the index directory
+     * @throws IOException  if the index cannot be read or the exact name store written
+     */
+    private void writeExactNameStore(final FSDirectory index) throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(index)) {
+            long names = ExactNameStore.write(reader, index, indexAnalyzer);
+            LOG.info("Exact name store: {} names", names);
+        }
+    }
+
     private static final int ALT_NAMES_ID_FIELD = 1;
     private static final int ALT_NAMES_LANG_FIELD = 2;
     private static final int ALT_NAMES_NAME_FIELD = 3;
@@ -248,6 +1049,96 @@ public class IndexDirectoryBuilder {
         LOG.info("Processed {} alternate names.  Found {} names.", lineNum, alternateNameMap.size());
     }
 
+    /**
+     * The first pass of a two-pass build: reads only the administrative
+     * divisions from the gazetteer files and resolves their ancestry from
+     * each other, leaving the first division of each key in the admin map.
+     *
+     * @param gazetteerFiles    the gazetteer files to process
+     * @return                  the administrative divisions, in gazetteer order
+     * @throws IOException      if a gazetteer file cannot be read
+     */
+    private List<GeoName> loadAdminDivisions(final List<File> gazetteerFiles) throws IOException {
+        List<GeoName> admins = new ArrayList<>();
+        String line;
+        for (File gazetteer : gazetteerFiles) {
+            LOG.info("Processing Gazetteer: {}", gazetteer.getAbsolutePath());
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(gazetteer), "UTF-8"))) {
+                while ((line = reader.readLine()) != null) {
+                    // only parse the records of feature class A, in the seventh column
+                    int featureClass = StringUtils.ordinalIndexOf(line, "\t", 6) + 1;
+                    if (featureClass == 0 || !line.startsWith("A\t", featureClass)) {
+                        continue;
+                    }
+                    try {
+                        GeoName geoName = BasicGeoName.parseFromGeoNamesRecord(line);
+                        String key = geoName.getAncestryKey();
+                        if (key != null) {
+                            GeoName conflict = adminMap.putIfAbsent(key, geoName);
+                            if (conflict != null) {
+                                LOG.error(String.format("Resolved duplicate admin key [%s] for GeoNames (%d %s:%s %s) and (%d %s:%s %s)",
+                                        key, conflict.getGeonameID(), conflict.getFeatureClass(), conflict.getFeatureCode(), conflict.getName(),
+                                        geoName.getGeonameID(), geoName.getFeatureClass(), geoName.getFeatureCode(), geoName.getName()));
+                            }
+                            admins.add(geoName);
+                        }
+                    } catch (RuntimeException e) {
+                        LOG.info("{} ({})", e.getCause(), e.getMessage());
+                    }
+                }
+            }
+        }
+
+        lastAdmins = new HashMap<>();
+        for (GeoName admin : admins) {
+            lastAdmins.put(admin.getAncestryKey(), admin);
+        }
+
+        // as in a single pass, the parent of a GeoName is the last division with its key read
+        // before it or, if there is none, the first one read after it; the admin map starts
+        // with the first division of each key and is updated as the divisions are read again
+        for (GeoName admin : admins) {
+            linkParent(admin, lastAdmins);
+            adminMap.put(admin.getAncestryKey(), admin);
+        }
+        LOG.info("Found {} administrative divisions.", adminMap.size());
+        adminMap.clear();
+        for (GeoName admin : admins) {
+            adminMap.putIfAbsent(admin.getAncestryKey(), admin);
+        }
+        return admins;
+    }
+
+    /**
+     * Resolves the ancestry of a GeoName read from the gazetteer files and
+     * indexes it once it is resolved. In the second pass of a two-pass
+     * build every parent is already known, so the GeoName is indexed at
+     * once, administrative divisions as resolved by the first pass.
+     *
+     * @param geoName       the GeoName
+     * @throws IOException  if an error occurs while indexing
+     */
+    private void addGeoName(final GeoName geoName) throws IOException {
+        if (resolvedAdmins == null) {
+            resolveAncestry(geoName);
+            return;
+        }
+        GeoName resolved = geoName;
+        if (geoName.getAncestryKey() != null) {
+            GeoName admin = resolvedAdmins.hasNext() ? resolvedAdmins.next() : null;
+            if (admin != null && admin.getGeonameID() == geoName.getGeonameID()) {
+                resolved = admin;
+            } else {
+                LOG.error("Administrative division [{}] was not read by the first pass; gazetteer files changed?", geoName);
+                linkParent(geoName, lastAdmins);
+            }
+            adminMap.put(resolved.getAncestryKey(), resolved);
+        } else {
+            linkParent(geoName, lastAdmins);
+        }
+        indexGeoName(resolved);
+    }
+
     private void resolveAncestry(final GeoName geoname) throws IOException {
         // set this GeoName's parent if it is known
         String parentKey = geoname.getParentAncestryKey();
@@ -373,7 +1264,28 @@ public class IndexDirectoryBuilder {
      */
     private void indexGeoName(final GeoName geoName) throws IOException {
         indexCount++;
-        
+        if (indexers != null) {
+            // the GeoName's ancestry is complete and will not change while its documents are added
+            indexers.execute(() -> {
+                try {
+                    addDocuments(geoName);
+                } catch (IOException|RuntimeException e) {
+                    LOG.info("{} ({})", e.getCause(), e.getMessage());
+                }
+            });
+        } else {
+            addDocuments(geoName);
+        }
+    }
+
+    /**
+     * Adds the documents of a GeoName to the index. Safe to call from
+     * several threads at once.
+     *
+     * @param geoName       the GeoName to index
+     * @throws IOException  if an error occurs while indexing
+     */
+    private void addDocuments(final GeoName geoName) throws IOException {
         // find all unique names for this GeoName
         String nm = geoName.getName();
         String asciiNm = geoName.getAsciiName();
@@ -392,24 +1304,31 @@ public class IndexDirectoryBuilder {
                 names.add(cc.name());
             }
         }
-        AlternateName preferredName = alternateNameMap.get(geoName.getGeonameID());
+        AlternateName alternateName = alternateNameMap.get(geoName.getGeonameID());
+        // when updating an index, keep the preferred names of the GeoNames already in it
+        String preferredName = alternateName != null ? alternateName.name : indexedPreferredNames.get(geoName.getGeonameID());
         // ensure preferred name is found in alternate names
         if (preferredName != null) {
-            names.add(preferredName.name);
+            names.add(preferredName);
         }
         names.remove(null);
         names.remove("");
 
         // reuse a single Document and field instances
         Document doc = new Document();
-        doc.add(new StoredField(GEONAME.key(), fullAncestry ? geoName.getGazetteerRecordWithAncestry() : geoName.getGazetteerRecord()));
+        if (recordFormat.writesTsv()) {
+            doc.add(new StoredField(GEONAME.key(), fullAncestry ? geoName.getGazetteerRecordWithAncestry() : geoName.getGazetteerRecord()));
+        }
+        if (recordFormat.writesBinary()) {
+            doc.add(new BinaryDocValuesField(GEONAME_RECORD.key(), GeoNameRecordCodec.encode(geoName, fullAncestry)));
+        }
         doc.add(new StoredField(GEONAME_ID.key(), geoName.getGeonameID()));				// store the value
         doc.add(new IntPoint(GEONAME_ID.key(), geoName.getGeonameID()));				// allow range queries
         doc.add(new NumericDocValuesField(GEONAME_ID.key(), geoName.getGeonameID()));	// allow sorting and scoring
         
         // if the alternate names file was loaded and we found a preferred name for this GeoName, store it
         if (preferredName != null) {
-            doc.add(new StoredField(PREFERRED_NAME.key(), preferredName.name));
+            doc.add(new StoredField(PREFERRED_NAME.key(), preferredName));
         }
         // index the direct parent ID in the PARENT_ID field
         GeoName parent = geoName.getParent();
@@ -452,12 +1371,25 @@ public class IndexDirectoryBuilder {
         doc.add(new IntPoint(HISTORICAL.key(), isHistorical));
         doc.add(new NumericDocValuesField(HISTORICAL.key(), isHistorical));
         doc.add(new StringField(FEATURE_CODE.key(), geoName.getFeatureCode().name(), Field.Store.NO));
+        if (exactNameStore) {
+            // the exact name store reads feature codes without loading documents
+            doc.add(new SortedDocValuesField(FEATURE_CODE.key(), new BytesRef(geoName.getFeatureCode().name())));
+        }
 
         // create a unique Document for each name of this GeoName
         TextField nameField = new TextField(INDEX_NAME.key(), "", Field.Store.YES);
         doc.add(nameField);
+        // in population-sorted indexes, record the number of name tokens so gazetteers
+        // can find the best scoring exact matches without scoring every match
+        IntPoint nameLengthField = new IntPoint(NAME_LENGTH.key(), 0);
+        if (sortByPopulation) {
+            doc.add(nameLengthField);
+        }
         for (String name : names) {
             nameField.setStringValue(name);
+            if (sortByPopulation) {
+                nameLengthField.setIntValue(countTokens(name));
+            }
             indexWriter.addDocument(doc);
         }
     }
@@ -518,9 +1450,29 @@ public class IndexDirectoryBuilder {
         }
     }
 
+    /**
+     * Counts the tokens the index analyzer produces for a name, which
+     * determine the length norm of the name when it is indexed.
+     * @param name the name
+     * @return the number of tokens
+     * @throws IOException if an error occurs analyzing the name
+     */
+    private int countTokens(final String name) throws IOException {
+        int count = 0;
+        try (TokenStream stream = indexAnalyzer.tokenStream(INDEX_NAME.key(), name)) {
+            stream.reset();
+            while (stream.incrementToken()) {
+                count++;
+            }
+            stream.end();
+        }
+        return count;
+    }
+
     /**
      * Turns a GeoNames gazetteer file into a Lucene index, and adds
-     * some supplementary gazetteer records at the end.
+     * some supplementary gazetteer records at the end, or applies the
+     * GeoNames daily modification and deletion files to an existing index.
      *
      * @param args              not used
      * @throws IOException		throws exception on error when building index
@@ -549,8 +1501,97 @@ public class IndexDirectoryBuilder {
         }
         boolean replaceIndex = cmd.hasOption(REPLACE_INDEX_OPTION);
         boolean fullAncestry = cmd.hasOption(FULL_ANCESTRY_OPTION);
+        boolean sortByPopulation = cmd.hasOption(SORT_BY_POPULATION_OPTION);
+        boolean exactNameStore = cmd.hasOption(EXACT_NAME_STORE_OPTION);
+        RecordFormat recordFormat;
+        try {
+            recordFormat = RecordFormat.valueOf(cmd.getOptionValue(RECORD_FORMAT_OPTION, DEFAULT_RECORD_FORMAT.name()).toUpperCase());
+        } catch (IllegalArgumentException iae) {
+            LOG.error("Unknown record format: {}", cmd.getOptionValue(RECORD_FORMAT_OPTION));
+            printHelp(options);
+            System.exit(-1);
+            return;
+        }
+        int symSpellEdits = 0;
+        if (cmd.hasOption(SYMSPELL_EDITS_OPTION)) {
+            try {
+                symSpellEdits = Integer.parseInt(cmd.getOptionValue(SYMSPELL_EDITS_OPTION));
+            } catch (NumberFormatException nfe) {
+                symSpellEdits = -1;
+            }
+            if (symSpellEdits < 1 || symSpellEdits >= SymSpellIndex.DEFAULT_PREFIX_LENGTH) {
+                LOG.error("Invalid symmetric delete edit distance: {}", cmd.getOptionValue(SYMSPELL_EDITS_OPTION));
+                printHelp(options);
+                System.exit(-1);
+                return;
+            }
+        }
+
+        int threads = 1;
+        if (cmd.hasOption(THREADS_OPTION)) {
+            try {
+                threads = Integer.parseInt(cmd.getOptionValue(THREADS_OPTION));
+            } catch (NumberFormatException nfe) {
+                threads = 0;
+            }
+            if (threads < 1) {
+                LOG.error("Invalid number of threads: {}", cmd.getOptionValue(THREADS_OPTION));
+                printHelp(options);
+                System.exit(-1);
+                return;
+            }
+        }
+
+        IndexWriterOptions writerOptions = new IndexWriterOptions()
+                .forceMerge(cmd.hasOption(FORCE_MERGE_OPTION))
+                .compoundFiles(!cmd.hasOption(NO_COMPOUND_FILES_OPTION));
+        try {
+            if (cmd.hasOption(RAM_BUFFER_OPTION)) {
+                writerOptions.ramBufferSizeMB(Double.parseDouble(cmd.getOptionValue(RAM_BUFFER_OPTION)));
+            }
+            if (cmd.hasOption(MERGE_POLICY_OPTION)) {
+                writerOptions.mergePolicy(IndexWriterOptions.MergePolicyType.valueOf(
+                        cmd.getOptionValue(MERGE_POLICY_OPTION).toUpperCase().replace('-', '_')));
+            }
+            if (cmd.hasOption(STORED_FIELDS_MODE_OPTION)) {
+                writerOptions.storedFieldsMode(Lucene50StoredFieldsFormat.Mode.valueOf(
+                        cmd.getOptionValue(STORED_FIELDS_MODE_OPTION).toUpperCase().replace('-', '_')));
+            }
+            // the index writer rejects invalid buffer sizes
+            writerOptions.apply(new IndexWriterConfig());
+        } catch (IllegalArgumentException iae) {
+            LOG.error("Invalid index writer option: {}", iae.getMessage());
+            printHelp(options);
+            System.exit(-1);
+            return;
+        }
 
         File idir = new File(indexPath);
+        if (cmd.hasOption(MODIFICATIONS_FILES_OPTION) || cmd.hasOption(DELETIONS_FILES_OPTION)) {
+            if (!idir.isDirectory()) {
+                LOG.error("No index to update at {}", idir.getAbsolutePath());
+                System.exit(-1);
+            }
+            // updated documents must be built the way the rest of the index was
+            File reportFile = new File(idir, BUILD_REPORT_FILE);
+            if (reportFile.isFile()) {
+                JsonNode built = new ObjectMapper().readTree(reportFile).path("options");
+                fullAncestry = built.path("fullAncestry").asBoolean(fullAncestry);
+                recordFormat = RecordFormat.valueOf(built.path("recordFormat").asText(recordFormat.name()));
+                sortByPopulation = built.path("sortByPopulation").asBoolean(sortByPopulation);
+                symSpellEdits = built.path("symSpellEdits").asInt(symSpellEdits);
+                exactNameStore = built.path("exactNameStore").asBoolean(exactNameStore);
+            } else {
+                LOG.warn("{} not found; updating the index with the given options.", reportFile.getAbsolutePath());
+            }
+            List<File> modificationFiles = readableFiles(cmd.getOptionValues(MODIFICATIONS_FILES_OPTION), "modifications");
+            List<File> deletionFiles = readableFiles(cmd.getOptionValues(DELETIONS_FILES_OPTION), "deletions");
+            new IndexDirectoryBuilder(fullAncestry, recordFormat, sortByPopulation, symSpellEdits, exactNameStore,
+                    threads, cmd.hasOption(TWO_PASS_OPTION), writerOptions)
+                    .updateIndex(idir, modificationFiles, deletionFiles);
+            return;
+        }
+
         // if the index directory exists, delete it if we are replacing, otherwise
         // exit gracefully
         if (idir.exists() ) {
@@ -563,15 +1604,7 @@ public class IndexDirectoryBuilder {
             }
         }
 
-        List<File> gazetteerFiles = new ArrayList<>();
-        for (String gp : gazetteerPaths) {
-            File gf = new File(gp);
-            if (gf.isFile() && gf.canRead()) {
-                gazetteerFiles.add(gf);
-            } else {
-                LOG.info("Unable to read Gazetteer file: {}", gf.getAbsolutePath());
-            }
-        }
+        List<File> gazetteerFiles = readableFiles(gazetteerPaths, "Gazetteer");
         if (gazetteerFiles.isEmpty()) {
             LOG.error("No Gazetteer files found.");
             System.exit(-1);
@@ -584,10 +1617,27 @@ public class IndexDirectoryBuilder {
             System.exit(-1);
         }
 
-        new IndexDirectoryBuilder(fullAncestry).buildIndex(idir, gazetteerFiles, altNamesFile);
+        new IndexDirectoryBuilder(fullAncestry, recordFormat, sortByPopulation, symSpellEdits, exactNameStore,
+                threads, cmd.hasOption(TWO_PASS_OPTION), writerOptions)
+                .buildIndex(idir, gazetteerFiles, altNamesFile);
     }
 
     
+    private static List<File> readableFiles(final String[] paths, final String description) {
+        List<File> files = new ArrayList<>();
+        if (paths != null) {
+            for (String path : paths) {
+                File file = new File(path);
+                if (file.isFile() && file.canRead()) {
+                    files.add(file);
+                } else {
+                    LOG.info("Unable to read {} file: {}", description, file.getAbsolutePath());
+                }
+            }
+        }
+        return files;
+    }
+
 	private static Options getOptions() {
         Options options = new Options();
 
@@ -602,6 +1652,83 @@ public class IndexDirectoryBuilder {
                         + " This will increase performance at the expense of a larger index.")
                 .build());
 
+        options.addOption(Option.builder()
+                .longOpt(RECORD_FORMAT_OPTION)
+                .desc(String.format("How each GeoName is stored: %s. TSV stores the gazetteer record, BINARY a compact"
+                        + " record that is faster to read, BOTH keeps the index readable by older versions. Default: %s",
+                        StringUtils.join(RecordFormat.values(), ", "), DEFAULT_RECORD_FORMAT))
+                .hasArg()
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(SORT_BY_POPULATION_OPTION)
+                .desc("Sort the index by descending population so queries for common names can stop after"
+                        + " the most populous exact matches. This will increase indexing time.")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(SYMSPELL_EDITS_OPTION)
+                .desc(String.format("Build a symmetric delete index of all name terms, up to the given edit distance,"
+                        + " for the SYMSPELL fuzzy backend. Typically %d; this will increase indexing time and index size.",
+                        SymSpellIndex.DEFAULT_MAX_EDITS))
+                .hasArg()
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(EXACT_NAME_STORE_OPTION)
+                .desc("Build a store of the locations bearing each name, so exact queries for common names"
+                        + " need not search the index. This will increase indexing time and index size.")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(THREADS_OPTION)
+                .desc(String.format("The number of threads parsing gazetteer records, and of threads adding them to the"
+                        + " index. The index holds the same documents for any number of threads. Typically the number of"
+                        + " available processors (%d). Default: 1", Runtime.getRuntime().availableProcessors()))
+                .hasArg()
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(TWO_PASS_OPTION)
+                .desc("Read the gazetteer files twice: first only the administrative divisions, then every record,"
+                        + " indexing each as soon as it is read. Only the divisions are kept in memory, so the index can"
+                        + " be built with a small heap, at the expense of reading the gazetteer files twice.")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(RAM_BUFFER_OPTION)
+                .desc(String.format("The memory buffering documents before they are written to a new segment, in MB."
+                        + " Default: %s", IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB))
+                .hasArg()
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(MERGE_POLICY_OPTION)
+                .desc(String.format("The policy merging segments while indexing: %s. Default: %s",
+                        StringUtils.join(IndexWriterOptions.MergePolicyType.values(), ", "),
+                        IndexWriterOptions.MergePolicyType.TIERED))
+                .hasArg()
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(FORCE_MERGE_OPTION)
+                .desc("Merge the index into a single segment once it is built, so every query searches one segment."
+                        + " This will increase indexing time.")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(NO_COMPOUND_FILES_OPTION)
+                .desc("Keep the separate files of every segment rather than packing small segments into compound files.")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(STORED_FIELDS_MODE_OPTION)
+                .desc(String.format("The compression of stored fields: %s. Default: %s",
+                        StringUtils.join(Lucene50StoredFieldsFormat.Mode.values(), ", "),
+                        Lucene50StoredFieldsFormat.Mode.BEST_SPEED))
+                .hasArg()
+                .build());
+
         options.addOption(Option.builder("i")
                 .longOpt(GAZETTEER_FILES_OPTION)
                 .desc(String.format("The ':'-separated list of input Gazetteer files to parse.  Default: %s",
@@ -617,6 +1744,22 @@ public class IndexDirectoryBuilder {
                 .hasArg()
                 .build());
 
+        options.addOption(Option.builder()
+                .longOpt(MODIFICATIONS_FILES_OPTION)
+                .desc("The ':'-separated list of GeoNames.org daily modification files to apply to the existing index,"
+                        + " rather than building a new index. The index is updated with the options it was built with.")
+                .hasArgs()
+                .valueSeparator(':')
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(DELETIONS_FILES_OPTION)
+                .desc("The ':'-separated list of GeoNames.org daily deletion files to apply to the existing index,"
+                        + " rather than building a new index.")
+                .hasArgs()
+                .valueSeparator(':')
+                .build());
+
         options.addOption(Option.builder("o")
                 .longOpt(INDEX_PATH_OPTION)
                 .desc(String.format("The path to the output index directory. Default: %s", DEFAULT_INDEX_DIRECTORY))
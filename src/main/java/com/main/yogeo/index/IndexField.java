@@ -46,7 +46,9 @@ public enum IndexField {
     SORT_POP("sortPopulation"),
     HISTORICAL("historical"),
     FEATURE_CODE("featureCode"),
-    PREFERRED_NAME("preferredName");
+    PREFERRED_NAME("preferredName"),
+    GEONAME_RECORD("geonameRecord"),
+    NAME_LENGTH("nameLength");
 
     /**
      * The class logger.
@@ -99,6 +101,8 @@ public enum IndexField {
                     break;
                 case HISTORICAL:
                 case FEATURE_CODE:
+                case GEONAME_RECORD:
+                case NAME_LENGTH:
                     // these fields are not stored
                     LOG.warn("Attempting to retrieve value for an unstored field: [{}]", this);
                     break;
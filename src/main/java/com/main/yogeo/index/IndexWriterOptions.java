@@ -0,0 +1,205 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * IndexWriterOptions.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.index;
+
+import org.apache.lucene.codecs.lucene50.Lucene50StoredFieldsFormat;
+import org.apache.lucene.codecs.lucene84.Lucene84Codec;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LogByteSizeMergePolicy;
+import org.apache.lucene.index.LogDocMergePolicy;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.TieredMergePolicy;
+
+/**
+ * Settings of the Lucene index writer used by {@link IndexDirectoryBuilder},
+ * which determine the segments, files and stored field compression of
+ * the index it writes. The defaults are Lucene's.
+ *
+ * Gazetteer indexes are written once and then only read, so serving is
+ * fastest from a single segment with stored fields compressed for speed:
+ * see {@link #forceMerge(boolean)}.
+ */
+public class IndexWriterOptions {
+    /**
+     * The merge policies the index writer can use.
+     */
+    public enum MergePolicyType {
+        /**
+         * Merges segments of about equal size, allowing merges of non-adjacent segments.
+         */
+        TIERED,
+
+        /**
+         * Merges adjacent segments by their size in bytes.
+         */
+        LOG_BYTE_SIZE,
+
+        /**
+         * Merges adjacent segments by their number of documents.
+         */
+        LOG_DOC
+    }
+
+    private double ramBufferSizeMB = IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB;
+    private MergePolicyType mergePolicy = MergePolicyType.TIERED;
+    private boolean forceMerge;
+    private boolean compoundFiles = true;
+    private Lucene50StoredFieldsFormat.Mode storedFieldsMode = Lucene50StoredFieldsFormat.Mode.BEST_SPEED;
+
+    /**
+     * Get the amount of memory buffering added documents before they are
+     * flushed to a new segment.
+     * @return the RAM buffer size in MB
+     */
+    public double ramBufferSizeMB() {
+        return ramBufferSizeMB;
+    }
+
+    /**
+     * Set the amount of memory buffering added documents before they are
+     * flushed to a new segment. Larger buffers write fewer, larger segments.
+     * @param mb the RAM buffer size in MB
+     * @return this
+     */
+    public IndexWriterOptions ramBufferSizeMB(final double mb) {
+        ramBufferSizeMB = mb;
+        return this;
+    }
+
+    /**
+     * Get the merge policy.
+     * @return the merge policy
+     */
+    public MergePolicyType mergePolicy() {
+        return mergePolicy;
+    }
+
+    /**
+     * Set the policy merging flushed segments while the index is built.
+     * @param policy the merge policy
+     * @return this
+     */
+    public IndexWriterOptions mergePolicy(final MergePolicyType policy) {
+        mergePolicy = policy;
+        return this;
+    }
+
+    /**
+     * Is the index merged into a single segment once it is built?
+     * @return <code>true</code> if the index is force merged
+     */
+    public boolean forceMerge() {
+        return forceMerge;
+    }
+
+    /**
+     * Configure a final merge of the built index into a single segment.
+     * This lengthens the build, but every query then searches one segment.
+     * @param merge <code>true</code> to merge the index into a single segment
+     * @return this
+     */
+    public IndexWriterOptions forceMerge(final boolean merge) {
+        forceMerge = merge;
+        return this;
+    }
+
+    /**
+     * Are small segments written as compound files?
+     * @return <code>true</code> if compound files are used as Lucene would
+     */
+    public boolean compoundFiles() {
+        return compoundFiles;
+    }
+
+    /**
+     * Configure compound files. Lucene packs flushed segments, and merged
+     * segments that are small relative to the index, into a single compound
+     * file; without compound files, every segment keeps its separate files,
+     * which need more file handles but are read directly.
+     * @param use <code>true</code> to use compound files as Lucene would, <code>false</code> to never use them
+     * @return this
+     */
+    public IndexWriterOptions compoundFiles(final boolean use) {
+        compoundFiles = use;
+        return this;
+    }
+
+    /**
+     * Get the compression mode of stored fields.
+     * @return the stored fields compression mode
+     */
+    public Lucene50StoredFieldsFormat.Mode storedFieldsMode() {
+        return storedFieldsMode;
+    }
+
+    /**
+     * Set the compression mode of stored fields, including the gazetteer
+     * records loaded for every hit. BEST_SPEED decompresses faster;
+     * BEST_COMPRESSION writes a smaller index.
+     * @param mode the stored fields compression mode
+     * @return this
+     */
+    public IndexWriterOptions storedFieldsMode(final Lucene50StoredFieldsFormat.Mode mode) {
+        storedFieldsMode = mode;
+        return this;
+    }
+
+    /**
+     * Applies these options to an index writer configuration.
+     * @param config the index writer configuration
+     * @return the configuration
+     */
+    public IndexWriterConfig apply(final IndexWriterConfig config) {
+        MergePolicy policy;
+        switch (mergePolicy) {
+            case LOG_BYTE_SIZE:
+                policy = new LogByteSizeMergePolicy();
+                break;
+            case LOG_DOC:
+                policy = new LogDocMergePolicy();
+                break;
+            default:
+                policy = new TieredMergePolicy();
+                break;
+        }
+        if (!compoundFiles) {
+            policy.setNoCFSRatio(0.0);
+        }
+        return config.setRAMBufferSizeMB(ramBufferSizeMB)
+                .setMergePolicy(policy)
+                .setUseCompoundFile(compoundFiles)
+                .setCodec(new Lucene84Codec(storedFieldsMode));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ramBufferSizeMB=%s, mergePolicy=%s, forceMerge=%s, compoundFiles=%s, storedFieldsMode=%s",
+                ramBufferSizeMB, mergePolicy, forceMerge, compoundFiles, storedFieldsMode);
+    }
+}
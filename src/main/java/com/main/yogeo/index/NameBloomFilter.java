@@ -0,0 +1,246 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * NameBloomFilter.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.index;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bloom filter over the terms of the {@link IndexField#INDEX_NAME}
+ * field of a gazetteer index.
+ *
+ * Exact name queries are phrase queries over the analyzed name, so a
+ * query can only match if every one of its terms is in the index; a
+ * single term this filter has definitely never seen lets the gazetteer
+ * skip the query altogether. False positives merely cost the query.
+ *
+ * The filter is built from the term dictionary once the index has been
+ * written and is persisted next to it as {@value #FILE_NAME}, together
+ * with the index commit it was built for, so a filter left behind by an
+ * earlier commit is never used.
+ */
+public class NameBloomFilter {
+    /**
+     * The name of the filter file in the index directory.
+     */
+    public static final String FILE_NAME = "names.bloom";
+
+    /**
+     * The default false positive probability.
+     */
+    public static final double DEFAULT_FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    private static final Logger LOG = LoggerFactory.getLogger(NameBloomFilter.class);
+
+    private static final String CODEC_NAME = "ClavinNameBloomFilter";
+    private static final int VERSION_START = 0;
+    // filters record the index commit they were built for
+    private static final int VERSION_COMMIT = 1;
+    private static final int VERSION_CURRENT = VERSION_COMMIT;
+
+    /**
+     * Bit set of the filter.
+     */
+    private final long[] bits;
+
+    /**
+     * Number of bits, bits.length * 64.
+     */
+    private final long bitCount;
+
+    /**
+     * Number of hash functions.
+     */
+    private final int hashCount;
+
+    private NameBloomFilter(final long[] bits, final int hashCount) {
+        this.bits = bits;
+        this.bitCount = (long) bits.length * Long.SIZE;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * Creates an empty filter sized for the expected number of terms.
+     * @param expectedTerms             the expected number of distinct terms
+     * @param falsePositiveProbability  the target false positive probability
+     * @return an empty filter
+     */
+    public static NameBloomFilter create(final long expectedTerms, final double falsePositiveProbability) {
+        if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+            throw new IllegalArgumentException("falsePositiveProbability must be between 0 and 1");
+        }
+        long n = Math.max(1, expectedTerms);
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-n * Math.log(falsePositiveProbability) / (ln2 * ln2));
+        int words = (int) Math.max(1, (optimalBits + Long.SIZE - 1) / Long.SIZE);
+        int hashCount = (int) Math.max(1, Math.round((double) words * Long.SIZE / n * ln2));
+        return new NameBloomFilter(new long[words], hashCount);
+    }
+
+    /**
+     * Builds a filter over all INDEX_NAME terms of an index.
+     * @param reader                    reader of the gazetteer index
+     * @param falsePositiveProbability  the target false positive probability
+     * @return the filter
+     * @throws IOException if the term dictionary cannot be read
+     */
+    public static NameBloomFilter build(final IndexReader reader, final double falsePositiveProbability)
+            throws IOException {
+        Terms terms = MultiTerms.getTerms(reader, IndexField.INDEX_NAME.key());
+        if (terms == null) {
+            return create(1, falsePositiveProbability);
+        }
+        // size() is unknown (-1) for multi-segment term dictionaries, so count the terms first
+        long termCount = terms.size();
+        if (termCount < 0) {
+            termCount = 0;
+            TermsEnum counter = terms.iterator();
+            while (counter.next() != null) {
+                termCount++;
+            }
+        }
+        NameBloomFilter filter = create(termCount, falsePositiveProbability);
+        TermsEnum termsEnum = terms.iterator();
+        BytesRef term;
+        while ((term = termsEnum.next()) != null) {
+            filter.add(term);
+        }
+        return filter;
+    }
+
+    /**
+     * Adds a term to the filter.
+     * @param term the UTF-8 term
+     */
+    public void add(final BytesRef term) {
+        int h1 = StringHelper.murmurhash3_x86_32(term, 0);
+        int h2 = StringHelper.murmurhash3_x86_32(term, h1);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Checks whether a term may have been added to the filter.
+     * @param term the UTF-8 term
+     * @return <code>false</code> if the term was definitely never added
+     */
+    public boolean mightContain(final BytesRef term) {
+        int h1 = StringHelper.murmurhash3_x86_32(term, 0);
+        int h2 = StringHelper.murmurhash3_x86_32(term, h1);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the size of the filter's bit set.
+     * @return the size in bytes
+     */
+    public long sizeInBytes() {
+        return (long) bits.length * Long.BYTES;
+    }
+
+    /**
+     * Writes the filter to {@value #FILE_NAME} in the index directory,
+     * replacing any previous filter.
+     * @param directory the index directory
+     * @param reader    the reader whose terms the filter was built from
+     * @throws IOException if the filter cannot be written
+     */
+    public void write(final Directory directory, final DirectoryReader reader) throws IOException {
+        String tempName;
+        try (IndexOutput out = directory.createTempOutput("names", "bloom", IOContext.DEFAULT)) {
+            tempName = out.getName();
+            CodecUtil.writeHeader(out, CODEC_NAME, VERSION_CURRENT);
+            out.writeString(reader.getIndexCommit().getSegmentsFileName());
+            out.writeVInt(hashCount);
+            out.writeVInt(bits.length);
+            for (long word : bits) {
+                out.writeLong(word);
+            }
+            CodecUtil.writeFooter(out);
+        }
+        try {
+            directory.deleteFile(FILE_NAME);
+        } catch (NoSuchFileException | FileNotFoundException e) {
+            // nothing to replace
+        }
+        directory.rename(tempName, FILE_NAME);
+        directory.syncMetaData();
+    }
+
+    /**
+     * Reads the filter stored in an index directory.
+     * @param directory the index directory
+     * @param reader    the reader whose terms the filter must cover
+     * @return the filter, or <code>null</code> if the index has none or it was built for another commit
+     * @throws IOException if the filter is corrupt or cannot be read
+     */
+    public static NameBloomFilter read(final Directory directory, final DirectoryReader reader) throws IOException {
+        try (ChecksumIndexInput in = directory.openChecksumInput(FILE_NAME, IOContext.READONCE)) {
+            int version = CodecUtil.checkHeader(in, CODEC_NAME, VERSION_START, VERSION_CURRENT);
+            String commit = version >= VERSION_COMMIT ? in.readString() : null;
+            if (!reader.getIndexCommit().getSegmentsFileName().equals(commit)) {
+                LOG.warn("Ignoring name filter built for index commit [{}]", commit);
+                return null;
+            }
+            int hashCount = in.readVInt();
+            long[] bits = new long[in.readVInt()];
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = in.readLong();
+            }
+            CodecUtil.checkFooter(in);
+            return new NameBloomFilter(bits, hashCount);
+        } catch (NoSuchFileException | FileNotFoundException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * RecordFormat.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.index;
+
+/**
+ * The forms in which {@link IndexDirectoryBuilder} stores each GeoName
+ * in the index.
+ */
+public enum RecordFormat {
+    /**
+     * The GeoNames gazetteer record, parsed again on every hit.
+     */
+    TSV(true, false),
+
+    /**
+     * A compact binary record written by {@link GeoNameRecordCodec}.
+     */
+    BINARY(false, true),
+
+    /**
+     * Both forms, so that the index remains readable by gazetteers that
+     * do not support binary records.
+     */
+    BOTH(true, true);
+
+    private final boolean tsv;
+    private final boolean binary;
+
+    private RecordFormat(final boolean tsvIn, final boolean binaryIn) {
+        this.tsv = tsvIn;
+        this.binary = binaryIn;
+    }
+
+    /**
+     * @return <code>true</code> if the gazetteer record is stored
+     */
+    public boolean writesTsv() {
+        return tsv;
+    }
+
+    /**
+     * @return <code>true</code> if the binary record is stored
+     */
+    public boolean writesBinary() {
+        return binary;
+    }
+}
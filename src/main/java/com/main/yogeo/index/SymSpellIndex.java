@@ -0,0 +1,408 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * SymSpellIndex.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.index;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RandomAccessInput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.novetta.clavin.util.DamerauLevenshtein;
+
+/**
+ * Symmetric delete index over the terms of the {@link IndexField#INDEX_NAME}
+ * field of a gazetteer index.
+ *
+ * Every name term is stored under each string obtained by deleting up to
+ * the maximum edit distance of characters from its prefix. Deleting
+ * characters from a misspelled term the same way then finds, with a few
+ * hash lookups, every term within that edit distance of it, without
+ * walking the term dictionary; candidates are verified with their
+ * Damerau-Levenshtein distance.
+ *
+ * The index is built from the term dictionary once the index has been
+ * written and is persisted next to it as {@value #FILE_NAME}: the index
+ * commit it was built for, so an index left behind by an earlier commit
+ * is never used, then the terms, followed by a hash table of the deletes, bucketed by the leading bits
+ * of their hashes. It is read in place, memory-mapped if the index
+ * directory is, so it costs no heap beyond the directory itself.
+ */
+public class SymSpellIndex implements Closeable {
+    /**
+     * The name of the symmetric delete index file in the index directory.
+     */
+    public static final String FILE_NAME = "names.symspell";
+
+    /**
+     * The default maximum edit distance of indexed deletes.
+     */
+    public static final int DEFAULT_MAX_EDITS = 2;
+
+    /**
+     * The default number of leading characters of each term whose deletes
+     * are indexed.
+     */
+    public static final int DEFAULT_PREFIX_LENGTH = 7;
+
+    private static final Logger LOG = LoggerFactory.getLogger(SymSpellIndex.class);
+
+    private static final String CODEC_NAME = "ClavinSymSpellIndex";
+    private static final int VERSION_START = 0;
+    // indexes record the index commit they were built for
+    private static final int VERSION_COMMIT = 1;
+    private static final int VERSION_CURRENT = VERSION_COMMIT;
+    private static final int MAX_BUCKET_BITS = 28;
+
+    // each lookup reads from its own slice of this input
+    private final IndexInput input;
+    private final int maxEdits;
+    private final int prefixLength;
+    private final int termCount;
+    private final int bucketBits;
+
+    // term addresses, term bytes, bucket addresses and entries, in that order
+    private final long dataStart;
+    private final long dataLength;
+    private final long termBytesStart;
+    private final long bucketsStart;
+    private final long entriesStart;
+
+    private SymSpellIndex(final IndexInput input, final int maxEdits, final int prefixLength, final int termCount,
+            final int bucketBits, final long dataStart, final long dataLength) throws IOException {
+        this.input = input;
+        this.maxEdits = maxEdits;
+        this.prefixLength = prefixLength;
+        this.termCount = termCount;
+        this.bucketBits = bucketBits;
+        this.dataStart = dataStart;
+        this.dataLength = dataLength;
+        this.termBytesStart = (long) (termCount + 1) * Long.BYTES;
+        this.bucketsStart = termBytesStart + slice().readLong((long) termCount * Long.BYTES);
+        this.entriesStart = bucketsStart + ((1L << bucketBits) + 1) * Long.BYTES;
+    }
+
+    /**
+     * Builds the symmetric delete index over all INDEX_NAME terms of an
+     * index and writes it to {@value #FILE_NAME} in the index directory,
+     * replacing any previous index. The deletes are sorted in memory, at
+     * eight bytes for each distinct delete of each term.
+     * @param reader        reader of the gazetteer index
+     * @param directory     the index directory
+     * @param maxEdits      the maximum edit distance of indexed deletes
+     * @param prefixLength  the number of leading characters of each term whose deletes are indexed
+     * @return the number of indexed deletes
+     * @throws IOException if the term dictionary cannot be read or the index written
+     */
+    public static long write(final DirectoryReader reader, final Directory directory, final int maxEdits,
+            final int prefixLength) throws IOException {
+        if (maxEdits < 1) {
+            throw new IllegalArgumentException("maxEdits must be greater than zero");
+        }
+        if (prefixLength <= maxEdits) {
+            throw new IllegalArgumentException("prefixLength must be greater than maxEdits");
+        }
+        ByteBuffersDataOutput termBytes = new ByteBuffersDataOutput();
+        long[] termAddresses = new long[16];
+        // each entry packs the unsigned-ordered hash of a delete above the ID of its term
+        long[] entries = new long[64];
+        int termCount = 0;
+        long entryCount = 0;
+
+        Terms terms = MultiTerms.getTerms(reader, IndexField.INDEX_NAME.key());
+        TermsEnum termsEnum = terms != null ? terms.iterator() : TermsEnum.EMPTY;
+        BytesRef term;
+        while ((term = termsEnum.next()) != null) {
+            termAddresses = ArrayUtil.grow(termAddresses, termCount + 2);
+            termAddresses[termCount] = termBytes.size();
+            termBytes.writeBytes(term.bytes, term.offset, term.length);
+            for (String delete : deletes(prefix(term.utf8ToString(), prefixLength), maxEdits)) {
+                if (entryCount == ArrayUtil.MAX_ARRAY_LENGTH) {
+                    throw new IllegalStateException("Too many deletes for a symmetric delete index");
+                }
+                entries = ArrayUtil.grow(entries, (int) entryCount + 1);
+                entries[(int) entryCount++] = entry(hash(delete), termCount);
+            }
+            termCount++;
+        }
+        termAddresses[termCount] = termBytes.size();
+
+        Arrays.sort(entries, 0, (int) entryCount);
+        // about four entries to a bucket
+        int bucketBits = Math.max(1, Math.min(MAX_BUCKET_BITS, Long.SIZE - Long.numberOfLeadingZeros(entryCount / 4)));
+        long[] bucketAddresses = new long[(1 << bucketBits) + 1];
+        int bucket = 0;
+        for (int i = 0; i < entryCount; i++) {
+            int entryBucket = bucket((int) (entries[i] >>> Integer.SIZE) ^ Integer.MIN_VALUE, bucketBits);
+            while (bucket <= entryBucket) {
+                bucketAddresses[bucket++] = i;
+            }
+        }
+        while (bucket < bucketAddresses.length) {
+            bucketAddresses[bucket++] = entryCount;
+        }
+
+        String tempName;
+        try (IndexOutput out = directory.createTempOutput("names", "symspell", IOContext.DEFAULT)) {
+            tempName = out.getName();
+            CodecUtil.writeHeader(out, CODEC_NAME, VERSION_CURRENT);
+            out.writeString(reader.getIndexCommit().getSegmentsFileName());
+            out.writeVInt(maxEdits);
+            out.writeVInt(prefixLength);
+            out.writeVInt(termCount);
+            out.writeVInt(bucketBits);
+            out.writeLong(out.getFilePointer() + Long.BYTES);
+            for (int i = 0; i <= termCount; i++) {
+                out.writeLong(termAddresses[i]);
+            }
+            termBytes.copyTo(out);
+            for (long address : bucketAddresses) {
+                out.writeLong(address);
+            }
+            for (int i = 0; i < entryCount; i++) {
+                out.writeLong(entries[i]);
+            }
+            CodecUtil.writeFooter(out);
+        }
+        try {
+            directory.deleteFile(FILE_NAME);
+        } catch (NoSuchFileException | FileNotFoundException e) {
+            // nothing to replace
+        }
+        directory.rename(tempName, FILE_NAME);
+        directory.syncMetaData();
+        return entryCount;
+    }
+
+    /**
+     * Opens the symmetric delete index stored in an index directory. The
+     * index stays open, reading from the directory, until it is closed.
+     * @param directory the index directory
+     * @param reader    the reader whose terms the index must cover
+     * @return the index, or <code>null</code> if the index directory has none or it was built for another commit
+     * @throws IOException if the index is corrupt or cannot be read
+     */
+    public static SymSpellIndex open(final Directory directory, final DirectoryReader reader) throws IOException {
+        IndexInput in;
+        try {
+            in = directory.openInput(FILE_NAME, IOContext.READ);
+        } catch (NoSuchFileException | FileNotFoundException e) {
+            return null;
+        }
+        try {
+            int version = CodecUtil.checkHeader(in, CODEC_NAME, VERSION_START, VERSION_CURRENT);
+            String commit = version >= VERSION_COMMIT ? in.readString() : null;
+            if (!reader.getIndexCommit().getSegmentsFileName().equals(commit)) {
+                LOG.warn("Ignoring symmetric delete index built for index commit [{}]", commit);
+                in.close();
+                return null;
+            }
+            int maxEdits = in.readVInt();
+            int prefixLength = in.readVInt();
+            int termCount = in.readVInt();
+            int bucketBits = in.readVInt();
+            long dataStart = in.readLong();
+            CodecUtil.retrieveChecksum(in);
+            long dataLength = in.length() - CodecUtil.footerLength() - dataStart;
+            return new SymSpellIndex(in, maxEdits, prefixLength, termCount, bucketBits, dataStart, dataLength);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get the maximum edit distance of the indexed deletes.
+     * @return the maximum edit distance
+     */
+    public int maxEdits() {
+        return maxEdits;
+    }
+
+    /**
+     * Get the number of leading characters of each term whose deletes are indexed.
+     * @return the prefix length
+     */
+    public int prefixLength() {
+        return prefixLength;
+    }
+
+    /**
+     * Get the number of indexed terms.
+     * @return the number of terms
+     */
+    public int termCount() {
+        return termCount;
+    }
+
+    /**
+     * Finds the indexed terms within an edit distance of a term.
+     * @param text      the normalized term
+     * @param edits     the maximum edit distance, at most {@link #maxEdits()}
+     * @param maxTerms  the maximum number of terms returned
+     * @return the Damerau-Levenshtein distance of each matching term, closest first
+     * @throws IOException if the index cannot be read
+     */
+    public Map<String, Integer> lookup(final String text, final int edits, final int maxTerms) throws IOException {
+        RandomAccessInput data = slice();
+        int maxDistance = Math.min(edits, maxEdits);
+        int length = text.codePointCount(0, text.length());
+        Set<Integer> candidates = new HashSet<>();
+        for (String delete : deletes(prefix(text, prefixLength), maxDistance)) {
+            int hash = hash(delete);
+            int bucket = bucket(hash, bucketBits);
+            long end = data.readLong(bucketsStart + (long) (bucket + 1) * Long.BYTES);
+            for (long i = data.readLong(bucketsStart + (long) bucket * Long.BYTES); i < end; i++) {
+                long entry = data.readLong(entriesStart + i * Long.BYTES);
+                if (entry(hash, 0) == (entry & 0xFFFFFFFF00000000L)) {
+                    candidates.add((int) entry);
+                }
+            }
+        }
+
+        List<List<String>> byDistance = new ArrayList<>();
+        for (int i = 0; i <= maxDistance; i++) {
+            byDistance.add(new ArrayList<>());
+        }
+        for (int termId : candidates) {
+            String candidate = term(data, termId);
+            // deletes of the prefixes alone do not bound the distance of the whole terms
+            if (Math.abs(candidate.codePointCount(0, candidate.length()) - length) > maxDistance) {
+                continue;
+            }
+            int distance = DamerauLevenshtein.damerauLevenshteinDistance(text, candidate);
+            if (distance <= maxDistance) {
+                byDistance.get(distance).add(candidate);
+            }
+        }
+        Map<String, Integer> matches = new LinkedHashMap<>();
+        for (int distance = 0; distance <= maxDistance && matches.size() < maxTerms; distance++) {
+            List<String> terms = byDistance.get(distance);
+            terms.sort(null);
+            for (int i = 0; i < terms.size() && matches.size() < maxTerms; i++) {
+                matches.put(terms.get(i), distance);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Get the size of the index file.
+     * @return the size in bytes
+     */
+    public long sizeInBytes() {
+        return input.length();
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    private RandomAccessInput slice() throws IOException {
+        return input.randomAccessSlice(dataStart, dataLength);
+    }
+
+    private String term(final RandomAccessInput data, final int termId) throws IOException {
+        long start = data.readLong((long) termId * Long.BYTES);
+        int length = (int) (data.readLong((long) (termId + 1) * Long.BYTES) - start);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = data.readByte(termBytesStart + start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String prefix(final String text, final int prefixLength) {
+        int codePoints = text.codePointCount(0, text.length());
+        return codePoints > prefixLength ? text.substring(0, text.offsetByCodePoints(0, prefixLength)) : text;
+    }
+
+    /**
+     * Generates the strings obtained by deleting up to a number of
+     * characters from a string, including the string itself.
+     */
+    private static Set<String> deletes(final String text, final int edits) {
+        Set<String> deletes = new HashSet<>();
+        deletes.add(text);
+        List<String> level = Arrays.asList(text);
+        for (int edit = 0; edit < edits; edit++) {
+            List<String> next = new ArrayList<>();
+            for (String word : level) {
+                for (int i = 0; i < word.length(); i = word.offsetByCodePoints(i, 1)) {
+                    String delete = word.substring(0, i) + word.substring(word.offsetByCodePoints(i, 1));
+                    if (deletes.add(delete)) {
+                        next.add(delete);
+                    }
+                }
+            }
+            level = next;
+        }
+        return deletes;
+    }
+
+    private static int hash(final String delete) {
+        return StringHelper.murmurhash3_x86_32(new BytesRef(delete), 0);
+    }
+
+    /**
+     * Packs a hash and a term ID so that entries sort by unsigned hash.
+     */
+    private static long entry(final int hash, final int termId) {
+        return ((long) (hash ^ Integer.MIN_VALUE) << Integer.SIZE) | (termId & 0xFFFFFFFFL);
+    }
+
+    private static int bucket(final int hash, final int bucketBits) {
+        return hash >>> (Integer.SIZE - bucketBits);
+    }
+}
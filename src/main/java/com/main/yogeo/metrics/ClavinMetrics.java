@@ -0,0 +1,132 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * ClavinMetrics.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.metrics;
+
+/**
+ * Receives per-stage measurements from the geoparsing pipeline.
+ *
+ * Implementations must be safe for concurrent use, since a single
+ * instance is shared by every document geoparsed with the same
+ * {@link com.novetta.clavin.GeoParser}. Recording should be cheap; it
+ * happens on the hot path of every query.
+ */
+public interface ClavinMetrics {
+    /**
+     * Pipeline stages whose latency is recorded, in nanoseconds.
+     */
+    enum Timer {
+        /** Location name extraction from a document or window. */
+        EXTRACTION,
+        /** Demonym filtering of a single extracted location name. */
+        DEMONYM_FILTER,
+        /** A batch {@link com.novetta.clavin.gazetteer.query.Gazetteer#getClosestLocations} call for the names of one window. */
+        GAZETTEER_QUERY,
+        /** Execution of an exact match query against the gazetteer index. */
+        EXACT_QUERY,
+        /** Execution of a fuzzy query against the gazetteer index. */
+        FUZZY_QUERY,
+        /** Resolution of the ancestry of one or more GeoNames. */
+        ANCESTRY,
+        /** Heuristic selection of the best candidates for a context window. */
+        PICK_BEST,
+        /** Opening and warming a new index for a reloadable gazetteer. */
+        INDEX_RELOAD,
+        /** Replaying logged queries to warm a newly opened index. */
+        WARMUP
+    }
+
+    /**
+     * Events that are counted.
+     */
+    enum Counter {
+        /** Gazetteer queries issued by the resolver. */
+        QUERIES,
+        /** Gazetteer queries that fell back to fuzzy matching. */
+        FUZZY_FALLBACKS,
+        /** Exact queries skipped because the name filter showed they cannot match. */
+        EXACT_QUERIES_SKIPPED,
+        /** Gazetteer queries answered by the negative cache of names without matches. */
+        NEGATIVE_CACHE_HITS,
+        /** GeoName and parent lookups by ID answered by the GeoName cache. */
+        GEONAME_CACHE_HITS,
+        /** Gazetteer indexes swapped in by a reloadable gazetteer. */
+        INDEX_RELOADS,
+        /** Exact queries answered from the exact name store without searching the index. */
+        EXACT_STORE_HITS,
+        /** Logged queries replayed to warm a newly opened index. */
+        WARMUP_QUERIES
+    }
+
+    /**
+     * Values whose distribution is recorded.
+     */
+    enum Distribution {
+        /** Candidate matches considered while resolving a document. */
+        CANDIDATES_PER_DOCUMENT,
+        /** Index terms a fuzzy name term expanded to. */
+        FUZZY_EXPANSIONS
+    }
+
+    /**
+     * Metrics implementation that discards all measurements.
+     */
+    ClavinMetrics NOOP = new ClavinMetrics() {
+        @Override
+        public void recordTime(final Timer timer, final long nanos) {
+        }
+
+        @Override
+        public void increment(final Counter counter) {
+        }
+
+        @Override
+        public void recordValue(final Distribution distribution, final long value) {
+        }
+    };
+
+    /**
+     * Records the latency of a pipeline stage.
+     * @param timer the stage
+     * @param nanos elapsed time in nanoseconds, as measured with {@link System#nanoTime()}
+     */
+    void recordTime(Timer timer, long nanos);
+
+    /**
+     * Increments a counter by one.
+     * @param counter the counter
+     */
+    void increment(Counter counter);
+
+    /**
+     * Records a per-document value.
+     * @param distribution the distribution
+     * @param value        the value
+     */
+    void recordValue(Distribution distribution, long value);
+}
@@ -0,0 +1,127 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * InMemoryMetrics.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link ClavinMetrics} implementation that keeps all measurements in
+ * memory, so latency percentiles and counts can be read directly or
+ * exported to a monitoring system.
+ */
+public class InMemoryMetrics implements ClavinMetrics {
+    private final Map<Timer, Histogram> timers = new EnumMap<>(Timer.class);
+    private final Map<Counter, LongAdder> counters = new EnumMap<>(Counter.class);
+    private final Map<Distribution, Histogram> distributions = new EnumMap<>(Distribution.class);
+
+    /**
+     * Create a new InMemoryMetrics with all measurements empty.
+     */
+    public InMemoryMetrics() {
+        // the maps are fully populated up front and never modified afterwards,
+        // so concurrent readers and writers only touch the thread-safe values
+        for (Timer timer : Timer.values()) {
+            timers.put(timer, new Histogram());
+        }
+        for (Counter counter : Counter.values()) {
+            counters.put(counter, new LongAdder());
+        }
+        for (Distribution distribution : Distribution.values()) {
+            distributions.put(distribution, new Histogram());
+        }
+    }
+
+    @Override
+    public void recordTime(final Timer timer, final long nanos) {
+        timers.get(timer).record(nanos);
+    }
+
+    @Override
+    public void increment(final Counter counter) {
+        counters.get(counter).increment();
+    }
+
+    @Override
+    public void recordValue(final Distribution distribution, final long value) {
+        distributions.get(distribution).record(value);
+    }
+
+    /**
+     * Get the latency histogram of a pipeline stage, in nanoseconds.
+     * @param timer the stage
+     * @return the latency histogram
+     */
+    public Histogram getTimer(final Timer timer) {
+        return timers.get(timer);
+    }
+
+    /**
+     * Get the current value of a counter.
+     * @param counter the counter
+     * @return the number of counted events
+     */
+    public long getCount(final Counter counter) {
+        return counters.get(counter).sum();
+    }
+
+    /**
+     * Get the histogram of a per-document value.
+     * @param distribution the distribution
+     * @return the value histogram
+     */
+    public Histogram getDistribution(final Distribution distribution) {
+        return distributions.get(distribution);
+    }
+
+    /**
+     * Discards all measurements.
+     */
+    public void reset() {
+        timers.values().forEach(Histogram::reset);
+        counters.values().forEach(LongAdder::reset);
+        distributions.values().forEach(Histogram::reset);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<Timer, Histogram> entry : timers.entrySet()) {
+            report.append(entry.getKey()).append(" [ns]: ").append(entry.getValue()).append('\n');
+        }
+        for (Map.Entry<Counter, LongAdder> entry : counters.entrySet()) {
+            report.append(entry.getKey()).append(": ").append(entry.getValue().sum()).append('\n');
+        }
+        for (Map.Entry<Distribution, Histogram> entry : distributions.entrySet()) {
+            report.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+        return report.toString();
+    }
+}
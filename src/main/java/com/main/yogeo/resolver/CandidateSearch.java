@@ -0,0 +1,238 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * CandidateSearch.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.resolver;
+
+import com.novetta.clavin.gazetteer.CountryCode;
+import com.novetta.clavin.gazetteer.GeoName;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Branch-and-bound implementation of the candidate selection heuristic
+ * of {@link ClavinLocationResolver#pickBestCandidates}.
+ *
+ * For a given candidate depth, the score of a combination only depends
+ * on its number of distinct countries and admin1 codes, so the best
+ * combination is the one minimizing that cost. The combinations are
+ * searched depth-first in the order in which the exhaustive algorithm
+ * enumerates them, keeping the first combination with the lowest cost,
+ * so both algorithms select the same matches. Partial combinations are
+ * abandoned as soon as their cost, plus a lower bound on what the
+ * remaining location names must add, reaches the best complete cost;
+ * nothing is allocated per combination.
+ *
+ * Instances are not thread-safe; use one per context window.
+ */
+final class CandidateSearch {
+    /**
+     * Candidate matches for each location name.
+     */
+    private final List<List<ResolvedLocation>> allCandidates;
+
+    /**
+     * Number of location names.
+     */
+    private final int locationCount;
+
+    /**
+     * Interned country of each candidate match.
+     */
+    private final int[][] countryIds;
+
+    /**
+     * Interned country and admin1 code of each candidate match.
+     */
+    private final int[][] stateIds;
+
+    /**
+     * Number of matches of each country in the current partial combination.
+     */
+    private final int[] countryCounts;
+
+    /**
+     * Number of matches of each admin1 code in the current partial combination.
+     */
+    private final int[] stateCounts;
+
+    /**
+     * Countries and admin1 codes claimed while computing the current lower bound.
+     */
+    private final int[] countryMarks;
+    private final int[] stateMarks;
+    private int generation;
+
+    /**
+     * Candidate chosen for each location name in the current partial combination.
+     */
+    private final int[] choice;
+
+    /**
+     * Candidate chosen for each location name in the best complete combination.
+     */
+    private final int[] bestChoice;
+
+    /**
+     * Maximum number of candidates considered for each location name.
+     */
+    private int candidateDepth;
+
+    /**
+     * Cost of the best complete combination found at the current candidate depth.
+     */
+    private int bestCost;
+
+    /**
+     * Create a new CandidateSearch.
+     * @param allCandidates list of lists of candidate matches for locations names
+     */
+    CandidateSearch(final List<List<ResolvedLocation>> allCandidates) {
+        this.allCandidates = allCandidates;
+        this.locationCount = allCandidates.size();
+        this.countryIds = new int[locationCount][];
+        this.stateIds = new int[locationCount][];
+        Map<CountryCode, Integer> countries = new HashMap<>();
+        Map<String, Integer> states = new HashMap<>();
+        for (int i = 0; i < locationCount; i++) {
+            List<ResolvedLocation> candidates = allCandidates.get(i);
+            countryIds[i] = new int[candidates.size()];
+            stateIds[i] = new int[candidates.size()];
+            for (int j = 0; j < candidates.size(); j++) {
+                GeoName geoname = candidates.get(j).getGeoname();
+                countryIds[i][j] = countries.computeIfAbsent(geoname.getPrimaryCountryCode(), k -> countries.size());
+                stateIds[i][j] = states.computeIfAbsent(geoname.getPrimaryCountryCode() + geoname.getAdmin1Code(),
+                        k -> states.size());
+            }
+        }
+        this.countryCounts = new int[countries.size()];
+        this.stateCounts = new int[states.size()];
+        this.countryMarks = new int[countries.size()];
+        this.stateMarks = new int[states.size()];
+        this.choice = new int[locationCount];
+        this.bestChoice = new int[locationCount];
+    }
+
+    /**
+     * Selects the best match for each location name, searching deeper into
+     * the candidate lists as long as the scores are improving.
+     * @return list of best matches for each location name
+     */
+    List<ResolvedLocation> pickBestCandidates() {
+        List<ResolvedLocation> bestCandidates = new ArrayList<>();
+        float newMaxScore = 0;
+        float oldMaxScore;
+        // same "magic number" starting depth as the exhaustive algorithm
+        candidateDepth = 3;
+        do {
+            oldMaxScore = newMaxScore;
+            bestCost = Integer.MAX_VALUE;
+            search(0, 0);
+            if (bestCost != Integer.MAX_VALUE) {
+                float score = ((float)locationCount / bestCost) / candidateDepth;
+                if (score > newMaxScore) {
+                    newMaxScore = score;
+                    bestCandidates = new ArrayList<>(locationCount);
+                    for (int i = 0; i < locationCount; i++) {
+                        bestCandidates.add(allCandidates.get(i).get(bestChoice[i]));
+                    }
+                }
+            }
+            candidateDepth++;
+        } while (newMaxScore > oldMaxScore);
+        return bestCandidates;
+    }
+
+    /**
+     * Extends the current partial combination with each candidate of the
+     * next location name in turn, recording complete combinations that
+     * cost less than the best found so far.
+     * @param index the location name to choose a candidate for
+     * @param cost  the number of distinct countries and admin1 codes in the partial combination
+     */
+    private void search(final int index, final int cost) {
+        if (index == locationCount) {
+            bestCost = cost;
+            System.arraycopy(choice, 0, bestChoice, 0, locationCount);
+            return;
+        }
+        int options = Math.min(countryIds[index].length, candidateDepth);
+        for (int j = 0; j < options; j++) {
+            int country = countryIds[index][j];
+            int state = stateIds[index][j];
+            int newCost = cost + (countryCounts[country] == 0 ? 1 : 0) + (stateCounts[state] == 0 ? 1 : 0);
+            countryCounts[country]++;
+            stateCounts[state]++;
+            // costs never decrease as location names are added, and a later
+            // combination must cost strictly less to replace the best one
+            if (newCost + remainingCostBound(index + 1) < bestCost) {
+                choice[index] = j;
+                search(index + 1, newCost);
+            }
+            countryCounts[country]--;
+            stateCounts[state]--;
+        }
+    }
+
+    /**
+     * Computes a lower bound on the cost the remaining location names will
+     * add to the current partial combination. A location name none of whose
+     * candidates shares a country with the partial combination must add a
+     * country; location names whose candidate countries are moreover
+     * disjoint must each add a different one. Admin1 codes are bounded
+     * the same way.
+     * @param index the first remaining location name
+     * @return the lower bound
+     */
+    private int remainingCostBound(final int index) {
+        int bound = 0;
+        // marks the countries and admin1 codes already claimed by a counted location name
+        generation++;
+        for (int i = index; i < locationCount; i++) {
+            int options = Math.min(countryIds[i].length, candidateDepth);
+            boolean newCountry = true;
+            boolean newState = true;
+            for (int j = 0; j < options && (newCountry || newState); j++) {
+                newCountry &= countryCounts[countryIds[i][j]] == 0 && countryMarks[countryIds[i][j]] != generation;
+                newState &= stateCounts[stateIds[i][j]] == 0 && stateMarks[stateIds[i][j]] != generation;
+            }
+            for (int j = 0; j < options; j++) {
+                if (newCountry) {
+                    countryMarks[countryIds[i][j]] = generation;
+                }
+                if (newState) {
+                    stateMarks[stateIds[i][j]] = generation;
+                }
+            }
+            bound += (newCountry ? 1 : 0) + (newState ? 1 : 0);
+        }
+        return bound;
+    }
+}
@@ -0,0 +1,53 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * CandidateSelection.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.resolver;
+
+/**
+ * The algorithms {@link ClavinLocationResolver} can use to select the
+ * best match for each location name in a context window.
+ *
+ * Both maximize the same score: the number of location names divided
+ * by the number of distinct countries and admin1 codes among the
+ * selected matches, and by how deep into the candidate lists the
+ * search went. They select identical matches and differ only in cost.
+ */
+public enum CandidateSelection {
+    /**
+     * Materializes and scores every combination of candidate matches;
+     * the original CLAVIN algorithm, exponential in the window size.
+     */
+    EXHAUSTIVE,
+
+    /**
+     * Depth-first branch-and-bound search over the combinations of
+     * candidate matches that abandons partial combinations once they
+     * cannot score better than the best complete combination found.
+     */
+    BRANCH_AND_BOUND
+}
@@ -35,7 +35,7 @@ import com.novetta.clavin.gazetteer.query.AncestryMode;
 import com.novetta.clavin.gazetteer.query.FuzzyMode;
 import com.novetta.clavin.gazetteer.query.Gazetteer;
 import com.novetta.clavin.gazetteer.query.QueryBuilder;
-import com.novetta.clavin.util.ListUtils;
+import com.novetta.clavin.metrics.ClavinMetrics;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -46,6 +46,7 @@ import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Resolves location names into GeoName objects.
@@ -71,22 +72,63 @@ public class ClavinLocationResolver {
      */
     public static final AncestryMode DEFAULT_ANCESTRY_MODE = AncestryMode.LAZY;
 
+    /**
+     * The default candidate selection algorithm.
+     */
+    public static final CandidateSelection DEFAULT_CANDIDATE_SELECTION = CandidateSelection.BRANCH_AND_BOUND;
+
     /**
      * The Gazetteer.
      */
     private final Gazetteer gazetteer;
 
     /**
-     * Set of demonyms to filter out from extracted location names.
+     * Receives resolution measurements.
+     */
+    private final ClavinMetrics metrics;
+
+    /**
+     * The algorithm selecting the best candidate matches.
+     */
+    private final CandidateSelection candidateSelection;
+
+    /**
+     * Set of demonyms to filter out from extracted location names;
+     * volatile so the lazily loaded set is safely published to
+     * concurrent resolvers.
      */
-    private static HashSet<String> DEMONYMS;
+    private static volatile HashSet<String> DEMONYMS;
 
     /**
      * Create a new ClavinLocationResolver.
      * @param gazetteer the Gazetteer to query
      */
     public ClavinLocationResolver(final Gazetteer gazetteer) {
+        this(gazetteer, ClavinMetrics.NOOP);
+    }
+
+    /**
+     * Create a new ClavinLocationResolver that reports demonym filtering,
+     * gazetteer query and candidate selection measurements.
+     * @param gazetteer the Gazetteer to query
+     * @param metrics   receives resolution measurements
+     */
+    public ClavinLocationResolver(final Gazetteer gazetteer, final ClavinMetrics metrics) {
+        this(gazetteer, metrics, DEFAULT_CANDIDATE_SELECTION);
+    }
+
+    /**
+     * Create a new ClavinLocationResolver that selects the best candidate
+     * matches with the provided algorithm.
+     * @param gazetteer          the Gazetteer to query
+     * @param metrics            receives resolution measurements
+     * @param candidateSelection the candidate selection algorithm
+     */
+    public ClavinLocationResolver(final Gazetteer gazetteer, final ClavinMetrics metrics,
+            final CandidateSelection candidateSelection) {
         this.gazetteer = gazetteer;
+        this.metrics = metrics;
+        this.candidateSelection = candidateSelection;
     }
 
     /**
@@ -97,6 +139,22 @@ public class ClavinLocationResolver {
         return gazetteer;
     }
 
+    /**
+     * Get the metrics receiving this resolver's measurements.
+     * @return the configured metrics
+     */
+    public ClavinMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the algorithm selecting the best candidate matches.
+     * @return the configured candidate selection algorithm
+     */
+    public CandidateSelection getCandidateSelection() {
+        return candidateSelection;
+    }
+
     /**
      * Resolves the supplied list of location names into
      * {@link ResolvedLocation}s containing {@link com.novetta.clavin.gazetteer.GeoName} objects
@@ -162,22 +220,32 @@ public class ClavinLocationResolver {
             return Collections.emptyList();
         }
 
-        /* Various named entity recognizers tend to mistakenly extract demonyms
-         * (i.e., names for residents of localities (e.g., American, British))
-         * as place names, which tends to gum up the works, so we make sure to
-         * filter them out from the list of {@link LocationOccurrence}s passed
-         * to the resolver.
-         */
-        List<LocationOccurrence> filteredLocations = new ArrayList<>();
-        for (LocationOccurrence location : locations)
-            if (!isDemonym(location))
-                filteredLocations.add(location);
-
-        // did we filter *everything* out?
-        if (filteredLocations.isEmpty()) {
-            return Collections.emptyList();
-        }
+        List<ResolvedLocation> resolvedLocations = new ArrayList<>();
+        StreamingLocationResolver streamingResolver =
+                streamingResolver(maxHitDepth, maxContextWindow, fuzzy, ancestryMode, resolvedLocations::add);
+        streamingResolver.resolve(locations);
+        streamingResolver.flush();
+        return resolvedLocations;
+    }
 
+    /**
+     * Creates a {@link StreamingLocationResolver} that resolves location
+     * names as they are extracted from successive windows of a single
+     * document, pushing each {@link ResolvedLocation} to the consumer as
+     * soon as its context window has been decided.
+     *
+     * Demonyms are filtered out and candidates selected exactly as in
+     * {@link #resolveLocations(List, int, int, boolean, AncestryMode)}.
+     *
+     * @param maxHitDepth        number of candidate matches to consider
+     * @param maxContextWindow   how much context to consider when resolving
+     * @param fuzzy              switch for turning on/off fuzzy matching
+     * @param ancestryMode       the ancestry loading mode
+     * @param consumer           receives each resolved location in document order
+     * @return                   a resolver for a single document
+     */
+    public StreamingLocationResolver streamingResolver(final int maxHitDepth, final int maxContextWindow,
+            final boolean fuzzy, final AncestryMode ancestryMode, final Consumer<ResolvedLocation> consumer) {
         QueryBuilder builder = new QueryBuilder()
                 .maxResults(maxHitDepth)
                 // translate CLAVIN 1.x 'fuzzy' parameter into NO_EXACT or OFF; it isn't
@@ -185,56 +253,7 @@ public class ClavinLocationResolver {
                 .fuzzyMode(fuzzy ? FuzzyMode.NO_EXACT : FuzzyMode.OFF)
                 .ancestryMode(ancestryMode)
                 .includeHistorical(true);
-
-        if (maxHitDepth > 1) { // perform context-based heuristic matching
-            // stores all possible matches for each location name
-            List<List<ResolvedLocation>> allCandidates = new ArrayList<>();
-
-            // loop through all the location names
-            for (LocationOccurrence location : filteredLocations) {
-                // get all possible matches
-                List<ResolvedLocation> candidates = gazetteer.getClosestLocations(builder.location(location).build());
-
-                // if we found some possible matches, save them
-                if (!candidates.isEmpty()) {
-                    allCandidates.add(candidates);
-                }
-            }
-
-            // initialize return object
-            List<ResolvedLocation> bestCandidates = new ArrayList<>();
-
-            // split-up allCandidates into reasonably-sized chunks to
-            // limit computational load when heuristically selecting
-            // the best matches
-            for (List<List<ResolvedLocation>> theseCandidates : ListUtils.chunkifyList(allCandidates, maxContextWindow)) {
-                // select the best match for each location name based
-                // based on heuristics
-                bestCandidates.addAll(pickBestCandidates(theseCandidates));
-            }
-
-            return bestCandidates;
-        } else { // use no heuristics, simply choose matching location with greatest population
-            // initialize return object
-            List<ResolvedLocation> resolvedLocations = new ArrayList<>();
-
-            // stores possible matches for each location name
-            List<ResolvedLocation> candidateLocations;
-
-            // loop through all the location names
-            for (LocationOccurrence location : filteredLocations) {
-                // choose the top-sorted candidate for each individual
-                // location name
-                candidateLocations = gazetteer.getClosestLocations(builder.location(location).build());
-
-                // if a match was found, add it to the return list
-                if (!candidateLocations.isEmpty()) {
-                    resolvedLocations.add(candidateLocations.get(0));
-                }
-            }
-
-            return resolvedLocations;
-        }
+        return new StreamingLocationResolver(this, builder, maxHitDepth, maxContextWindow, consumer);
     }
 
     /**
@@ -242,8 +261,9 @@ public class ClavinLocationResolver {
      * extracted from a document, choosing from among a list of lists
      * of candidate matches.
      *
-     * Although not guaranteeing an optimal solution (enumerating &
-     * evaluating each possible combination is too costly), it does a
+     * Although not guaranteeing an optimal solution (candidates are
+     * only considered down to the depth at which scores stop
+     * improving), it does a
      * decent job of cracking the "Springfield Problem" by selecting
      * candidates that would make sense to appear together based on
      * common country and admin1 codes (i.e., states or provinces).
@@ -256,10 +276,28 @@ public class ClavinLocationResolver {
      * TODO: consider lat/lon distance in addition to shared
      *       CountryCodes and Admin1Codes.
      *
+     * The combinations of candidates are either enumerated exhaustively
+     * or searched by branch-and-bound, according to the configured
+     * {@link CandidateSelection}; both select the same matches.
+     *
+     * @param allCandidates list of lists of candidate matches for locations names
+     * @return              list of best matches for each location name
+     */
+    List<ResolvedLocation> pickBestCandidates(final List<List<ResolvedLocation>> allCandidates) {
+        if (candidateSelection == CandidateSelection.BRANCH_AND_BOUND) {
+            return new CandidateSearch(allCandidates).pickBestCandidates();
+        }
+        return pickBestCombination(allCandidates);
+    }
+
+    /**
+     * Exhaustive implementation of {@link #pickBestCandidates}, scoring
+     * every combination of candidates down to each depth.
+     *
      * @param allCandidates list of lists of candidate matches for locations names
      * @return              list of best matches for each location name
      */
-    private List<ResolvedLocation> pickBestCandidates(final List<List<ResolvedLocation>> allCandidates) {
+    private List<ResolvedLocation> pickBestCombination(final List<List<ResolvedLocation>> allCandidates) {
         // initialize return object
         List<ResolvedLocation> bestCandidates = new ArrayList<>();
 
@@ -331,7 +369,7 @@ public class ClavinLocationResolver {
 
     /**
      * Recursive helper function for
-     * {@link #pickBestCandidates}.
+     * {@link #pickBestCombination}.
      *
      * Generates all combinations of candidate matches from each
      * location, down to the specified depth through the lists.
@@ -0,0 +1,199 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * StreamingLocationResolver.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.resolver;
+
+import com.novetta.clavin.ClavinException;
+import com.novetta.clavin.extractor.LocationOccurrence;
+import com.novetta.clavin.gazetteer.query.Gazetteer;
+import com.novetta.clavin.gazetteer.query.GazetteerQuery;
+import com.novetta.clavin.gazetteer.query.QueryBuilder;
+import com.novetta.clavin.metrics.ClavinMetrics;
+import com.novetta.clavin.util.ListUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Incrementally resolves location names into {@link ResolvedLocation}s
+ * as they are extracted from successive windows of a document.
+ *
+ * Candidate matches are buffered only until a full context window can
+ * be decided; each decided window is pushed to the consumer immediately.
+ * Windows are cut at exactly the same boundaries
+ * {@link ListUtils#chunkifyList} would produce for the whole document,
+ * so the resolved locations are identical to those returned by
+ * {@link ClavinLocationResolver#resolveLocations}.
+ *
+ * Instances are obtained from {@link ClavinLocationResolver#streamingResolver}
+ * and are not thread-safe; use one per document.
+ */
+public class StreamingLocationResolver {
+    /**
+     * The resolver supplying the candidate selection heuristics.
+     */
+    private final ClavinLocationResolver resolver;
+
+    /**
+     * Builder for the candidate queries.
+     */
+    private final QueryBuilder builder;
+
+    /**
+     * Number of candidate matches to consider.
+     */
+    private final int maxHitDepth;
+
+    /**
+     * How much context to consider when resolving.
+     */
+    private final int maxContextWindow;
+
+    /**
+     * Receives each resolved location as soon as it is decided.
+     */
+    private final Consumer<ResolvedLocation> consumer;
+
+    /**
+     * Candidate matches for location names whose context window has not been decided yet.
+     */
+    private final List<List<ResolvedLocation>> pendingCandidates = new ArrayList<>();
+
+    /**
+     * Number of candidate matches considered so far for the document.
+     */
+    private long candidateCount;
+
+    /**
+     * Create a new StreamingLocationResolver.
+     * @param resolver          the resolver supplying the gazetteer and heuristics
+     * @param builder           builder for the candidate queries
+     * @param maxHitDepth       number of candidate matches to consider
+     * @param maxContextWindow  how much context to consider when resolving
+     * @param consumer          receives each resolved location as soon as it is decided
+     */
+    StreamingLocationResolver(final ClavinLocationResolver resolver, final QueryBuilder builder, final int maxHitDepth,
+            final int maxContextWindow, final Consumer<ResolvedLocation> consumer) {
+        this.resolver = resolver;
+        this.builder = builder;
+        this.maxHitDepth = maxHitDepth;
+        this.maxContextWindow = maxContextWindow;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Resolves the next batch of location names in document order, pushing
+     * every location whose context window is complete to the consumer.
+     *
+     * @param locations          next location names extracted from the document
+     * @throws ClavinException   if an error occurs parsing the search terms
+     */
+    public void resolve(final List<LocationOccurrence> locations) throws ClavinException {
+        if (locations == null || locations.isEmpty()) {
+            return;
+        }
+
+        Gazetteer gazetteer = resolver.getGazetteer();
+        ClavinMetrics metrics = resolver.getMetrics();
+        List<GazetteerQuery> queries = new ArrayList<>(locations.size());
+        for (LocationOccurrence location : locations) {
+            // filter out demonyms mistakenly extracted as place names
+            long filterStart = System.nanoTime();
+            boolean demonym = ClavinLocationResolver.isDemonym(location);
+            metrics.recordTime(ClavinMetrics.Timer.DEMONYM_FILTER, System.nanoTime() - filterStart);
+            if (!demonym) {
+                queries.add(builder.location(location).build());
+                metrics.increment(ClavinMetrics.Counter.QUERIES);
+            }
+        }
+
+        // get all possible matches for the whole batch at once
+        List<List<ResolvedLocation>> results = new ArrayList<>();
+        if (!queries.isEmpty()) {
+            long queryStart = System.nanoTime();
+            results = gazetteer.getClosestLocations(queries);
+            metrics.recordTime(ClavinMetrics.Timer.GAZETTEER_QUERY, System.nanoTime() - queryStart);
+        }
+
+        for (List<ResolvedLocation> candidates : results) {
+            candidateCount += candidates.size();
+            if (candidates.isEmpty()) {
+                continue;
+            }
+
+            if (maxHitDepth > 1) {
+                // defer until the context window is complete
+                pendingCandidates.add(candidates);
+            } else {
+                // use no heuristics, simply choose matching location with greatest population
+                consumer.accept(candidates.get(0));
+            }
+        }
+
+        // ListUtils.chunkifyList only emits full windows while more than two windows remain,
+        // so any window ahead of the last two is final and can be decided now; an invalid
+        // maxContextWindow is left for chunkifyList to reject when the document is flushed
+        while (maxContextWindow > 0 && pendingCandidates.size() > 2 * maxContextWindow) {
+            List<List<ResolvedLocation>> window = pendingCandidates.subList(0, maxContextWindow);
+            emit(new ArrayList<>(window));
+            window.clear();
+        }
+    }
+
+    /**
+     * Decides the remaining context windows once the end of the document
+     * has been reached, pushing their locations to the consumer.
+     */
+    public void flush() {
+        resolver.getMetrics().recordValue(ClavinMetrics.Distribution.CANDIDATES_PER_DOCUMENT, candidateCount);
+        candidateCount = 0;
+        if (pendingCandidates.isEmpty()) {
+            return;
+        }
+        for (List<List<ResolvedLocation>> window : ListUtils.chunkifyList(pendingCandidates, maxContextWindow)) {
+            emit(window);
+        }
+        pendingCandidates.clear();
+    }
+
+    /**
+     * Selects the best match for each location name in a context window
+     * and pushes them to the consumer.
+     *
+     * @param window candidate matches for the location names in the window
+     */
+    private void emit(final List<List<ResolvedLocation>> window) {
+        long start = System.nanoTime();
+        List<ResolvedLocation> bestCandidates = resolver.pickBestCandidates(window);
+        resolver.getMetrics().recordTime(ClavinMetrics.Timer.PICK_BEST, System.nanoTime() - start);
+        for (ResolvedLocation location : bestCandidates) {
+            consumer.accept(location);
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.novetta.clavin.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongBiFunction;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * LruCache.java
+ * 
+ *###################################################################*/
+
+/**
+ * Concurrent, bounded, least-recently-used cache.
+ *
+ * Entries are spread over independently locked segments, each holding
+ * an access-ordered map, so concurrent lookups of different keys rarely
+ * contend. Every entry has a weight, and a segment evicts its least
+ * recently used entries once its total weight exceeds its share of the
+ * maximum weight. Values heavier than a segment's share are not cached.
+ *
+ * Hit, miss and eviction counts are kept for monitoring.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class LruCache<K, V> {
+    /**
+     * The default number of segments.
+     */
+    public static final int DEFAULT_SEGMENTS = 16;
+
+    private final Segment<K, V>[] segments;
+    private final ToLongBiFunction<? super K, ? super V> weigher;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Create a cache holding at most maxSize entries.
+     * @param maxSize the maximum number of entries
+     */
+    public LruCache(final long maxSize) {
+        this(maxSize, DEFAULT_SEGMENTS, (k, v) -> 1);
+    }
+
+    /**
+     * Create a cache whose entries weigh at most maxWeight in total.
+     * @param maxWeight     the maximum total weight of all entries
+     * @param segmentCount  the number of independently locked segments
+     * @param weigher       computes the positive weight of an entry
+     */
+    @SuppressWarnings("unchecked")
+    public LruCache(final long maxWeight, final int segmentCount,
+            final ToLongBiFunction<? super K, ? super V> weigher) {
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("maxWeight must be greater than zero");
+        }
+        if (segmentCount < 1) {
+            throw new IllegalArgumentException("segmentCount must be greater than zero");
+        }
+        // never split the weight so finely that segments cannot hold an entry
+        int count = (int) Math.min(segmentCount, maxWeight);
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            // spread any remainder over the first segments
+            long share = maxWeight / count + (i < maxWeight % count ? 1 : 0);
+            segments[i] = new Segment<>(share);
+        }
+        this.weigher = weigher;
+    }
+
+    /**
+     * Get the cached value for a key, marking it as recently used.
+     * @param key the key
+     * @return the cached value or <code>null</code> if the key is not cached
+     */
+    public V get(final K key) {
+        V value = segmentFor(key).get(key);
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Caches a value, evicting least recently used entries as needed.
+     * @param key   the key
+     * @param value the value
+     */
+    public void put(final K key, final V value) {
+        long weight = weigher.applyAsLong(key, value);
+        evictions.add(segmentFor(key).put(key, value, weight));
+    }
+
+    /**
+     * Removes a key from the cache.
+     * @param key the key
+     */
+    public void invalidate(final K key) {
+        segmentFor(key).remove(key);
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public void invalidateAll() {
+        for (Segment<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Get a snapshot of the cached keys, least recently used first
+     * within each segment.
+     * @return the cached keys
+     */
+    public List<K> keys() {
+        List<K> keys = new ArrayList<>();
+        for (Segment<K, V> segment : segments) {
+            segment.addKeys(keys);
+        }
+        return keys;
+    }
+
+    /**
+     * Get the number of cached entries.
+     * @return the number of cached entries
+     */
+    public long size() {
+        long size = 0;
+        for (Segment<K, V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Get the total weight of the cached entries.
+     * @return the total weight of the cached entries
+     */
+    public long weight() {
+        long weight = 0;
+        for (Segment<K, V> segment : segments) {
+            weight += segment.weight();
+        }
+        return weight;
+    }
+
+    /**
+     * Get a snapshot of the hit, miss and eviction counts.
+     * @return the cache statistics
+     */
+    public Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    private Segment<K, V> segmentFor(final K key) {
+        int h = key.hashCode();
+        // spread the high bits, as java.util.HashMap does
+        h ^= (h >>> 16);
+        return segments[Math.floorMod(h, segments.length)];
+    }
+
+    /**
+     * A snapshot of cache statistics.
+     */
+    public static class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+
+        Stats(final long hitCount, final long missCount, final long evictionCount) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+        }
+
+        /**
+         * Get the number of lookups that found a cached value.
+         * @return the hit count
+         */
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * Get the number of lookups that found no cached value.
+         * @return the miss count
+         */
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * Get the number of entries evicted to respect the maximum weight.
+         * @return the eviction count
+         */
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * Get the fraction of lookups that found a cached value.
+         * @return the hit rate, or 0 if there have been no lookups
+         */
+        public double getHitRate() {
+            long lookups = hitCount + missCount;
+            return lookups == 0 ? 0 : (double) hitCount / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d, misses=%d, evictions=%d, hitRate=%.3f",
+                    hitCount, missCount, evictionCount, getHitRate());
+        }
+    }
+
+    /**
+     * An independently locked, access-ordered portion of the cache.
+     */
+    private static final class Segment<K, V> {
+        private final LinkedHashMap<K, Weighted<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+        private final long maxWeight;
+        private long weight;
+
+        Segment(final long maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+
+        synchronized V get(final K key) {
+            Weighted<V> entry = map.get(key);
+            return entry != null ? entry.value : null;
+        }
+
+        /**
+         * @return the number of evicted entries
+         */
+        synchronized int put(final K key, final V value, final long entryWeight) {
+            if (entryWeight > maxWeight) {
+                // too heavy to ever fit; drop any stale value instead
+                remove(key);
+                return 0;
+            }
+            Weighted<V> previous = map.put(key, new Weighted<>(value, entryWeight));
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+            weight += entryWeight;
+
+            int evicted = 0;
+            Iterator<Map.Entry<K, Weighted<V>>> eldest = map.entrySet().iterator();
+            while (weight > maxWeight && eldest.hasNext()) {
+                weight -= eldest.next().getValue().weight;
+                eldest.remove();
+                evicted++;
+            }
+            return evicted;
+        }
+
+        synchronized void remove(final K key) {
+            Weighted<V> previous = map.remove(key);
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+        }
+
+        synchronized void clear() {
+            map.clear();
+            weight = 0;
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+
+        synchronized void addKeys(final List<K> keys) {
+            keys.addAll(map.keySet());
+        }
+
+        synchronized long weight() {
+            return weight;
+        }
+    }
+
+    /**
+     * A cached value and its weight.
+     */
+    private static final class Weighted<V> {
+        private final V value;
+        private final long weight;
+
+        Weighted(final V value, final long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -45,15 +45,27 @@ import com.novetta.clavin.gazetteer.BasicGeoNameTest;
     com.novetta.clavin.extractor.LocationOccurrenceTest.class,
     BasicGeoNameTest.class,
     com.novetta.clavin.index.BinarySimilarityTest.class,
+    com.novetta.clavin.index.GeoNameRecordCodecTest.class,
+    com.novetta.clavin.index.NameBloomFilterTest.class,
+    com.novetta.clavin.index.SymSpellIndexTest.class,
+    com.novetta.clavin.index.ExactNameStoreTest.class,
+    com.novetta.clavin.index.IndexDirectoryBuilderTest.class,
+    com.novetta.clavin.metrics.InMemoryMetricsTest.class,
     com.novetta.clavin.resolver.ResolvedLocationTest.class,
+    com.novetta.clavin.resolver.CandidateSearchTest.class,
     com.novetta.clavin.resolver.ClavinLocationResolverTest.class,
     com.novetta.clavin.resolver.ClavinLocationResolverHeuristicsTest.class,
     com.novetta.clavin.resolver.multipart.MultipartLocationResolverTest.class,
     com.novetta.clavin.resolver.multipart.MultiLevelMultipartLocationResolverTest.class,
     com.novetta.clavin.util.DamerauLevenshteinTest.class,
     com.novetta.clavin.util.ListUtilsTest.class,
+    com.novetta.clavin.util.LruCacheTest.class,
     com.novetta.clavin.util.TextUtilsTest.class,
     com.novetta.clavin.gazetteer.query.LuceneGazetteerTest.class,
+    com.novetta.clavin.gazetteer.query.CachingGazetteerTest.class,
+    com.novetta.clavin.gazetteer.query.ReloadableGazetteerTest.class,
+    com.novetta.clavin.gazetteer.query.QueryLogTest.class,
+    com.novetta.clavin.gazetteer.query.QueryCompilerTest.class,
     // this one comes last as it's more of an integration test
     com.novetta.clavin.GeoParserTest.class
 })
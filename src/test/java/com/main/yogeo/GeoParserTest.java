@@ -2,10 +2,17 @@ package com.novetta.clavin;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Test;
 
+import com.novetta.clavin.extractor.ApacheExtractor;
 import com.novetta.clavin.resolver.ResolvedLocation;
 
 /*#####################################################################
@@ -76,4 +83,88 @@ public class GeoParserTest {
         assertEquals("Incorrect position of LocationOccurance", inputText.indexOf("Massachusetts"), resolvedLocations.get(2).getLocation().getPosition());
     }
 
+    /**
+     * Ensures batches of documents are geoparsed concurrently and
+     * returned in input order.
+     * @throws Exception
+     */
+    @Test
+    public void testParseAll() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            GeoParser parser = GeoParserFactory.getDefault("./IndexDirectory", new ApacheExtractor(), 1, 1, false, executor);
+
+            List<String> inputTexts = Arrays.asList(
+                    "He was born in Vermont.",
+                    "Calvin Coolidge was the 30th president of the United States.",
+                    "There is nothing to find here.",
+                    "He died in Massachusetts.");
+
+            List<List<ResolvedLocation>> results = parser.parseAll(inputTexts);
+
+            assertEquals("Wrong number of results", inputTexts.size(), results.size());
+            assertEquals("Incorrect ResolvedLocation", VERMONT, results.get(0).get(0).getGeoname().getGeonameID());
+            assertEquals("Incorrect ResolvedLocation", UNITED_STATES, results.get(1).get(0).getGeoname().getGeonameID());
+            assertEquals("Expected no ResolvedLocations", 0, results.get(2).size());
+            assertEquals("Incorrect ResolvedLocation", MASSACHUSETTS, results.get(3).get(0).getGeoname().getGeonameID());
+
+            // the stream variant must preserve encounter order as well
+            assertEquals("Stream results differ from collection results", results, parser.parseAll(inputTexts.stream()));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Ensures a document streamed from a Reader is resolved window by
+     * window with occurrence positions relative to the whole document.
+     * @throws Exception
+     */
+    @Test
+    public void testParseReader() throws Exception {
+        GeoParser parser = GeoParserFactory.getDefault("./IndexDirectory");
+
+        // long enough to be split across several streaming windows
+        StringBuilder document = new StringBuilder();
+        while (document.length() < 64 * 1024) {
+            document.append("Calvin Coolidge was the 30th president of the United States. ")
+                    .append("He was born in Vermont and died in Massachusetts. ");
+        }
+        String inputText = document.toString();
+
+        List<ResolvedLocation> streamed = new ArrayList<>();
+        parser.parse(new StringReader(inputText), streamed::add);
+
+        List<ResolvedLocation> parsed = parser.parse(inputText);
+        assertEquals("Wrong number of ResolvedLocations", parsed.size(), streamed.size());
+        for (int i = 0; i < streamed.size(); i++) {
+            ResolvedLocation location = streamed.get(i);
+            String text = location.getLocation().getText();
+            int position = location.getLocation().getPosition();
+            assertEquals("Incorrect position of LocationOccurance", text,
+                    inputText.substring(position, position + text.length()));
+            assertEquals("Incorrect ResolvedLocation", parsed.get(i).getGeoname().getGeonameID(),
+                    location.getGeoname().getGeonameID());
+        }
+    }
+
+    /**
+     * Ensures asynchronous geoparsing on a supplied executor produces the
+     * same results as the blocking API.
+     * @throws Exception
+     */
+    @Test
+    public void testParseAsync() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            GeoParser parser = GeoParserFactory.getDefault("./IndexDirectory", new ApacheExtractor(), 1, 1, false, executor);
+
+            String inputText = "He was born in Vermont and died in Massachusetts.";
+            CompletableFuture<List<ResolvedLocation>> future = parser.parseAsync(inputText);
+
+            assertEquals("Async results differ from blocking results", parser.parse(inputText), future.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
@@ -7,7 +7,11 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 
@@ -90,5 +94,30 @@ public class ApacheExtractorTest {
         ApacheExtractor extractor = new ApacheExtractor();
         extractor.extractLocationNames(null);
     }
+
+    /**
+     * Ensures a single {@link ApacheExtractor} can be shared by several
+     * threads and still produces the same output as a serial run.
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentExtraction() throws Exception {
+        ApacheExtractor extractor = new ApacheExtractor();
+        String inputString = TextUtils.fileToString(new File("src/test/resources/sample-docs/Somalia-doc.txt"));
+        List<LocationOccurrence> expected = extractor.extractLocationNames(inputString);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<LocationOccurrence>>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(() -> extractor.extractLocationNames(inputString)));
+            }
+            for (Future<List<LocationOccurrence>> future : futures) {
+                assertEquals("Different extractor results for concurrent identical documents.", expected, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
     
 }
\ No newline at end of file
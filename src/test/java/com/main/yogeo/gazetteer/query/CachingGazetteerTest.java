@@ -0,0 +1,149 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * CachingGazetteerTest.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.gazetteer.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.novetta.clavin.ClavinException;
+import com.novetta.clavin.extractor.LocationOccurrence;
+import com.novetta.clavin.gazetteer.GeoName;
+import com.novetta.clavin.resolver.ResolvedLocation;
+
+/**
+ * Tests for the {@link CachingGazetteer} decorator.
+ */
+public class CachingGazetteerTest {
+    private AtomicInteger delegateQueries;
+    private CachingGazetteer gazetteer;
+
+    @Before
+    public void setUp() throws ClavinException {
+        delegateQueries = new AtomicInteger();
+        final Gazetteer lucene = new LuceneGazetteer(new File("./IndexDirectory"));
+        // counts the queries reaching the underlying gazetteer
+        Gazetteer counting = new Gazetteer() {
+            @Override
+            public List<ResolvedLocation> getClosestLocations(GazetteerQuery query) throws ClavinException {
+                delegateQueries.incrementAndGet();
+                return lucene.getClosestLocations(query);
+            }
+
+            @Override
+            public GeoName getGeoName(int geonameId) throws ClavinException {
+                return lucene.getGeoName(geonameId);
+            }
+
+            @Override
+            public GeoName getGeoName(int geonameId, AncestryMode ancestryMode) throws ClavinException {
+                return lucene.getGeoName(geonameId, ancestryMode);
+            }
+
+            @Override
+            public void loadAncestry(GeoName... geoNames) throws ClavinException {
+                lucene.loadAncestry(geoNames);
+            }
+
+            @Override
+            public void loadAncestry(Collection<GeoName> geoNames) throws ClavinException {
+                lucene.loadAncestry(geoNames);
+            }
+        };
+        gazetteer = new CachingGazetteer(counting);
+    }
+
+    /**
+     * Ensures equivalent queries hit the cache and cached matches are
+     * re-bound to the caller's occurrence.
+     */
+    @Test
+    public void testCacheHitRebindsOccurrence() throws ClavinException {
+        List<ResolvedLocation> first = gazetteer.getClosestLocations(
+                new QueryBuilder().location(new LocationOccurrence("Boston", 10)).build());
+        List<ResolvedLocation> second = gazetteer.getClosestLocations(
+                new QueryBuilder().location(new LocationOccurrence(" BOSTON ", 42)).build());
+
+        assertEquals("Equivalent query should be served from the cache", 1, delegateQueries.get());
+        assertFalse("Expected matches for Boston", first.isEmpty());
+        assertEquals("Cached results differ", first, second);
+        for (ResolvedLocation match : second) {
+            assertEquals("Cached match not re-bound to the caller's text", " BOSTON ", match.getLocation().getText());
+            assertEquals("Cached match not re-bound to the caller's position", 42, match.getLocation().getPosition());
+        }
+        assertEquals("Wrong hit count", 1, gazetteer.getStats().getHitCount());
+        assertEquals("Wrong miss count", 1, gazetteer.getStats().getMissCount());
+    }
+
+    /**
+     * Ensures queries differing in any parameter other than the location text
+     * are cached separately.
+     */
+    @Test
+    public void testDistinctParameters() throws ClavinException {
+        QueryBuilder builder = new QueryBuilder().location("Boston");
+        gazetteer.getClosestLocations(builder.build());
+        gazetteer.getClosestLocations(builder.maxResults(2).build());
+        gazetteer.getClosestLocations(builder.fuzzyMode(FuzzyMode.FILL).build());
+        gazetteer.getClosestLocations(builder.includeHistorical(false).build());
+        gazetteer.getClosestLocations(builder.addCityCodes().build());
+        gazetteer.getClosestLocations(builder.addParentIds(6252001).build());
+        assertEquals("Every distinct query should reach the delegate", 6, delegateQueries.get());
+
+        gazetteer.invalidateAll();
+        gazetteer.getClosestLocations(builder.build());
+        assertEquals("Invalidated query should reach the delegate", 7, delegateQueries.get());
+    }
+
+    /**
+     * Ensures GazetteerQuery equality covers all query parameters.
+     */
+    @Test
+    public void testQueryEquality() {
+        QueryBuilder builder = new QueryBuilder().location(new LocationOccurrence("Boston", 3)).addCountryCodes();
+        GazetteerQuery query = builder.build();
+        assertEquals("Identical queries should be equal", query, builder.build());
+        assertEquals("Identical queries should share hash codes", query.hashCode(), builder.build().hashCode());
+        assertNotEquals("Position is part of the query", query,
+                builder.location(new LocationOccurrence("Boston", 4)).build());
+        assertNotEquals("Ancestry mode is part of the query", query,
+                builder.location(new LocationOccurrence("Boston", 3)).ancestryMode(AncestryMode.MANUAL).build());
+        assertEquals("Canonical form should ignore case, whitespace and position",
+                CachingGazetteer.canonicalQuery(new QueryBuilder().location(new LocationOccurrence("Boston ", 7)).build()),
+                CachingGazetteer.canonicalQuery(new QueryBuilder().location("boston").build()));
+    }
+}
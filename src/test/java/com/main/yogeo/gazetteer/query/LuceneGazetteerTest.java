@@ -33,17 +33,23 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -51,6 +57,9 @@ import com.novetta.clavin.ClavinException;
 import com.novetta.clavin.extractor.LocationOccurrence;
 import com.novetta.clavin.gazetteer.FeatureCode;
 import com.novetta.clavin.gazetteer.GeoName;
+import com.novetta.clavin.index.IndexDirectoryBuilder;
+import com.novetta.clavin.metrics.ClavinMetrics;
+import com.novetta.clavin.metrics.InMemoryMetrics;
 import com.novetta.clavin.resolver.ResolvedLocation;
 
 /**
@@ -463,4 +472,315 @@ public class LuceneGazetteerTest {
         assertEquals("Country should be United States", UNITED_STATES, usa.getGeonameID());
         assertNull("USA has no parent", usa.getParent());
     }
+
+    /**
+     * Ensure names absent from the index skip the exact query and are
+     * answered from the negative cache once they have failed fuzzy matching.
+     */
+    @Test
+    public void testUnknownNames() throws ClavinException, IOException {
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        try (LuceneGazetteer gazetteer = new LuceneGazetteer(INDEX_DIRECTORY, new LuceneGazetteerConfig().metrics(metrics))) {
+            QueryBuilder unknown = new QueryBuilder().location("Qzxwvkjplt").fuzzyMode(FuzzyMode.FILL);
+
+            assertTrue("unknown name should not match", gazetteer.getClosestLocations(unknown.build()).isEmpty());
+            assertEquals("exact query should be skipped", 1, metrics.getCount(ClavinMetrics.Counter.EXACT_QUERIES_SKIPPED));
+            assertEquals(0, metrics.getCount(ClavinMetrics.Counter.NEGATIVE_CACHE_HITS));
+
+            assertTrue("unknown name should not match", gazetteer.getClosestLocations(unknown.build()).isEmpty());
+            assertEquals("second query should hit the negative cache", 1, metrics.getCount(ClavinMetrics.Counter.NEGATIVE_CACHE_HITS));
+
+            // known names still match exactly
+            List<ResolvedLocation> boston = gazetteer.getClosestLocations(queryBuilder.location("Boston").build());
+            assertFalse("Boston should match", boston.isEmpty());
+            assertFalse("Boston should match exactly", boston.get(0).isFuzzy());
+            assertEquals(1, metrics.getCount(ClavinMetrics.Counter.EXACT_QUERIES_SKIPPED));
+        }
+    }
+
+    /**
+     * Ensure batch queries return the same matches as individual queries,
+     * bound to each query's occurrence, both sequentially and in parallel.
+     */
+    @Test
+    public void testBatchQueries() throws ClavinException, IOException {
+        String[] names = {"Boston", "Reston", "boston", "Virginia", "Qzxwvkjplt", "", "Reston"};
+        List<GazetteerQuery> queries = new ArrayList<>();
+        for (LocationOccurrence occurrence : makeOccurrencesFromNames(names)) {
+            queries.add(queryBuilder.location(occurrence).build());
+        }
+        // restricted queries share the batch with unrestricted ones
+        queries.add(queryBuilder.location("Boston").addParentIds(VIRGINIA).build());
+        queryBuilder.clearParentIds();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            try (LuceneGazetteer parallel = new LuceneGazetteer(INDEX_DIRECTORY, new LuceneGazetteerConfig().executor(executor))) {
+                for (LuceneGazetteer gazetteer : Arrays.asList(instance, parallel)) {
+                    List<List<ResolvedLocation>> results = gazetteer.getClosestLocations(queries);
+                    assertEquals(queries.size(), results.size());
+                    for (int i = 0; i < queries.size(); i++) {
+                        List<ResolvedLocation> expected = instance.getClosestLocations(queries.get(i));
+                        List<ResolvedLocation> actual = results.get(i);
+                        assertEquals("wrong number of matches for query " + i, expected.size(), actual.size());
+                        for (int j = 0; j < expected.size(); j++) {
+                            assertEquals(expected.get(j).getGeoname().getGeonameID(), actual.get(j).getGeoname().getGeonameID());
+                            assertEquals(queries.get(i).getOccurrence(), actual.get(j).getLocation());
+                        }
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Ensure GeoNames decoded from binary records match those parsed from
+     * gazetteer records, including their resolved ancestry.
+     */
+    @Test
+    public void testBinaryRecords() throws ClavinException, IOException {
+        try (LuceneGazetteer tsv = new LuceneGazetteer(INDEX_DIRECTORY, new LuceneGazetteerConfig().useBinaryRecords(false))) {
+            for (int id : new int[] {RESTON_VA, BOSTON_MA, STRAßENHAUS_DE, GUN_BARREL_CITY_TX}) {
+                GeoName binary = instance.getGeoName(id, AncestryMode.ON_CREATE);
+                GeoName parsed = tsv.getGeoName(id, AncestryMode.ON_CREATE);
+                assertNotNull(binary);
+                for (GeoName expected = parsed, actual = binary; expected != null || actual != null;
+                        expected = expected.getParent(), actual = actual.getParent()) {
+                    assertNotNull("ancestry should match", expected);
+                    assertNotNull("ancestry should match", actual);
+                    assertEquals(expected.getGeonameID(), actual.getGeonameID());
+                    assertEquals(expected.getPreferredName(), actual.getPreferredName());
+                    assertEquals(expected.getAlternateNames(), actual.getAlternateNames());
+                    assertEquals(expected.getPopulation(), actual.getPopulation());
+                    assertEquals(expected.getTimezone(), actual.getTimezone());
+                    assertEquals(expected.getAncestryKey(), actual.getAncestryKey());
+                    assertEquals(expected.getLatitude(), actual.getLatitude(), 0.0);
+                    assertEquals(expected.getLongitude(), actual.getLongitude(), 0.0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ensure every index directory mode opens the index and returns the
+     * same matches.
+     */
+    @Test
+    public void testDirectoryModes() throws ClavinException, IOException {
+        List<ResolvedLocation> expected = instance.getClosestLocations(queryBuilder.location("Boston").build());
+        for (IndexDirectoryMode mode : IndexDirectoryMode.values()) {
+            try (LuceneGazetteer gazetteer = new LuceneGazetteer(INDEX_DIRECTORY, new LuceneGazetteerConfig().directoryMode(mode))) {
+                List<ResolvedLocation> actual = gazetteer.getClosestLocations(queryBuilder.location("Boston").build());
+                assertEquals("wrong number of matches in mode " + mode, expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i).getGeoname(), actual.get(i).getGeoname());
+                }
+                assertEquals(RESTON_VA, gazetteer.getGeoName(RESTON_VA).getGeonameID());
+            }
+        }
+    }
+
+    /**
+     * Ensure GeoNames and parents with resolved ancestry are served from
+     * the GeoName cache, and pinned administrative divisions without any
+     * index lookup.
+     */
+    @Test
+    public void testGeoNameCache() throws ClavinException, IOException {
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        try (LuceneGazetteer gazetteer = new LuceneGazetteer(INDEX_DIRECTORY, new LuceneGazetteerConfig().metrics(metrics))) {
+            GeoName reston = gazetteer.getGeoName(RESTON_VA, AncestryMode.ON_CREATE);
+            assertTrue("ancestry should be resolved", reston.isAncestryResolved());
+            assertSame("resolved GeoName should be cached", reston, gazetteer.getGeoName(RESTON_VA, AncestryMode.ON_CREATE));
+            assertSame("parents should be cached", reston.getParent(), gazetteer.getGeoName(reston.getParent().getGeonameID(), AncestryMode.ON_CREATE));
+            assertEquals(2, metrics.getCount(ClavinMetrics.Counter.GEONAME_CACHE_HITS));
+
+            InMemoryMetrics pinnedMetrics = new InMemoryMetrics();
+            try (LuceneGazetteer pinned = new LuceneGazetteer(INDEX_DIRECTORY,
+                    new LuceneGazetteerConfig().metrics(pinnedMetrics).geoNameCacheSize(0).pinAdminDivisions(true))) {
+                GeoName virginia = pinned.getGeoName(VIRGINIA, AncestryMode.ON_CREATE);
+                assertEquals(1, pinnedMetrics.getCount(ClavinMetrics.Counter.GEONAME_CACHE_HITS));
+                assertTrue("pinned division should have resolved ancestry", virginia.isAncestryResolved());
+                GeoName pinnedReston = pinned.getGeoName(RESTON_VA, AncestryMode.ON_CREATE);
+                assertEquals(reston.getGazetteerRecordWithAncestry(), pinnedReston.getGazetteerRecordWithAncestry());
+            }
+        }
+    }
+
+    /**
+     * Ensure ancestry resolved level by level for many GeoNames at once
+     * matches the ancestry of each GeoName resolved on its own.
+     */
+    @Test
+    public void testLevelBatchedAncestry() throws ClavinException, IOException {
+        try (LuceneGazetteer uncached = new LuceneGazetteer(INDEX_DIRECTORY, new LuceneGazetteerConfig().geoNameCacheSize(0))) {
+            List<GeoName> geoNames = new ArrayList<>();
+            for (String name : new String[] {"Reston", "Boston", "Straßenhaus", "Gun Barrel City", "Fairfax County"}) {
+                for (ResolvedLocation loc : uncached.getClosestLocations(queryBuilder.location(name).maxResults(10)
+                        .ancestryMode(AncestryMode.MANUAL).build())) {
+                    geoNames.add(loc.getGeoname());
+                }
+            }
+            assertFalse(geoNames.isEmpty());
+            uncached.loadAncestry(geoNames);
+            for (GeoName geoName : geoNames) {
+                assertTrue("ancestry should be resolved for " + geoName, geoName.isAncestryResolved());
+                GeoName single = uncached.getGeoName(geoName.getGeonameID(), AncestryMode.ON_CREATE);
+                assertEquals(single.getGazetteerRecordWithAncestry(), geoName.getGazetteerRecordWithAncestry());
+            }
+        }
+    }
+
+    /**
+     * Ensure exact queries that terminate early against a population-sorted
+     * index return the same matches as fully scored and sorted queries.
+     */
+    @Test
+    public void testEarlyTermination() throws ClavinException, IOException {
+        File sortedIndex = new File(Files.createTempDirectory("clavin").toFile(), "SortedIndex");
+        try {
+            IndexDirectoryBuilder.main(new String[] {
+                "-i", "./src/test/resources/gazetteers/GeoNamesSampleSet.txt:./src/main/resources/SupplementaryGazetteer.txt",
+                "-o", sortedIndex.getPath(), "--sort-by-population"
+            });
+            try (LuceneGazetteer early = new LuceneGazetteer(sortedIndex);
+                    LuceneGazetteer full = new LuceneGazetteer(sortedIndex, new LuceneGazetteerConfig().useEarlyTermination(false))) {
+                String[] names = {"Boston", "Reston", "Virginia", "United States", "US", "Fairfax", "Straßenhaus", "Gun Barrel City"};
+                for (String name : names) {
+                    for (int maxResults : new int[] {1, 2, 5}) {
+                        for (boolean filterDupes : new boolean[] {true, false}) {
+                            GazetteerQuery query = new QueryBuilder().location(name).maxResults(maxResults)
+                                    .filterDupes(filterDupes).fuzzyMode(FuzzyMode.OFF).build();
+                            List<ResolvedLocation> expected = full.getClosestLocations(query);
+                            List<ResolvedLocation> actual = early.getClosestLocations(query);
+                            assertEquals("wrong number of matches for " + name, expected.size(), actual.size());
+                            for (int i = 0; i < expected.size(); i++) {
+                                assertEquals("wrong match for " + name, expected.get(i).getGeoname().getGeonameID(),
+                                        actual.get(i).getGeoname().getGeonameID());
+                                assertEquals(expected.get(i).getMatchedName(), actual.get(i).getMatchedName());
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            FileUtils.deleteDirectory(sortedIndex.getParentFile());
+        }
+    }
+
+    /**
+     * Ensure fuzzy terms expanded into a bounded number of the closest
+     * index terms still find fuzzy matches, and record their expansions.
+     */
+    @Test
+    public void testBoundedFuzzyExpansion() throws ClavinException, IOException {
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        try (LuceneGazetteer bounded = new LuceneGazetteer(INDEX_DIRECTORY,
+                new LuceneGazetteerConfig().metrics(metrics).fuzzyMaxExpansions(1).negativeCacheSize(0))) {
+            queryBuilder.fuzzyMode(FuzzyMode.NO_EXACT);
+            for (int i = 0; i < 2; i++) {
+                // the second query reuses the cached automata
+                List<ResolvedLocation> locs = bounded.getClosestLocations(queryBuilder.location("Bostonn").build());
+                assertEquals(1, locs.size());
+                assertTrue(locs.get(0).isFuzzy());
+                assertEquals(BOSTON_MA, locs.get(0).getGeoname().getGeonameID());
+            }
+            assertEquals(2, metrics.getDistribution(ClavinMetrics.Distribution.FUZZY_EXPANSIONS).getCount());
+            assertEquals(1, metrics.getDistribution(ClavinMetrics.Distribution.FUZZY_EXPANSIONS).getMax());
+
+            List<ResolvedLocation> locs = bounded.getClosestLocations(queryBuilder.location("Straßenhaus Airport").build());
+            assertEquals(STRAßENHAUS_DE, locs.get(0).getGeoname().getGeonameID());
+        }
+
+        // adaptive edits match short terms exactly
+        try (LuceneGazetteer adaptive = new LuceneGazetteer(INDEX_DIRECTORY,
+                new LuceneGazetteerConfig().adaptiveFuzzyEdits(true).negativeCacheSize(0))) {
+            assertTrue(adaptive.getClosestLocations(queryBuilder.location("Zq").build()).isEmpty());
+        }
+    }
+
+    /**
+     * Ensure the symmetric delete backend finds the same fuzzy matches as
+     * the automaton backend, and falls back to it for indexes without a
+     * symmetric delete index.
+     */
+    @Test
+    public void testSymSpellBackend() throws ClavinException, IOException {
+        File symSpellIndex = new File(Files.createTempDirectory("clavin").toFile(), "SymSpellIndex");
+        try {
+            IndexDirectoryBuilder.main(new String[] {
+                "-i", "./src/test/resources/gazetteers/GeoNamesSampleSet.txt:./src/main/resources/SupplementaryGazetteer.txt",
+                "-o", symSpellIndex.getPath(), "--symspell-edits", "2"
+            });
+            try (LuceneGazetteer gazetteer = new LuceneGazetteer(symSpellIndex)) {
+                for (String name : new String[] {"Bostonn", "Bstn", "Restn", "Virgina", "Straßenha", "Straßenhaus Airport"}) {
+                    QueryBuilder builder = new QueryBuilder().location(name).fuzzyMode(FuzzyMode.NO_EXACT);
+                    List<ResolvedLocation> expected = gazetteer.getClosestLocations(builder.fuzzyBackend(FuzzyBackend.AUTOMATON).build());
+                    List<ResolvedLocation> actual = gazetteer.getClosestLocations(builder.fuzzyBackend(FuzzyBackend.SYMSPELL).build());
+                    assertFalse("expected fuzzy matches for " + name, expected.isEmpty());
+                    assertEquals("wrong number of matches for " + name, expected.size(), actual.size());
+                    for (int i = 0; i < expected.size(); i++) {
+                        assertEquals("wrong match for " + name, expected.get(i).getGeoname().getGeonameID(),
+                                actual.get(i).getGeoname().getGeonameID());
+                        assertEquals(expected.get(i).getMatchedName(), actual.get(i).getMatchedName());
+                    }
+                }
+            }
+        } finally {
+            FileUtils.deleteDirectory(symSpellIndex.getParentFile());
+        }
+
+        List<ResolvedLocation> locs = instance.getClosestLocations(queryBuilder.location("Bostonn")
+                .fuzzyMode(FuzzyMode.NO_EXACT).fuzzyBackend(FuzzyBackend.SYMSPELL).build());
+        assertEquals(BOSTON_MA, locs.get(0).getGeoname().getGeonameID());
+    }
+
+    /**
+     * Ensure exact queries answered from the exact name store return the
+     * same matches as searches of the index, with and without filters.
+     */
+    @Test
+    public void testExactNameStore() throws ClavinException, IOException {
+        File storeIndex = new File(Files.createTempDirectory("clavin").toFile(), "ExactNameStoreIndex");
+        try {
+            IndexDirectoryBuilder.main(new String[] {
+                "-i", "./src/test/resources/gazetteers/GeoNamesSampleSet.txt:./src/main/resources/SupplementaryGazetteer.txt",
+                "-o", storeIndex.getPath(), "--exact-name-store"
+            });
+            InMemoryMetrics metrics = new InMemoryMetrics();
+            try (LuceneGazetteer stored = new LuceneGazetteer(storeIndex, new LuceneGazetteerConfig().metrics(metrics));
+                    LuceneGazetteer searched = new LuceneGazetteer(storeIndex, new LuceneGazetteerConfig().useExactNameStore(false))) {
+                String[] names = {"Boston", "Reston", "Virginia", "United States", "US", "Fairfax", "Straßenhaus", "Gun Barrel City"};
+                for (String name : names) {
+                    for (int maxResults : new int[] {1, 2, 5}) {
+                        for (boolean filterDupes : new boolean[] {true, false}) {
+                            for (boolean cities : new boolean[] {true, false}) {
+                                QueryBuilder builder = new QueryBuilder().location(name).maxResults(maxResults)
+                                        .filterDupes(filterDupes).includeHistorical(!cities).fuzzyMode(FuzzyMode.OFF);
+                                if (cities) {
+                                    builder.clearFeatureCodes().addCityCodes();
+                                }
+                                GazetteerQuery query = builder.build();
+                                List<ResolvedLocation> expected = searched.getClosestLocations(query);
+                                List<ResolvedLocation> actual = stored.getClosestLocations(query);
+                                assertEquals("wrong number of matches for " + name, expected.size(), actual.size());
+                                for (int i = 0; i < expected.size(); i++) {
+                                    assertEquals("wrong match for " + name, expected.get(i).getGeoname().getGeonameID(),
+                                            actual.get(i).getGeoname().getGeonameID());
+                                    assertEquals(expected.get(i).getMatchedName(), actual.get(i).getMatchedName());
+                                    assertEquals(expected.get(i).getGeoname().getGazetteerRecordWithAncestry(),
+                                            actual.get(i).getGeoname().getGazetteerRecordWithAncestry());
+                                }
+                            }
+                        }
+                    }
+                }
+                assertTrue(metrics.getCount(ClavinMetrics.Counter.EXACT_STORE_HITS) > 0);
+            }
+        } finally {
+            FileUtils.deleteDirectory(storeIndex.getParentFile());
+        }
+    }
 }
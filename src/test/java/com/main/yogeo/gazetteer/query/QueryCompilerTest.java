@@ -0,0 +1,121 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * QueryCompilerTest.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.gazetteer.query;
+
+import static org.apache.lucene.queryparser.classic.QueryParserBase.escape;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.novetta.clavin.index.IndexField;
+
+/**
+ * Ensures {@link QueryCompiler} builds the same queries as the classic
+ * query parser did for every name in the test gazetteer.
+ */
+public class QueryCompilerTest {
+    private static final String FIELD = IndexField.INDEX_NAME.key();
+
+    // names exercising punctuation, escaping and whitespace handling
+    private static final List<String> TRICKY_NAMES = Arrays.asList(
+            "Boston", "New York", "St. Louis", "O'Fallon", "Winston-Salem", "Ras al-Khaimah", "Fort-de-France City",
+            "x fort-de-france city", "a-b c", "a b-c d", "(x) y", ". y", "a . b", "a\tb", "new  york", "a b . c",
+            "- y", "a -", "a-b c-d e-f", "ab\u3000cd", "a, b", "a,b c", ". . y", "u.s.a.", "(x)", "123", "café",
+            "日本", "a&b", "foo/bar", "AND", "the hague", "a\\b", "c:d", "e*f?", "[g]", "{h}", "i^2", "j!", "k|l",
+            "\"m\"", "n~", ".", "- -");
+
+    private Analyzer analyzer;
+    private QueryCompiler compiler;
+
+    @Before
+    public void setUp() throws IOException {
+        analyzer = new StandardAnalyzer(Reader.nullReader());
+        compiler = new QueryCompiler(analyzer, FIELD);
+    }
+
+    /**
+     * Compare compiled and parsed queries for every indexed name.
+     */
+    @Test
+    public void testIndexedNames() throws IOException, ParseException {
+        Set<String> names = new LinkedHashSet<>();
+        try (IndexReader reader = DirectoryReader.open(FSDirectory.open(new File("./IndexDirectory").toPath()))) {
+            for (int i = 0; i < reader.maxDoc(); i++) {
+                names.add(reader.document(i).get(FIELD));
+            }
+        }
+        assertTrue("no names indexed", names.size() > 100);
+        assertSameQueries(names);
+    }
+
+    /**
+     * Compare compiled and parsed queries for names with special characters.
+     */
+    @Test
+    public void testTrickyNames() throws IOException, ParseException {
+        assertSameQueries(TRICKY_NAMES);
+    }
+
+    private void assertSameQueries(final Iterable<String> names) throws IOException, ParseException {
+        List<String> checked = new ArrayList<>();
+        for (String name : names) {
+            // LuceneGazetteer trims and lower-cases names and never queries empty ones
+            String sanitized = name.trim().toLowerCase();
+            if (sanitized.isEmpty()) {
+                continue;
+            }
+            assertEquals("exact query for: " + name,
+                    new QueryParser(FIELD, analyzer).parse(String.format("\"%s\"", escape(sanitized))),
+                    compiler.exactQuery(sanitized));
+            assertEquals("fuzzy query for: " + name,
+                    new QueryParser(FIELD, analyzer).parse(String.format("%s~", escape(sanitized))),
+                    compiler.fuzzyQuery(sanitized));
+            checked.add(name);
+        }
+        assertTrue(checked.size() > 0);
+    }
+}
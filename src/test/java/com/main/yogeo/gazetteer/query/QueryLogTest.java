@@ -0,0 +1,146 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * QueryLogTest.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.gazetteer.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.novetta.clavin.ClavinException;
+import com.novetta.clavin.metrics.ClavinMetrics;
+import com.novetta.clavin.metrics.InMemoryMetrics;
+
+/**
+ * Tests for recording production queries in a {@link QueryLog} and
+ * replaying them with a {@link QueryLogWarmer}.
+ */
+public class QueryLogTest {
+    private static final File INDEX_DIRECTORY = new File("./IndexDirectory");
+
+    // expected geonameID numbers for given location names
+    private static final int BOSTON_MA = 4930956;
+
+    private File logDirectory;
+    private File logFile;
+    private LuceneGazetteer gazetteer;
+
+    @Before
+    public void setUp() throws ClavinException, IOException {
+        logDirectory = Files.createTempDirectory("clavin").toFile();
+        logFile = new File(logDirectory, "queries.log");
+        gazetteer = new LuceneGazetteer(INDEX_DIRECTORY);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        gazetteer.close();
+        FileUtils.deleteDirectory(logDirectory);
+    }
+
+    /**
+     * Ensure recorded queries are normalized, counted and merged with the
+     * counts already saved, most frequent first.
+     */
+    @Test
+    public void testSaveAndRead() throws ClavinException {
+        QueryLog log = new QueryLog(logFile, 1.0, QueryLog.DEFAULT_MAX_QUERIES);
+        Gazetteer logging = new QueryLoggingGazetteer(gazetteer, log);
+        GazetteerQuery boston = new QueryBuilder().location("Boston").build();
+        logging.getClosestLocations(boston);
+        logging.getClosestLocations(new QueryBuilder().location("  boston ").build());
+        logging.getClosestLocations(new QueryBuilder().location("Bstn").fuzzyMode(FuzzyMode.NO_EXACT)
+                .clearFeatureCodes().addCityCodes().addParentIds(6252001).build());
+        logging.getGeoName(BOSTON_MA);
+        log.save();
+
+        List<QueryLog.Entry> entries = QueryLog.read(logFile, Integer.MAX_VALUE);
+        assertEquals(3, entries.size());
+        assertEquals(2, entries.get(0).getCount());
+        assertEquals(CachingGazetteer.canonicalQuery(boston), entries.get(0).getQuery());
+
+        // saving again adds to the saved counts
+        logging.getGeoName(BOSTON_MA);
+        logging.getGeoName(BOSTON_MA);
+        log.save();
+        entries = QueryLog.read(logFile, 1);
+        assertEquals(1, entries.size());
+        assertEquals(3, entries.get(0).getCount());
+        assertNull(entries.get(0).getQuery());
+        assertEquals(BOSTON_MA, entries.get(0).getGeonameId());
+
+        boolean foundFuzzy = false;
+        for (QueryLog.Entry entry : QueryLog.read(logFile, Integer.MAX_VALUE)) {
+            if (entry.getQuery() != null && entry.getQuery().getFuzzyMode() == FuzzyMode.NO_EXACT) {
+                foundFuzzy = true;
+                assertTrue(entry.getQuery().getParentIds().contains(6252001));
+                assertEquals(new QueryBuilder().clearFeatureCodes().addCityCodes().location("x").build().getFeatureCodes(),
+                        entry.getQuery().getFeatureCodes());
+            }
+        }
+        assertTrue(foundFuzzy);
+    }
+
+    /**
+     * Ensure the warmer replays the most frequent logged queries when the
+     * gazetteer is opened, within its time budget.
+     */
+    @Test
+    public void testWarmer() throws ClavinException, IOException {
+        QueryLog log = new QueryLog(logFile, 1.0, QueryLog.DEFAULT_MAX_QUERIES);
+        Gazetteer logging = new QueryLoggingGazetteer(gazetteer, log);
+        for (String name : new String[] {"Boston", "Reston", "Virginia", "Bstn"}) {
+            logging.getClosestLocations(new QueryBuilder().location(name).build());
+        }
+        logging.getGeoName(BOSTON_MA, AncestryMode.ON_CREATE);
+        log.save();
+
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        QueryLogWarmer warmer = new QueryLogWarmer(logFile, 3, QueryLogWarmer.DEFAULT_BUDGET_MILLIS, metrics);
+        new LuceneGazetteer(INDEX_DIRECTORY, new LuceneGazetteerConfig().warmer(warmer)).close();
+        assertEquals(3, metrics.getCount(ClavinMetrics.Counter.WARMUP_QUERIES));
+        assertEquals(1, metrics.getTimer(ClavinMetrics.Timer.WARMUP).getCount());
+
+        // a spent budget replays nothing, and a missing log warms nothing
+        InMemoryMetrics spent = new InMemoryMetrics();
+        new QueryLogWarmer(logFile, QueryLogWarmer.DEFAULT_TOP_QUERIES, -1, spent).warm(gazetteer);
+        new QueryLogWarmer(new File(logDirectory, "missing.log"), QueryLogWarmer.DEFAULT_TOP_QUERIES,
+                QueryLogWarmer.DEFAULT_BUDGET_MILLIS, spent).warm(gazetteer);
+        assertEquals(0, spent.getCount(ClavinMetrics.Counter.WARMUP_QUERIES));
+    }
+}
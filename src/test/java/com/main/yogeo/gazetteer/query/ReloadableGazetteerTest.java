@@ -0,0 +1,197 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * ReloadableGazetteerTest.java
+ *
+ *###################################################################*/
+
+package com.novetta.clavin.gazetteer.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.novetta.clavin.ClavinException;
+import com.novetta.clavin.gazetteer.GeoName;
+import com.novetta.clavin.index.IndexDirectoryBuilder;
+import com.novetta.clavin.metrics.ClavinMetrics;
+import com.novetta.clavin.metrics.InMemoryMetrics;
+import com.novetta.clavin.resolver.ResolvedLocation;
+
+/**
+ * Tests for swapping the index of a {@link ReloadableGazetteer}.
+ */
+public class ReloadableGazetteerTest {
+    private static final File INDEX_DIRECTORY = new File("./IndexDirectory");
+
+    // expected geonameID numbers for given location names
+    private static final int RESTON_VA = 4781530;
+
+    private File supplementaryIndex;
+    private InMemoryMetrics metrics;
+    private AtomicInteger warmings;
+    private ReloadableGazetteer gazetteer;
+
+    @Before
+    public void setUp() throws ClavinException, IOException {
+        // an index of the supplementary gazetteer alone, which has no Reston
+        supplementaryIndex = new File(Files.createTempDirectory("clavin").toFile(), "SupplementaryIndex");
+        IndexDirectoryBuilder.main(new String[] {
+            "-i", "./src/main/resources/SupplementaryGazetteer.txt", "-o", supplementaryIndex.getPath()
+        });
+        metrics = new InMemoryMetrics();
+        warmings = new AtomicInteger();
+        gazetteer = new ReloadableGazetteer(INDEX_DIRECTORY, new LuceneGazetteerConfig().metrics(metrics),
+                g -> warmings.incrementAndGet(), ReloadableGazetteer.DEFAULT_WARM_QUERIES);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        gazetteer.close();
+        FileUtils.deleteDirectory(supplementaryIndex.getParentFile());
+    }
+
+    /**
+     * Ensure reloading switches every query to the new index, warming it
+     * first, while GeoNames from the replaced index keep lazily loading
+     * their ancestry.
+     */
+    @Test
+    public void testReload() throws ClavinException {
+        GazetteerQuery reston = new QueryBuilder().location("Reston").maxResults(1).build();
+        GeoName before = gazetteer.getClosestLocations(reston).get(0).getGeoname();
+        assertEquals(RESTON_VA, before.getGeonameID());
+        assertEquals(1, warmings.get());
+
+        gazetteer.reload(supplementaryIndex);
+        assertEquals(supplementaryIndex, gazetteer.getIndexDirectory());
+        assertEquals(2, warmings.get());
+        assertEquals(1, metrics.getCount(ClavinMetrics.Counter.INDEX_RELOADS));
+        assertTrue("new index should not know Reston", gazetteer.getClosestLocations(reston).isEmpty());
+        assertFalse("unchanged index should not be reopened", gazetteer.maybeReload());
+
+        gazetteer.reload(INDEX_DIRECTORY);
+        assertEquals(RESTON_VA, gazetteer.getClosestLocations(reston).get(0).getGeoname().getGeonameID());
+        assertEquals("lazy ancestry should resolve through the current index",
+                gazetteer.getGeoName(RESTON_VA).getParent().getGeonameID(), before.getParent().getGeonameID());
+    }
+
+    /**
+     * Ensure a failed reload keeps the current index in use.
+     */
+    @Test
+    public void testFailedReload() throws ClavinException {
+        File notAnIndex = new File(supplementaryIndex.getParentFile(), "NotAnIndex");
+        assertTrue(notAnIndex.mkdir());
+        try {
+            gazetteer.reload(notAnIndex);
+            fail("reload should fail for a directory without an index");
+        } catch (ClavinException expected) {
+            // the current index remains in use
+        }
+        assertEquals(INDEX_DIRECTORY, gazetteer.getIndexDirectory());
+        assertEquals(RESTON_VA, gazetteer.getGeoName(RESTON_VA).getGeonameID());
+        assertEquals(0, metrics.getCount(ClavinMetrics.Counter.INDEX_RELOADS));
+    }
+
+    /**
+     * Ensure a caching decorator drops matches from a replaced index, even
+     * through another decorator.
+     */
+    @Test
+    public void testCacheInvalidation() throws ClavinException {
+        CachingGazetteer caching = new CachingGazetteer(new QueryLoggingGazetteer(gazetteer,
+                new QueryLog(new File(supplementaryIndex.getParentFile(), "queries.log"))));
+        GazetteerQuery reston = new QueryBuilder().location("Reston").maxResults(1).build();
+        assertEquals(1, caching.getClosestLocations(reston).size());
+        assertEquals(1, caching.getClosestLocations(reston).size());
+        gazetteer.reload(supplementaryIndex);
+        assertTrue("cached matches should be invalidated", caching.getClosestLocations(reston).isEmpty());
+    }
+
+    /**
+     * Ensure matches found against an index replaced while the query was
+     * in progress are not cached.
+     */
+    @Test
+    public void testReloadDuringCacheMiss() throws ClavinException {
+        AtomicBoolean reloaded = new AtomicBoolean();
+        Gazetteer reloadingGazetteer = new Gazetteer() {
+            @Override
+            public List<ResolvedLocation> getClosestLocations(final GazetteerQuery query) throws ClavinException {
+                List<ResolvedLocation> matches = gazetteer.getClosestLocations(query);
+                // the index is replaced after the matches were found, before they are cached
+                if (reloaded.compareAndSet(false, true)) {
+                    gazetteer.reload(supplementaryIndex);
+                }
+                return matches;
+            }
+
+            @Override
+            public GeoName getGeoName(final int geonameId) throws ClavinException {
+                return gazetteer.getGeoName(geonameId);
+            }
+
+            @Override
+            public GeoName getGeoName(final int geonameId, final AncestryMode ancestryMode) throws ClavinException {
+                return gazetteer.getGeoName(geonameId, ancestryMode);
+            }
+
+            @Override
+            public void loadAncestry(final GeoName... geoNames) throws ClavinException {
+                gazetteer.loadAncestry(geoNames);
+            }
+
+            @Override
+            public void loadAncestry(final Collection<GeoName> geoNames) throws ClavinException {
+                gazetteer.loadAncestry(geoNames);
+            }
+
+            @Override
+            public void addReloadListener(final Runnable listener) {
+                gazetteer.addReloadListener(listener);
+            }
+        };
+        CachingGazetteer caching = new CachingGazetteer(reloadingGazetteer);
+        GazetteerQuery reston = new QueryBuilder().location("Reston").maxResults(1).build();
+        assertEquals("matches from the replaced index", 1, caching.getClosestLocations(reston).size());
+        assertTrue("matches from the replaced index should not be cached",
+                caching.getClosestLocations(reston).isEmpty());
+        assertEquals(0, caching.getStats().getHitCount());
+    }
+}
@@ -0,0 +1,137 @@
+package com.novetta.clavin.index;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.Test;
+
+import com.novetta.clavin.gazetteer.FeatureCode;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * ExactNameStoreTest.java
+ * 
+ *###################################################################*/
+
+/**
+ * Checks the exact name store used to answer exact queries without
+ * searching the index.
+ * 
+ */
+public class ExactNameStoreTest {
+
+    private static final Analyzer ANALYZER = new StandardAnalyzer();
+
+    /**
+     * Ensures lookups find the documents bearing exactly the analyzed name,
+     * most populous first, with their filterable attributes.
+     */
+    @Test
+    public void testLookup() throws IOException {
+        try (Directory directory = new ByteBuffersDirectory()) {
+            try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(ANALYZER))) {
+                addName(writer, "Boston", 1, 100, 10, FeatureCode.PPL, false);
+                addName(writer, "Boston Basin", 2, 5000, 10, FeatureCode.BSNU, false);
+                addName(writer, "boston", 3, 600000, 20, FeatureCode.PPLA2, false);
+                addName(writer, "BOSTON", 4, 100, ExactNameStore.NO_PARENT, FeatureCode.PPLH, true);
+            }
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                assertEquals(2, ExactNameStore.write(reader, directory, ANALYZER));
+                ExactNameStore store = ExactNameStore.open(directory, reader);
+                assertNotNull(store);
+
+                ExactNameStore.Entries entries = store.lookup(ExactNameStore.key(ANALYZER, "Boston"));
+                assertEquals(3, entries.size());
+                int[] geonameIds = {3, 1, 4};
+                for (int i = 0; i < entries.size(); i++) {
+                    assertEquals(geonameIds[i], entries.geonameId(i));
+                    assertEquals(geonameIds[i] - 1, entries.docId(i));
+                }
+                assertEquals(20, entries.parentId(0));
+                assertEquals(FeatureCode.PPLA2, entries.featureCode(0));
+                assertFalse(entries.isHistorical(0));
+                assertEquals(ExactNameStore.NO_PARENT, entries.parentId(2));
+                assertEquals(FeatureCode.PPLH, entries.featureCode(2));
+                assertTrue(entries.isHistorical(2));
+
+                assertEquals(1, store.lookup(ExactNameStore.key(ANALYZER, "boston  basin")).size());
+                assertEquals(0, store.lookup(ExactNameStore.key(ANALYZER, "Basin")).size());
+                assertEquals(0, store.lookup(ExactNameStore.key(ANALYZER, "")).size());
+                store.close();
+            }
+        }
+    }
+
+    /**
+     * Ensures stores are not opened for indexes without one, or whose
+     * documents have changed since the store was built.
+     */
+    @Test
+    public void testMissingOrStaleStore() throws IOException {
+        try (Directory directory = new ByteBuffersDirectory()) {
+            try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(ANALYZER))) {
+                addName(writer, "Reston", 1, 100, 10, FeatureCode.PPL, false);
+            }
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                assertNull("no store written yet", ExactNameStore.open(directory, reader));
+                ExactNameStore.write(reader, directory, ANALYZER);
+            }
+            try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(ANALYZER))) {
+                addName(writer, "Fairfax", 2, 100, 10, FeatureCode.PPL, false);
+            }
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                assertNull("store built for an earlier commit", ExactNameStore.open(directory, reader));
+            }
+        }
+    }
+
+    private static void addName(final IndexWriter writer, final String name, final int geonameId, final long population,
+            final int parentId, final FeatureCode code, final boolean historical) throws IOException {
+        Document doc = new Document();
+        doc.add(new TextField(IndexField.INDEX_NAME.key(), name, Field.Store.YES));
+        doc.add(new NumericDocValuesField(IndexField.GEONAME_ID.key(), geonameId));
+        doc.add(new NumericDocValuesField(IndexField.SORT_POP.key(), population));
+        if (parentId != ExactNameStore.NO_PARENT) {
+            doc.add(new NumericDocValuesField(IndexField.PARENT_ID.key(), parentId));
+        }
+        doc.add(new NumericDocValuesField(IndexField.HISTORICAL.key(), IndexField.getBooleanIndexValue(historical)));
+        doc.add(new SortedDocValuesField(IndexField.FEATURE_CODE.key(), new BytesRef(code.name())));
+        writer.addDocument(doc);
+    }
+}
@@ -0,0 +1,146 @@
+package com.novetta.clavin.index;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.novetta.clavin.gazetteer.BasicGeoName;
+import com.novetta.clavin.gazetteer.GeoName;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * GeoNameRecordCodecTest.java
+ * 
+ *###################################################################*/
+
+/**
+ * Checks that GeoNames survive binary encoding and decoding unchanged.
+ * 
+ */
+public class GeoNameRecordCodecTest {
+
+    private List<String> records;
+
+    @Before
+    public void setUp() throws IOException {
+        records = new ArrayList<>();
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(new FileInputStream(
+                new File("./src/test/resources/gazetteers/GeoNamesSampleSet.txt")), "UTF-8"))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                records.add(line);
+            }
+        }
+    }
+
+    /**
+     * Ensures every sample record decodes to the GeoName it was parsed as,
+     * including its preferred name, and that its rebuilt gazetteer record
+     * parses to the same values.
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (String record : records) {
+            GeoName parsed = BasicGeoName.parseFromGeoNamesRecord(record, "Preferred");
+            GeoName decoded = GeoNameRecordCodec.decode(GeoNameRecordCodec.encode(parsed, false), "Preferred");
+            assertSameGeoName(parsed, decoded);
+
+            GeoName reparsed = BasicGeoName.parseFromGeoNamesRecord(decoded.getGazetteerRecord(), "Preferred");
+            assertSameGeoName(parsed, reparsed);
+        }
+    }
+
+    /**
+     * Ensures ancestors encoded with a GeoName are restored as its parents.
+     */
+    @Test
+    public void testAncestry() throws IOException {
+        List<GeoName> geoNames = new ArrayList<>();
+        for (String record : records) {
+            geoNames.add(BasicGeoName.parseFromGeoNamesRecord(record));
+        }
+        GeoName child = null;
+        for (GeoName candidate : geoNames) {
+            for (GeoName parent : geoNames) {
+                if (candidate != parent && !candidate.isAncestryResolved() && candidate.setParent(parent)) {
+                    child = candidate;
+                    break;
+                }
+            }
+            if (child != null) {
+                break;
+            }
+        }
+        assertNotNull("sample set should contain a child and its parent", child);
+
+        GeoName decoded = GeoNameRecordCodec.decode(GeoNameRecordCodec.encode(child, true), null);
+        GeoName expected = child;
+        GeoName actual = decoded;
+        while (expected != null) {
+            assertNotNull("missing ancestor of " + child, actual);
+            assertSameGeoName(expected, actual);
+            expected = expected.getParent();
+            actual = actual.getParent();
+        }
+        assertNull(actual);
+
+        GeoName withoutAncestry = GeoNameRecordCodec.decode(GeoNameRecordCodec.encode(child, false), null);
+        assertNull(withoutAncestry.getParent());
+    }
+
+    private static void assertSameGeoName(final GeoName expected, final GeoName actual) {
+        String id = expected.toString();
+        assertEquals(id, expected.getGeonameID(), actual.getGeonameID());
+        assertEquals(id, expected.getName(), actual.getName());
+        assertEquals(id, expected.getAsciiName(), actual.getAsciiName());
+        assertEquals(id, expected.getAlternateNames(), actual.getAlternateNames());
+        assertEquals(id, expected.getPreferredName(), actual.getPreferredName());
+        assertEquals(id, expected.getLatitude(), actual.getLatitude(), 0.0);
+        assertEquals(id, expected.getLongitude(), actual.getLongitude(), 0.0);
+        assertEquals(id, expected.getFeatureClass(), actual.getFeatureClass());
+        assertEquals(id, expected.getFeatureCode(), actual.getFeatureCode());
+        assertEquals(id, expected.getPrimaryCountryCode(), actual.getPrimaryCountryCode());
+        assertEquals(id, expected.getAlternateCountryCodes(), actual.getAlternateCountryCodes());
+        assertEquals(id, expected.getAdmin1Code(), actual.getAdmin1Code());
+        assertEquals(id, expected.getAdmin2Code(), actual.getAdmin2Code());
+        assertEquals(id, expected.getAdmin3Code(), actual.getAdmin3Code());
+        assertEquals(id, expected.getAdmin4Code(), actual.getAdmin4Code());
+        assertEquals(id, expected.getPopulation(), actual.getPopulation());
+        assertEquals(id, expected.getElevation(), actual.getElevation());
+        assertEquals(id, expected.getDigitalElevationModel(), actual.getDigitalElevationModel());
+        assertEquals(id, expected.getTimezone(), actual.getTimezone());
+        assertEquals(id, expected.getModificationDate(), actual.getModificationDate());
+        assertEquals(id, expected.getAncestryKey(), actual.getAncestryKey());
+    }
+}
@@ -0,0 +1,260 @@
+package com.novetta.clavin.index;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.codecs.lucene50.Lucene50StoredFieldsFormat;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * IndexDirectoryBuilderTest.java
+ * 
+ *###################################################################*/
+
+/**
+ * Checks the indexes written by the {@link IndexDirectoryBuilder}.
+ * 
+ */
+public class IndexDirectoryBuilderTest {
+
+    private static final String SAMPLE_GAZETTEER = "./src/test/resources/gazetteers/GeoNamesSampleSet.txt";
+    private static final String SUPPLEMENTARY_GAZETTEER = "./src/main/resources/SupplementaryGazetteer.txt";
+    private static final String GAZETTEER_FILES = SAMPLE_GAZETTEER + ":" + SUPPLEMENTARY_GAZETTEER;
+
+    /**
+     * Ensures a parallel build indexes exactly the documents of a build
+     * on a single thread, however many batches the gazetteers are parsed in.
+     */
+    @Test
+    public void testParallelBuild() throws IOException {
+        File buildDirectory = Files.createTempDirectory("clavin").toFile();
+        int parseBatchSize = IndexDirectoryBuilder.parseBatchSize;
+        try {
+            File serialIndex = new File(buildDirectory, "SerialIndex");
+            IndexDirectoryBuilder.main(new String[] {"-i", GAZETTEER_FILES, "-o", serialIndex.getPath()});
+            List<String> expected = readDocuments(serialIndex);
+            assertFalse(expected.isEmpty());
+
+            // small batches are parsed on several threads and may complete out of order
+            for (int batchSize : new int[] {parseBatchSize, 7, 1}) {
+                IndexDirectoryBuilder.parseBatchSize = batchSize;
+                File parallelIndex = new File(buildDirectory, "ParallelIndex" + batchSize);
+                IndexDirectoryBuilder.main(new String[] {"-i", GAZETTEER_FILES, "-o", parallelIndex.getPath(), "--threads", "4"});
+                assertEquals("wrong documents with batches of " + batchSize, expected, readDocuments(parallelIndex));
+            }
+        } finally {
+            IndexDirectoryBuilder.parseBatchSize = parseBatchSize;
+            FileUtils.deleteDirectory(buildDirectory);
+        }
+    }
+
+    /**
+     * Ensures a two-pass build, which resolves the administrative divisions
+     * before indexing anything, indexes exactly the documents of a build in
+     * a single pass.
+     */
+    @Test
+    public void testTwoPassBuild() throws IOException {
+        File buildDirectory = Files.createTempDirectory("clavin").toFile();
+        try {
+            for (String[] options : new String[][] {{}, {"--with-full-ancestry"}, {"--threads", "4"}}) {
+                File singlePassIndex = new File(buildDirectory, "SinglePassIndex");
+                File twoPassIndex = new File(buildDirectory, "TwoPassIndex");
+                build(GAZETTEER_FILES, singlePassIndex, options);
+                List<String> twoPassOptions = new ArrayList<>(Arrays.asList(options));
+                twoPassOptions.add("--two-pass");
+                build(GAZETTEER_FILES, twoPassIndex, twoPassOptions.toArray(new String[0]));
+
+                List<String> expected = readDocuments(singlePassIndex);
+                assertFalse(expected.isEmpty());
+                assertEquals(expected, readDocuments(twoPassIndex));
+                FileUtils.deleteDirectory(singlePassIndex);
+                FileUtils.deleteDirectory(twoPassIndex);
+            }
+        } finally {
+            FileUtils.deleteDirectory(buildDirectory);
+        }
+    }
+
+    /**
+     * Ensures the index writer options shape the written index, and the
+     * build report describes it.
+     */
+    @Test
+    public void testWriterOptions() throws IOException {
+        File buildDirectory = Files.createTempDirectory("clavin").toFile();
+        try {
+            File indexDir = new File(buildDirectory, "MergedIndex");
+            IndexDirectoryBuilder.main(new String[] {"-i", GAZETTEER_FILES, "-o", indexDir.getPath(),
+                "--ram-buffer-mb", "1", "--merge-policy", "log-doc", "--force-merge", "--no-compound-files",
+                "--stored-fields-mode", "BEST_COMPRESSION"});
+
+            SegmentInfos segments;
+            try (FSDirectory directory = FSDirectory.open(indexDir.toPath())) {
+                segments = SegmentInfos.readLatestCommit(directory);
+            }
+            assertEquals(1, segments.size());
+            SegmentCommitInfo segment = segments.info(0);
+            assertFalse(segment.info.getUseCompoundFile());
+            assertEquals("BEST_COMPRESSION", segment.info.getAttribute(Lucene50StoredFieldsFormat.MODE_KEY));
+
+            JsonNode report = new ObjectMapper().readTree(new File(indexDir, IndexDirectoryBuilder.BUILD_REPORT_FILE));
+            assertEquals(1, report.get("segmentCount").asInt());
+            assertEquals(readDocuments(indexDir).size(), report.get("documents").asInt());
+            assertTrue(report.get("indexSizeBytes").asLong() > 0);
+            assertTrue(report.get("buildTimeMillis").asLong() > 0);
+            assertEquals("LOG_DOC", report.get("options").get("mergePolicy").asText());
+            assertTrue(report.get("options").get("forceMerge").asBoolean());
+        } finally {
+            FileUtils.deleteDirectory(buildDirectory);
+        }
+    }
+
+    /**
+     * Ensures applying modification and deletion files to an index yields
+     * the documents of an index built from the updated gazetteer, including
+     * the ancestry of GeoNames below a modified and a deleted division.
+     */
+    @Test
+    public void testIncrementalUpdate() throws IOException {
+        File buildDirectory = Files.createTempDirectory("clavin").toFile();
+        try {
+            List<String> sample = Files.readAllLines(new File(SAMPLE_GAZETTEER).toPath());
+            List<String> modifications = new ArrayList<>();
+            List<String> deletions = new ArrayList<>();
+            List<String> updated = new ArrayList<>();
+            for (String line : sample) {
+                if (line.startsWith("6254928\t")) {
+                    // Virginia: a new population
+                    line = line.replace("\t7642884\t", "\t8535519\t");
+                    modifications.add(line);
+                } else if (line.startsWith("4781530\t")) {
+                    // Herndon: a new GeoName in the same county as Reston, which is left unchanged
+                    String herndon = line.replace("4781530\tReston\tReston\tReston,Рестон", "4763793\tHerndon\tHerndon\t");
+                    modifications.add(herndon);
+                    updated.add(herndon);
+                } else if (line.startsWith("3126783\t") || line.startsWith("4758041\t")) {
+                    // Campo and Fairfax County are deleted
+                    deletions.add(line.substring(0, line.indexOf('\t')) + "\tdeleted\tremoved from GeoNames");
+                    continue;
+                }
+                updated.add(line);
+            }
+            assertEquals(2, modifications.size());
+            assertEquals(2, deletions.size());
+            File modificationsFile = new File(buildDirectory, "modifications.txt");
+            File deletionsFile = new File(buildDirectory, "deletes.txt");
+            File updatedGazetteer = new File(buildDirectory, "updated.txt");
+            Files.write(modificationsFile.toPath(), modifications);
+            Files.write(deletionsFile.toPath(), deletions);
+            Files.write(updatedGazetteer.toPath(), updated);
+
+            for (String[] options : new String[][] {{}, {"--with-full-ancestry"}}) {
+                File indexDir = new File(buildDirectory, "UpdatedIndex");
+                File expectedDir = new File(buildDirectory, "ExpectedIndex");
+                build(GAZETTEER_FILES, indexDir, options);
+                build(updatedGazetteer.getPath() + ":" + SUPPLEMENTARY_GAZETTEER, expectedDir, options);
+                List<String> before = readDocuments(indexDir);
+
+                IndexDirectoryBuilder.main(new String[] {"-o", indexDir.getPath(),
+                    "--modifications-files", modificationsFile.getPath(), "--deletions-files", deletionsFile.getPath()});
+
+                List<String> expected = readDocuments(expectedDir);
+                assertNotEquals(before, expected);
+                assertEquals(expected, readDocuments(indexDir));
+                JsonNode report = new ObjectMapper().readTree(new File(indexDir, IndexDirectoryBuilder.BUILD_REPORT_FILE));
+                assertEquals(2, report.get("update").get("modified").asInt());
+                assertEquals(1, report.get("update").get("descendants").asInt());
+                assertEquals(2, report.get("update").get("deleted").asInt());
+                assertEquals(options.length > 0, report.get("options").get("fullAncestry").asBoolean());
+                FileUtils.deleteDirectory(indexDir);
+                FileUtils.deleteDirectory(expectedDir);
+            }
+        } finally {
+            FileUtils.deleteDirectory(buildDirectory);
+        }
+    }
+
+    private static void build(final String gazetteerFiles, final File indexDir, final String... options) throws IOException {
+        List<String> args = new ArrayList<>(Arrays.asList("-i", gazetteerFiles, "-o", indexDir.getPath()));
+        args.addAll(Arrays.asList(options));
+        IndexDirectoryBuilder.main(args.toArray(new String[0]));
+    }
+
+    /**
+     * Reads the stored fields and binary records of every document of an
+     * index, in a canonical order.
+     */
+    private static List<String> readDocuments(final File indexDir) throws IOException {
+        List<String> documents = new ArrayList<>();
+        try (FSDirectory directory = FSDirectory.open(indexDir.toPath());
+                DirectoryReader reader = DirectoryReader.open(directory)) {
+            for (LeafReaderContext leaf : reader.leaves()) {
+                LeafReader leafReader = leaf.reader();
+                Bits liveDocs = leafReader.getLiveDocs();
+                BinaryDocValues records = DocValues.getBinary(leafReader, IndexField.GEONAME_RECORD.key());
+                for (int doc = 0; doc < leafReader.maxDoc(); doc++) {
+                    if (liveDocs != null && !liveDocs.get(doc)) {
+                        continue;
+                    }
+                    StringBuilder document = new StringBuilder();
+                    Document stored = leafReader.document(doc);
+                    for (IndexableField field : stored.getFields()) {
+                        document.append(field.name()).append('=').append(field.stringValue()).append('\t');
+                    }
+                    if (records.advanceExact(doc)) {
+                        document.append(records.binaryValue().toString());
+                    }
+                    documents.add(document.toString());
+                }
+            }
+        }
+        Collections.sort(documents);
+        return documents;
+    }
+}
@@ -0,0 +1,135 @@
+package com.novetta.clavin.index;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.Test;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * NameBloomFilterTest.java
+ * 
+ *###################################################################*/
+
+/**
+ * Checks the Bloom filter used to skip exact queries for unknown names.
+ * 
+ */
+public class NameBloomFilterTest {
+
+    private static final String[] TERMS = {"boston", "reston", "fairfax", "virginia", "straßenhaus"};
+
+    /**
+     * Ensures every added term is reported as possibly present.
+     */
+    @Test
+    public void testNoFalseNegatives() {
+        NameBloomFilter filter = NameBloomFilter.create(TERMS.length, NameBloomFilter.DEFAULT_FALSE_POSITIVE_PROBABILITY);
+        for (String term : TERMS) {
+            filter.add(new BytesRef(term));
+        }
+        for (String term : TERMS) {
+            assertTrue("added term should be present: " + term, filter.mightContain(new BytesRef(term)));
+        }
+    }
+
+    /**
+     * Ensures the false positive rate stays near the configured probability.
+     */
+    @Test
+    public void testFalsePositiveRate() {
+        NameBloomFilter filter = NameBloomFilter.create(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            filter.add(new BytesRef("present" + i));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain(new BytesRef("absent" + i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue("too many false positives: " + falsePositives, falsePositives < 300);
+    }
+
+    /**
+     * Ensures a filter survives being written to and read from an index directory.
+     */
+    @Test
+    public void testReadWrite() throws IOException {
+        try (Directory directory = new ByteBuffersDirectory()) {
+            addTerms(directory, TERMS);
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                assertNull("no filter written yet", NameBloomFilter.read(directory, reader));
+                NameBloomFilter filter = NameBloomFilter.build(reader, NameBloomFilter.DEFAULT_FALSE_POSITIVE_PROBABILITY);
+                filter.write(directory, reader);
+                NameBloomFilter read = NameBloomFilter.read(directory, reader);
+                assertNotNull(read);
+                assertEquals(filter.sizeInBytes(), read.sizeInBytes());
+                for (String term : TERMS) {
+                    assertTrue("added term should be present: " + term, read.mightContain(new BytesRef(term)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Ensures filters are not read for indexes whose terms have changed
+     * since the filter was built.
+     */
+    @Test
+    public void testStaleFilter() throws IOException {
+        try (Directory directory = new ByteBuffersDirectory()) {
+            addTerms(directory, TERMS);
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                NameBloomFilter.build(reader, NameBloomFilter.DEFAULT_FALSE_POSITIVE_PROBABILITY).write(directory, reader);
+            }
+            addTerms(directory, "arlington");
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                assertNull("filter built for an earlier commit", NameBloomFilter.read(directory, reader));
+            }
+        }
+    }
+
+    private static void addTerms(final Directory directory, final String... terms) throws IOException {
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new KeywordAnalyzer()))) {
+            for (String term : terms) {
+                Document doc = new Document();
+                doc.add(new StringField(IndexField.INDEX_NAME.key(), term, Field.Store.NO));
+                writer.addDocument(doc);
+            }
+        }
+    }
+}
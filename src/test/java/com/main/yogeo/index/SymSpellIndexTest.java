@@ -0,0 +1,135 @@
+package com.novetta.clavin.index;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.Test;
+
+import com.novetta.clavin.util.DamerauLevenshtein;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * SymSpellIndexTest.java
+ * 
+ *###################################################################*/
+
+/**
+ * Checks the symmetric delete index used to look up fuzzy name candidates.
+ * 
+ */
+public class SymSpellIndexTest {
+
+    private static final String[] TERMS = {"boston", "bostan", "reston", "fairfax", "virginia", "straßenhaus", "us"};
+
+    /**
+     * Ensures lookups find exactly the terms within the edit distance,
+     * closest first, matching a brute-force comparison.
+     */
+    @Test
+    public void testLookup() throws IOException {
+        try (Directory directory = buildIndex();
+                DirectoryReader reader = DirectoryReader.open(directory)) {
+            SymSpellIndex index = SymSpellIndex.open(directory, reader);
+            assertNotNull(index);
+            assertEquals(TERMS.length, index.termCount());
+            for (String query : new String[] {"bostn", "bostonn", "restno", "virgina", "straßenhaus12", "sraßenhaus", "u", "xyz"}) {
+                Map<String, Integer> matches = index.lookup(query, 2, Integer.MAX_VALUE);
+                int previous = 0;
+                for (Map.Entry<String, Integer> match : matches.entrySet()) {
+                    assertTrue("matches should be ordered by distance", match.getValue() >= previous);
+                    previous = match.getValue();
+                }
+                for (String term : TERMS) {
+                    int distance = DamerauLevenshtein.damerauLevenshteinDistance(query, term);
+                    if (distance <= 2) {
+                        assertEquals(query + " should match " + term, Integer.valueOf(distance), matches.get(term));
+                    } else {
+                        assertFalse(query + " should not match " + term, matches.containsKey(term));
+                    }
+                }
+            }
+            assertEquals(1, index.lookup("bostonn", 1, 1).size());
+            assertEquals("boston", index.lookup("boston", 2, 1).keySet().iterator().next());
+            index.close();
+        }
+    }
+
+    /**
+     * Ensures directories without a symmetric delete index are reported.
+     */
+    @Test
+    public void testMissingIndex() throws IOException {
+        try (Directory directory = new ByteBuffersDirectory()) {
+            addTerms(directory, TERMS);
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                assertNull("no index written yet", SymSpellIndex.open(directory, reader));
+            }
+        }
+    }
+
+    /**
+     * Ensures symmetric delete indexes are not opened for indexes whose
+     * terms have changed since it was built.
+     */
+    @Test
+    public void testStaleIndex() throws IOException {
+        try (Directory directory = buildIndex()) {
+            addTerms(directory, "arlington");
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                assertNull("index built for an earlier commit", SymSpellIndex.open(directory, reader));
+            }
+        }
+    }
+
+    private static Directory buildIndex() throws IOException {
+        Directory directory = new ByteBuffersDirectory();
+        addTerms(directory, TERMS);
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            SymSpellIndex.write(reader, directory, 2, SymSpellIndex.DEFAULT_PREFIX_LENGTH);
+        }
+        return directory;
+    }
+
+    private static void addTerms(final Directory directory, final String... terms) throws IOException {
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new KeywordAnalyzer()))) {
+            for (String term : terms) {
+                Document doc = new Document();
+                doc.add(new StringField(IndexField.INDEX_NAME.key(), term, Field.Store.NO));
+                writer.addDocument(doc);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.novetta.clavin.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.novetta.clavin.extractor.LocationOccurrence;
+import com.novetta.clavin.gazetteer.query.LuceneGazetteer;
+import com.novetta.clavin.metrics.ClavinMetrics.Counter;
+import com.novetta.clavin.metrics.ClavinMetrics.Distribution;
+import com.novetta.clavin.metrics.ClavinMetrics.Timer;
+import com.novetta.clavin.resolver.ClavinLocationResolver;
+
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * InMemoryMetricsTest.java
+ * 
+ *###################################################################*/
+
+/**
+ * Tests for the in-memory metrics and the measurements reported by
+ * the resolver and gazetteer.
+ * 
+ */
+public class InMemoryMetricsTest {
+
+    /**
+     * Ensures histogram statistics stay within the bucket resolution.
+     */
+    @Test
+    public void testHistogram() {
+        Histogram histogram = new Histogram();
+        assertEquals("Empty histogram should report zero", 0, histogram.getPercentile(99));
+
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertEquals("Wrong count", 1000, histogram.getCount());
+        assertEquals("Wrong mean", 500500.0, histogram.getMean(), 0.001);
+        assertEquals("Wrong max", 1000000, histogram.getMax());
+        assertWithinResolution(500000, histogram.getPercentile(50));
+        assertWithinResolution(990000, histogram.getPercentile(99));
+        assertEquals("p100 should be the max", 1000000, histogram.getPercentile(100));
+
+        histogram.reset();
+        assertEquals("Reset should discard values", 0, histogram.getCount());
+        assertEquals("Reset should discard max", 0, histogram.getMax());
+    }
+
+    /**
+     * Ensures every bucket's upper bound maps back into the same bucket.
+     */
+    @Test
+    public void testBucketBoundaries() {
+        for (long value : Arrays.asList(0L, 15L, 16L, 17L, 31L, 32L, 1000L, 123456789L, Long.MAX_VALUE)) {
+            int index = Histogram.bucketIndex(value);
+            assertTrue("Upper bound below value " + value, Histogram.bucketUpperBound(index) >= value);
+            assertEquals("Upper bound outside bucket for " + value, index,
+                    Histogram.bucketIndex(Histogram.bucketUpperBound(index)));
+        }
+    }
+
+    /**
+     * Ensures resolving locations reports each stage to the configured metrics.
+     * @throws Exception
+     */
+    @Test
+    public void testResolverMetrics() throws Exception {
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        ClavinLocationResolver resolver = new ClavinLocationResolver(
+                new LuceneGazetteer(new File("./IndexDirectory"), metrics), metrics);
+
+        resolver.resolveLocations(Arrays.asList(new LocationOccurrence("Boston", 0),
+                new LocationOccurrence("American", 10)), 3, 3, false);
+
+        assertEquals("Demonym filter should run for every location", 2, metrics.getTimer(Timer.DEMONYM_FILTER).getCount());
+        assertEquals("Demonyms should not be queried", 1, metrics.getCount(Counter.QUERIES));
+        assertEquals("Wrong number of gazetteer queries", 1, metrics.getTimer(Timer.GAZETTEER_QUERY).getCount());
+        assertEquals("Wrong number of exact queries", 1, metrics.getTimer(Timer.EXACT_QUERY).getCount());
+        assertEquals("Fuzzy matching is off", 0, metrics.getCount(Counter.FUZZY_FALLBACKS));
+        assertEquals("Wrong number of documents", 1, metrics.getDistribution(Distribution.CANDIDATES_PER_DOCUMENT).getCount());
+    }
+
+    private static void assertWithinResolution(long expected, long actual) {
+        assertTrue(String.format("%d not within 1/16 of %d", actual, expected),
+                actual >= expected && actual <= expected + expected / 16);
+    }
+}
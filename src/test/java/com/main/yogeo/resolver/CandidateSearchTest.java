@@ -0,0 +1,116 @@
+package com.novetta.clavin.resolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.novetta.clavin.extractor.LocationOccurrence;
+import com.novetta.clavin.gazetteer.BasicGeoName;
+import com.novetta.clavin.gazetteer.GeoName;
+import com.novetta.clavin.metrics.ClavinMetrics;
+
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * CandidateSearchTest.java
+ *
+ *###################################################################*/
+
+/**
+ * Ensures the branch-and-bound {@link CandidateSearch} selects the same
+ * candidates as the exhaustive algorithm of {@link ClavinLocationResolver}.
+ */
+public class CandidateSearchTest {
+    private List<GeoName> geonames;
+    private ClavinLocationResolver exhaustive;
+
+    @Before
+    public void setUp() throws IOException {
+        geonames = new ArrayList<>();
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(new FileInputStream(
+                new File("./src/test/resources/gazetteers/GeoNamesSampleSet.txt")), "UTF-8"))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                geonames.add(BasicGeoName.parseFromGeoNamesRecord(line));
+            }
+        }
+        exhaustive = new ClavinLocationResolver(null, ClavinMetrics.NOOP, CandidateSelection.EXHAUSTIVE);
+    }
+
+    /**
+     * Compare both algorithms on random context windows drawn from small
+     * pools of GeoNames, so that countries and admin1 codes are shared.
+     */
+    @Test
+    public void testSameSelectionAsExhaustive() {
+        Random random = new Random(42);
+        for (int trial = 0; trial < 300; trial++) {
+            List<GeoName> pool = new ArrayList<>(geonames);
+            Collections.shuffle(pool, random);
+            pool = pool.subList(0, 2 + random.nextInt(12));
+
+            List<List<ResolvedLocation>> allCandidates = new ArrayList<>();
+            int windowSize = 1 + random.nextInt(6);
+            for (int i = 0; i < windowSize; i++) {
+                LocationOccurrence occurrence = new LocationOccurrence("location" + i, i);
+                List<ResolvedLocation> candidates = new ArrayList<>();
+                int hitDepth = 1 + random.nextInt(5);
+                for (int j = 0; j < hitDepth; j++) {
+                    GeoName geoname = pool.get(random.nextInt(pool.size()));
+                    candidates.add(new ResolvedLocation(occurrence, geoname, geoname.getName(), false));
+                }
+                allCandidates.add(candidates);
+            }
+
+            List<ResolvedLocation> expected = exhaustive.pickBestCandidates(allCandidates);
+            List<ResolvedLocation> actual = new CandidateSearch(allCandidates).pickBestCandidates();
+            assertEquals("wrong selection size in trial " + trial, expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertSame("different candidate in trial " + trial, expected.get(i), actual.get(i));
+            }
+        }
+    }
+
+    /**
+     * Ensure an empty window selects nothing.
+     */
+    @Test
+    public void testEmptyWindow() {
+        List<List<ResolvedLocation>> allCandidates = new ArrayList<>();
+        assertEquals(exhaustive.pickBestCandidates(allCandidates), new CandidateSearch(allCandidates).pickBestCandidates());
+        assertEquals(0, new CandidateSearch(allCandidates).pickBestCandidates().size());
+    }
+}
@@ -4,16 +4,21 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.novetta.clavin.ClavinException;
 import com.novetta.clavin.extractor.LocationOccurrence;
 import com.novetta.clavin.gazetteer.query.LuceneGazetteer;
+import com.novetta.clavin.metrics.ClavinMetrics;
 
 
 /*#####################################################################
@@ -49,6 +54,7 @@ import com.novetta.clavin.gazetteer.query.LuceneGazetteer;
  * {@link ResolvedLocation} objects as performed by
  * {@link ClavinLocationResolver#resolveLocations(List, boolean)}.
  */
+@RunWith(Parameterized.class)
 public class ClavinLocationResolverHeuristicsTest {
     public final static Logger logger = LoggerFactory.getLogger(ClavinLocationResolverHeuristicsTest.class);
 
@@ -87,16 +93,31 @@ public class ClavinLocationResolverHeuristicsTest {
     private static final int HEURISTICS_MAX_HIT_DEPTH = 5;
     private static final int HEURISTICS_MAX_CONTEXT_WINDOW = 5;
 
+    private final CandidateSelection candidateSelection;
     private ClavinLocationResolver resolver;
     private List<ResolvedLocation> resolvedLocations;
 
+    // every candidate selection algorithm must make the same choices
+    @Parameters(name="{index}: {0}")
+    public static Iterable<Object[]> parameters() {
+        return Arrays.asList(new Object[][] {
+            { CandidateSelection.EXHAUSTIVE },
+            { CandidateSelection.BRANCH_AND_BOUND }
+        });
+    }
+
+    public ClavinLocationResolverHeuristicsTest(final CandidateSelection candidateSelection) {
+        this.candidateSelection = candidateSelection;
+    }
+
     /**
      * Instantiate two {@link ClavinLocationResolver} objects, one without
      * context-based heuristic matching and other with it turned on.
      */
     @Before
     public void setUp() throws ClavinException {
-        resolver = new ClavinLocationResolver(new LuceneGazetteer(new File("./IndexDirectory")));
+        resolver = new ClavinLocationResolver(new LuceneGazetteer(new File("./IndexDirectory")), ClavinMetrics.NOOP,
+                candidateSelection);
     }
 
     private List<ResolvedLocation> resolveNoHeuristics(final List<LocationOccurrence> locs, final boolean fuzzy)
@@ -0,0 +1,102 @@
+package com.novetta.clavin.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * LruCacheTest.java
+ * 
+ *###################################################################*/
+
+/**
+ * Tests for the bounded LRU cache.
+ * 
+ */
+public class LruCacheTest {
+
+    /**
+     * Ensures the least recently used entries are evicted first.
+     */
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        LruCache<String, Integer> cache = new LruCache<>(3, 1, (k, v) -> 1);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        // touch "a" so "b" becomes the eldest entry
+        assertEquals("Wrong cached value", Integer.valueOf(1), cache.get("a"));
+        cache.put("d", 4);
+
+        assertNull("Least recently used entry should be evicted", cache.get("b"));
+        assertEquals("Recently used entry should be kept", Integer.valueOf(1), cache.get("a"));
+        assertEquals("Wrong size", 3, cache.size());
+        assertEquals("Wrong eviction count", 1, cache.getStats().getEvictionCount());
+        assertEquals("Wrong hit count", 2, cache.getStats().getHitCount());
+        assertEquals("Wrong miss count", 1, cache.getStats().getMissCount());
+    }
+
+    /**
+     * Ensures eviction respects entry weights.
+     */
+    @Test
+    public void testWeightedEviction() {
+        LruCache<String, String> cache = new LruCache<>(10, 1, (k, v) -> v.length());
+        cache.put("a", "aaaa");
+        cache.put("b", "bbbb");
+        cache.put("c", "cccc");
+        assertEquals("Weight must not exceed the maximum", 8, cache.weight());
+        assertNull("Eldest entry should be evicted", cache.get("a"));
+
+        // too heavy to cache at all
+        cache.put("d", "ddddddddddd");
+        assertNull("Oversized entry should not be cached", cache.get("d"));
+
+        cache.put("b", "b");
+        assertEquals("Replacing an entry should update the weight", 5, cache.weight());
+
+        cache.invalidateAll();
+        assertEquals("Invalidated cache should be empty", 0, cache.size());
+        assertEquals("Invalidated cache should weigh nothing", 0, cache.weight());
+    }
+
+    /**
+     * Ensures the cached keys are listed least recently used first.
+     */
+    @Test
+    public void testKeys() {
+        LruCache<String, Integer> cache = new LruCache<>(3, 1, (k, v) -> 1);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        cache.get("a");
+        cache.put("d", 4);
+        assertEquals("Wrong keys", Arrays.asList("c", "a", "d"), cache.keys());
+    }
+}